@@ -0,0 +1,221 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.NoSuchElementException;
+
+/**
+ * The file I/O and bookkeeping that BTreeFile and HashIndexFile share: an
+ * index over one field of a table, stored in a file of fixed-size pages of
+ * type P. Page 0 holds the index's entry point (the root pointer or the
+ * directory); {@link #newPage} grows the file past it. Pages are read and
+ * written through a long-lived channel, like HeapFile's.
+ *
+ * @param <P> the type of the pages of the index
+ */
+public abstract class AbstractIndexFile<P extends Page> implements IndexFile {
+    private static final long serialVersionUID = 1L;
+
+    protected final File file;
+    protected final int tableId;
+    protected final int keyField;
+    protected final Type keyType;
+    protected final int pageSize;
+    private transient FileChannel channel;
+
+    /**
+     * @param f        the file that stores the index
+     * @param tableId  the indexed table, a HeapFile, which must be in the catalog
+     * @param keyField the index of the key field in the table's TupleDesc
+     * @param pageSize bytes per page of the index
+     */
+    protected AbstractIndexFile(File f, int tableId, int keyField, int pageSize) {
+        this.file = f;
+        this.tableId = tableId;
+        this.keyField = keyField;
+        this.keyType = Database.getCatalog().getTupleDesc(tableId).getFieldType(keyField);
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @return the id of the given page of this index
+     */
+    protected abstract PageId pageId(int pageNo);
+
+    /**
+     * Builds a page of this index from its bytes.
+     */
+    protected abstract P decodePage(PageId pid, byte[] data) throws IOException;
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getId() {
+        return file.getAbsoluteFile().hashCode();
+    }
+
+    public int getTableId() {
+        return tableId;
+    }
+
+    public int getKeyField() {
+        return keyField;
+    }
+
+    public Type getKeyType() {
+        return keyType;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return Database.getCatalog().getTupleDesc(tableId);
+    }
+
+    @Override
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    @Override
+    public int numPages() {
+        return (int) (file.length() / pageSize);
+    }
+
+    private synchronized FileChannel getChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = new RandomAccessFile(file, "rw").getChannel();
+        }
+        return channel;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        if (!pageId(pid.pageNumber()).equals(pid)) {
+            return null;
+        }
+        try {
+            long offset = (long) pid.pageNumber() * pageSize;
+            ByteBuffer buffer = ByteBuffer.allocate(pageSize);
+            FileChannel fc = getChannel();
+            //a short read past the end of file leaves the rest of the page zeroed
+            while (buffer.hasRemaining()) {
+                if (fc.read(buffer, offset + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            return decodePage(pid, buffer.array());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        long offset = (long) page.getId().pageNumber() * pageSize;
+        ByteBuffer buffer = ByteBuffer.wrap(page.getPageData());
+        FileChannel fc = getChannel();
+        while (buffer.hasRemaining()) {
+            fc.write(buffer, offset + buffer.position());
+        }
+    }
+
+    /**
+     * Drops every page of the index from the buffer pool and empties the
+     * file, e.g. before a bulk build.
+     */
+    protected void clear() throws IOException {
+        BufferPool bufferPool = Database.getBufferPool();
+        for (int i = 0; i < numPages(); i++) {
+            bufferPool.discardPage(pageId(i));
+        }
+        getChannel().truncate(0);
+    }
+
+    /**
+     * Grows the file by one unused page. Page 0 is kept for the entry point.
+     *
+     * @return the number of the new page
+     */
+    private synchronized int allocatePage() throws IOException {
+        int pageNo = Math.max(numPages(), 1);
+        getChannel().write(ByteBuffer.wrap(new byte[1]), (long) (pageNo + 1) * pageSize - 1);
+        return pageNo;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected P getPage(TransactionId tid, int pageNo, Permissions perm)
+            throws DbException, TransactionAbortedException {
+        return (P) Database.getBufferPool().getPage(tid, pageId(pageNo), perm);
+    }
+
+    /**
+     * Grows the file by a page and gets it for tid, exclusively locked and
+     * marked dirty.
+     */
+    protected P newPage(TransactionId tid) throws DbException, TransactionAbortedException {
+        int pageNo;
+        try {
+            pageNo = allocatePage();
+        } catch (IOException e) {
+            throw new DbException("cannot grow " + file + ": " + e.getMessage());
+        }
+        P page = getPage(tid, pageNo, Permissions.READ_WRITE);
+        page.markDirty(true, tid);
+        return page;
+    }
+
+    /**
+     * @return a zeroed page of this index, outside of the buffer pool, e.g.
+     * for a bulk build
+     */
+    protected P emptyPage(int pageNo) throws IOException {
+        return decodePage(pageId(pageNo), new byte[pageSize]);
+    }
+
+    /**
+     * Checks that a tuple is stored in the indexed table and has a key.
+     *
+     * @return the tuple's RecordId
+     */
+    protected RecordId indexedRecordId(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || rid.getPageId().getTableId() != tableId) {
+            throw new DbException("tuple is not stored in the indexed table: " + t);
+        }
+        Field key = t.getField(keyField);
+        if (key == null || key.getType() != keyType) {
+            throw new DbException("tuple has no key of type " + keyType + ": " + t);
+        }
+        return rid;
+    }
+
+    /**
+     * Looks up the tuple an entry refers to.
+     */
+    protected Tuple fetch(TransactionId tid, int pageNo, int slot) throws DbException, TransactionAbortedException {
+        Page page = Database.getBufferPool().getPage(tid, new HeapPageId(tableId, pageNo), Permissions.READ_ONLY);
+        if (!(page instanceof HeapPage)) {
+            throw new DbException("indexed table " + tableId + " is not a HeapFile");
+        }
+        try {
+            return ((HeapPage) page).getTuple(slot);
+        } catch (NoSuchElementException ex) {
+            throw new DbException("index " + file + " refers to empty slot " + slot + " of page " + pageNo);
+        }
+    }
+}
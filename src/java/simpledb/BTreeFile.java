@@ -0,0 +1,390 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * BTreeFile is a B+ tree secondary index over one field of a HeapFile. It maps
+ * each key to the RecordIds of the tuples with that key, so that equality and
+ * range lookups read a root-to-leaf path and the matching leaves instead of
+ * the whole table.
+ * <p>
+ * The tree is stored as BTreePages (see there for the format). Leaves are
+ * linked left to right, so a range lookup descends once and then follows the
+ * links. Inserts split full pages bottom up; deletes just remove the entry and
+ * leave underfull pages as they are.
+ * <p>
+ * All pages are got through the buffer pool, so the usual page locks apply:
+ * lookups lock the pages they read shared, updates lock the leaf they change
+ * exclusively, and the internal pages too when it splits. Pages allocated by
+ * a transaction that aborts stay in the file, unused.
+ *
+ * @see Catalog#addIndex
+ */
+public class BTreeFile extends AbstractIndexFile<BTreePage> {
+    private static final long serialVersionUID = 1L;
+
+    private static final int ROOT_POINTER_PAGE = 0;
+
+    /**
+     * Constructs an index stored in the specified file over the given field of
+     * the given table, with pages of {@link BufferPool#PAGE_SIZE} bytes. The
+     * table must be in the catalog. Use {@link #build} to fill the index from
+     * the tuples already in the table.
+     *
+     * @param f        the file that stores the index
+     * @param tableId  the indexed table, a HeapFile
+     * @param keyField the index of the key field in the table's TupleDesc
+     */
+    public BTreeFile(File f, int tableId, int keyField) {
+        this(f, tableId, keyField, BufferPool.PAGE_SIZE);
+    }
+
+    /**
+     * Same as {@link #BTreeFile(File, int, int)}, with pages of the given size.
+     */
+    public BTreeFile(File f, int tableId, int keyField, int pageSize) {
+        super(f, tableId, keyField, pageSize);
+    }
+
+    public boolean supports(Predicate.Op op) {
+        return op != Predicate.Op.NOT_EQUALS && op != Predicate.Op.LIKE;
+    }
+
+    /**
+     * Estimates the height of the tree from its size and fanout.
+     */
+    @Override
+    public int estimateProbePages() {
+        int fanout = BTreePage.capacity(true, keyType, pageSize) + 1;
+        int height = 1;
+        for (long pages = 1; pages < numPages(); pages *= fanout) {
+            height++;
+        }
+        return height;
+    }
+
+    @Override
+    protected PageId pageId(int pageNo) {
+        return new BTreePageId(getId(), pageNo);
+    }
+
+    @Override
+    protected BTreePage decodePage(PageId pid, byte[] data) throws IOException {
+        return new BTreePage((BTreePageId) pid, data, keyType, pageSize);
+    }
+
+    private BTreePage newPage(TransactionId tid, int type) throws DbException, TransactionAbortedException {
+        BTreePage page = newPage(tid);
+        page.type = type;
+        return page;
+    }
+
+    /**
+     * @return the entry of the given tuple, which must be stored in the
+     * indexed table
+     */
+    private BTreePage.Entry entryOf(Tuple t) throws DbException {
+        RecordId rid = indexedRecordId(t);
+        return new BTreePage.Entry(t.getField(keyField), rid.getPageId().pageNumber(), rid.tupleno(), 0);
+    }
+
+    /**
+     * Descends from the root to the leaf whose range holds e.
+     *
+     * @param path  if not null, the numbers of the internal pages passed are
+     *              pushed onto it, so the leaf's parent ends up on top
+     * @param perm  the permissions to get the leaf with; internal pages are
+     *              got read-only
+     * @return the leaf, or null if the tree is empty
+     */
+    private BTreePage findLeaf(TransactionId tid, BTreePage.Entry e, Deque<Integer> path, Permissions perm)
+            throws DbException, TransactionAbortedException {
+        int pageNo = getPage(tid, ROOT_POINTER_PAGE, Permissions.READ_ONLY).link;
+        if (pageNo == 0) {
+            return null;
+        }
+        while (true) {
+            BTreePage page = getPage(tid, pageNo, Permissions.READ_ONLY);
+            if (page.isLeaf()) {
+                return perm == Permissions.READ_ONLY ? page : getPage(tid, pageNo, perm);
+            }
+            if (path != null) {
+                path.push(pageNo);
+            }
+            pageNo = e == null ? page.link : page.childFor(e);
+        }
+    }
+
+    /**
+     * Adds the entry of a tuple that was just inserted into the indexed table.
+     *
+     * @return the pages that were modified
+     */
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        BTreePage.Entry e = entryOf(t);
+        ArrayList<Page> dirtied = new ArrayList<>();
+        Deque<Integer> path = new ArrayDeque<>();
+        BTreePage leaf = findLeaf(tid, e, path, Permissions.READ_WRITE);
+        if (leaf == null) {
+            BTreePage rootPointer = getPage(tid, ROOT_POINTER_PAGE, Permissions.READ_WRITE);
+            if (rootPointer.link == 0) {
+                leaf = newPage(tid, BTreePage.LEAF);
+                rootPointer.type = BTreePage.ROOT_POINTER;
+                rootPointer.link = leaf.getId().pageNumber();
+                rootPointer.markDirty(true, tid);
+                dirtied.add(rootPointer);
+            } else {
+                //somebody else created the root meanwhile
+                path.clear();
+                leaf = findLeaf(tid, e, path, Permissions.READ_WRITE);
+            }
+        }
+        leaf.entries.add(leaf.lowerBound(e), e);
+        leaf.markDirty(true, tid);
+        dirtied.add(leaf);
+        if (leaf.entries.size() > leaf.capacity()) {
+            split(tid, leaf, path, dirtied);
+        }
+        return dirtied;
+    }
+
+    /**
+     * Splits an overfull page in two and adds the new right half to the
+     * parent, splitting the parent in turn if needed.
+     *
+     * @param path the numbers of the internal pages above page, its parent on top
+     */
+    private void split(TransactionId tid, BTreePage page, Deque<Integer> path, List<Page> dirtied)
+            throws DbException, TransactionAbortedException {
+        List<BTreePage.Entry> entries = page.entries;
+        int mid = entries.size() / 2;
+        BTreePage right = newPage(tid, page.type);
+        dirtied.add(right);
+        BTreePage.Entry separator;
+        if (page.isLeaf()) {
+            //the first entry of the right leaf is copied up
+            right.entries.addAll(entries.subList(mid, entries.size()));
+            right.link = page.link;
+            page.link = right.getId().pageNumber();
+            BTreePage.Entry first = right.entries.get(0);
+            separator = new BTreePage.Entry(first.key, first.page, first.slot, 0);
+        } else {
+            //the middle entry moves up; its child becomes the right page's first
+            separator = entries.get(mid);
+            right.link = separator.child;
+            right.entries.addAll(entries.subList(mid + 1, entries.size()));
+        }
+        entries.subList(mid, entries.size()).clear();
+        separator.child = right.getId().pageNumber();
+
+        if (path.isEmpty()) {
+            BTreePage root = newPage(tid, BTreePage.INTERNAL);
+            root.link = page.getId().pageNumber();
+            root.entries.add(separator);
+            BTreePage rootPointer = getPage(tid, ROOT_POINTER_PAGE, Permissions.READ_WRITE);
+            rootPointer.type = BTreePage.ROOT_POINTER;
+            rootPointer.link = root.getId().pageNumber();
+            rootPointer.markDirty(true, tid);
+            dirtied.add(root);
+            dirtied.add(rootPointer);
+            return;
+        }
+        BTreePage parent = getPage(tid, path.pop(), Permissions.READ_WRITE);
+        parent.entries.add(parent.lowerBound(separator), separator);
+        parent.markDirty(true, tid);
+        dirtied.add(parent);
+        if (parent.entries.size() > parent.capacity()) {
+            split(tid, parent, path, dirtied);
+        }
+    }
+
+    /**
+     * Removes the entry of a tuple that is about to be deleted from the
+     * indexed table.
+     *
+     * @return the leaf the entry was removed from
+     * @throws DbException if the index has no entry for the tuple
+     */
+    public Page deleteTuple(TransactionId tid, Tuple t) throws DbException, TransactionAbortedException {
+        BTreePage.Entry e = entryOf(t);
+        BTreePage leaf = findLeaf(tid, e, null, Permissions.READ_WRITE);
+        int i = leaf == null ? -1 : leaf.lowerBound(e);
+        if (i < 0 || i == leaf.entries.size() || leaf.entries.get(i).compareTo(e) != 0) {
+            throw new DbException("no entry for " + t.getRecordId() + " in index " + file);
+        }
+        leaf.entries.remove(i);
+        leaf.markDirty(true, tid);
+        return leaf;
+    }
+
+    /**
+     * Fills the index with the entries of all tuples in the table, replacing
+     * whatever it held. The pages are built bottom up from the sorted entries
+     * and written straight to the file, so the index must not be in use
+     * meanwhile. The table is read as tid.
+     */
+    public void build(TransactionId tid) throws DbException, TransactionAbortedException, IOException {
+        List<BTreePage.Entry> entries = new ArrayList<>();
+        DbFileIterator it = Database.getCatalog().getDbFile(tableId).iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            entries.add(entryOf(it.next()));
+        }
+        it.close();
+        entries.sort(BTreePage.Entry::compareTo);
+
+        clear();
+
+        int next = ROOT_POINTER_PAGE + 1;
+        //the first page of each node of the level being built, and its smallest entry
+        List<Integer> level = new ArrayList<>();
+        List<BTreePage.Entry> firsts = new ArrayList<>();
+        int leafCapacity = BTreePage.capacity(false, keyType, pageSize);
+        for (int start = 0; start < entries.size(); start += leafCapacity) {
+            BTreePage leaf = emptyPage(next, BTreePage.LEAF);
+            leaf.entries.addAll(entries.subList(start, Math.min(start + leafCapacity, entries.size())));
+            leaf.link = start + leafCapacity < entries.size() ? next + 1 : 0;
+            writePage(leaf);
+            level.add(next++);
+            firsts.add(leaf.entries.get(0));
+        }
+        int fanout = BTreePage.capacity(true, keyType, pageSize) + 1;
+        while (level.size() > 1) {
+            List<Integer> upper = new ArrayList<>();
+            List<BTreePage.Entry> upperFirsts = new ArrayList<>();
+            for (int start = 0; start < level.size(); start += fanout) {
+                BTreePage node = emptyPage(next, BTreePage.INTERNAL);
+                node.link = level.get(start);
+                for (int i = start + 1; i < Math.min(start + fanout, level.size()); i++) {
+                    BTreePage.Entry first = firsts.get(i);
+                    node.entries.add(new BTreePage.Entry(first.key, first.page, first.slot, level.get(i)));
+                }
+                writePage(node);
+                upper.add(next++);
+                upperFirsts.add(firsts.get(start));
+            }
+            level = upper;
+            firsts = upperFirsts;
+        }
+        BTreePage rootPointer = emptyPage(ROOT_POINTER_PAGE, BTreePage.ROOT_POINTER);
+        rootPointer.link = level.isEmpty() ? 0 : level.get(0);
+        writePage(rootPointer);
+    }
+
+    private BTreePage emptyPage(int pageNo, int type) throws IOException {
+        BTreePage page = emptyPage(pageNo);
+        page.type = type;
+        return page;
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return indexIterator(tid, null);
+    }
+
+    /**
+     * Returns the tuples of the table whose key satisfies the given predicate,
+     * in key order. The lookup starts at the first key the predicate can
+     * match and stops after the last one.
+     *
+     * @param ipred the predicate, or null for all tuples
+     */
+    public DbFileIterator indexIterator(TransactionId tid, IndexPredicate ipred) {
+        return new BTreeFileIterator(tid, ipred);
+    }
+
+    private class BTreeFileIterator implements DbFileIterator {
+        private final TransactionId tid;
+        private final IndexPredicate ipred;
+        private BTreePage leaf;
+        private int index;
+        private Tuple next;
+        private boolean done = true;
+
+        BTreeFileIterator(TransactionId tid, IndexPredicate ipred) {
+            this.tid = tid;
+            this.ipred = ipred;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            BTreePage.Entry start = null;
+            if (ipred != null) {
+                switch (ipred.getOp()) {
+                    case EQUALS:
+                    case GREATER_THAN_OR_EQ:
+                        start = new BTreePage.Entry(ipred.getField(), Integer.MIN_VALUE, Integer.MIN_VALUE, 0);
+                        break;
+                    case GREATER_THAN:
+                        start = new BTreePage.Entry(ipred.getField(), Integer.MAX_VALUE, Integer.MAX_VALUE, 0);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            leaf = findLeaf(tid, start, null, Permissions.READ_ONLY);
+            index = leaf == null || start == null ? 0 : leaf.lowerBound(start);
+            next = null;
+            done = leaf == null;
+        }
+
+        /**
+         * @return true if no key after the given one can match
+         */
+        private boolean pastEnd(Field key) {
+            switch (ipred.getOp()) {
+                case EQUALS:
+                case LESS_THAN_OR_EQ:
+                    return key.compare(Predicate.Op.GREATER_THAN, ipred.getField());
+                case LESS_THAN:
+                    return key.compare(Predicate.Op.GREATER_THAN_OR_EQ, ipred.getField());
+                default:
+                    return false;
+            }
+        }
+
+        public boolean hasNext() throws DbException, TransactionAbortedException {
+            while (next == null && !done) {
+                if (index == leaf.entries.size()) {
+                    if (leaf.link == 0) {
+                        done = true;
+                        break;
+                    }
+                    leaf = getPage(tid, leaf.link, Permissions.READ_ONLY);
+                    index = 0;
+                    continue;
+                }
+                BTreePage.Entry e = leaf.entries.get(index++);
+                if (ipred == null) {
+                    next = fetch(tid, e.page, e.slot);
+                } else if (pastEnd(e.key)) {
+                    done = true;
+                } else if (ipred.matches(e.key)) {
+                    next = fetch(tid, e.page, e.slot);
+                }
+            }
+            return next != null;
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Tuple t = next;
+            next = null;
+            return t;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            close();
+            open();
+        }
+
+        public void close() {
+            leaf = null;
+            next = null;
+            done = true;
+        }
+    }
+}
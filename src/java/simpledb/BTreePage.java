@@ -0,0 +1,227 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * BTreePage is a page of a BTreeFile: the root pointer page, an internal
+ * page or a leaf page.
+ * <p>
+ * Every page starts with a header of three ints: the page's type, the number
+ * of entries on it and a link whose meaning depends on the type. The entries
+ * follow, sorted. An entry is a key followed by the page number and slot of
+ * the RecordId it refers to; internal entries also have the number of a
+ * child page. Entries are ordered by key and then by RecordId, so even
+ * duplicate keys have distinct, ordered entries.
+ * <ul>
+ * <li>The root pointer page is page 0. Its link is the number of the root page,
+ * or 0 if the tree is empty.</li>
+ * <li>On a leaf page, the link is the number of the next leaf to the right, or 0
+ * for the last leaf.</li>
+ * <li>On an internal page, the link is the number of the first child page. The
+ * child of an entry holds the entries at or after the entry and before the next
+ * one; the first child holds those before the first entry.</li>
+ * </ul>
+ * Pages that are all zeros are unused.
+ *
+ * @see BTreeFile
+ */
+public class BTreePage implements Page {
+    static final int UNUSED = 0;
+    static final int ROOT_POINTER = 1;
+    static final int LEAF = 2;
+    static final int INTERNAL = 3;
+
+    private static final int HEADER_SIZE = 12;
+
+    /**
+     * An entry of a page. RecordIds are kept as page number and slot; their
+     * table is the indexed one.
+     */
+    static class Entry {
+        final Field key;
+        final int page;
+        final int slot;
+        int child;
+
+        Entry(Field key, int page, int slot, int child) {
+            this.key = key;
+            this.page = page;
+            this.slot = slot;
+            this.child = child;
+        }
+
+        /**
+         * Orders entries by key, then by RecordId.
+         */
+        int compareTo(Entry other) {
+            if (key.compare(Predicate.Op.LESS_THAN, other.key)) {
+                return -1;
+            }
+            if (!key.compare(Predicate.Op.EQUALS, other.key)) {
+                return 1;
+            }
+            if (page != other.page) {
+                return Integer.compare(page, other.page);
+            }
+            return Integer.compare(slot, other.slot);
+        }
+    }
+
+    final BTreePageId pid;
+    final Type keyType;
+    final int pageSize;
+    int type;
+    int link;
+    final List<Entry> entries;
+
+    byte[] oldData;
+    TransactionId dirtier;
+
+    /**
+     * Create a BTreePage from a set of bytes of data read from disk. The key
+     * type and page size are those of the BTreeFile registered in the catalog
+     * under the page's table id.
+     */
+    public BTreePage(BTreePageId id, byte[] data) throws IOException {
+        this(id, data, keyType(id), Database.getCatalog().getPageSize(id.getTableId()));
+    }
+
+    BTreePage(BTreePageId id, byte[] data, Type keyType, int pageSize) throws IOException {
+        this.pid = id;
+        this.keyType = keyType;
+        this.pageSize = pageSize;
+        ByteBuffer bb = ByteBuffer.wrap(data);
+        type = bb.getInt(0);
+        int count = bb.getInt(4);
+        link = bb.getInt(8);
+        entries = new ArrayList<>(Math.max(count, 16));
+        int entrySize = entrySize(type == INTERNAL, keyType);
+        try {
+            for (int i = 0; i < count; i++) {
+                int offset = HEADER_SIZE + i * entrySize;
+                Field key = keyType.parse(bb, offset);
+                int page = bb.getInt(offset + keyType.getLen());
+                int slot = bb.getInt(offset + keyType.getLen() + 4);
+                int child = type == INTERNAL ? bb.getInt(offset + keyType.getLen() + 8) : 0;
+                entries.add(new Entry(key, page, slot, child));
+            }
+        } catch (java.text.ParseException e) {
+            throw new IOException("corrupt " + pid + ": " + e.getMessage());
+        }
+        oldData = Arrays.copyOf(data, pageSize);
+    }
+
+    private static Type keyType(BTreePageId id) {
+        BTreeFile f = (BTreeFile) Database.getCatalog().getDbFile(id.getTableId());
+        return f.getKeyType();
+    }
+
+    private static int entrySize(boolean internal, Type keyType) {
+        return keyType.getLen() + (internal ? 12 : 8);
+    }
+
+    /**
+     * @return the number of entries that fit on a leaf (internal == false) or
+     * internal page of the given size
+     */
+    static int capacity(boolean internal, Type keyType, int pageSize) {
+        return (pageSize - HEADER_SIZE) / entrySize(internal, keyType);
+    }
+
+    /**
+     * @return the number of entries that fit on this page
+     */
+    int capacity() {
+        return capacity(type == INTERNAL, keyType, pageSize);
+    }
+
+    public BTreePageId getId() {
+        return pid;
+    }
+
+    boolean isLeaf() {
+        return type == LEAF;
+    }
+
+    /**
+     * @return the position of the first entry at or after e, or the number
+     * of entries if there is none
+     */
+    int lowerBound(Entry e) {
+        int lo = 0;
+        int hi = entries.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (entries.get(mid).compareTo(e) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return the child of an internal page whose subtree holds e
+     */
+    int childFor(Entry e) {
+        int i = lowerBound(e);
+        if (i < entries.size() && entries.get(i).compareTo(e) == 0) {
+            return entries.get(i).child;
+        }
+        return i == 0 ? link : entries.get(i - 1).child;
+    }
+
+    public byte[] getPageData() {
+        ByteBuffer bb = ByteBuffer.allocate(pageSize);
+        bb.putInt(type);
+        bb.putInt(entries.size());
+        bb.putInt(link);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(keyType.getLen());
+        DataOutputStream dos = new DataOutputStream(baos);
+        for (Entry e : entries) {
+            baos.reset();
+            try {
+                e.key.serialize(dos);
+                dos.flush();
+            } catch (IOException ex) {
+                // this really shouldn't happen
+                ex.printStackTrace();
+            }
+            bb.put(baos.toByteArray(), 0, keyType.getLen());
+            bb.putInt(e.page);
+            bb.putInt(e.slot);
+            if (type == INTERNAL) {
+                bb.putInt(e.child);
+            }
+        }
+        return bb.array();
+    }
+
+    public BTreePage getBeforeImage() {
+        try {
+            return new BTreePage(pid, oldData, keyType, pageSize);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        oldData = getPageData();
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtier = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtier;
+    }
+}
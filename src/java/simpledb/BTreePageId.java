@@ -0,0 +1,49 @@
+package simpledb;
+
+/**
+ * Unique identifier for BTreePage objects.
+ */
+public class BTreePageId implements PageId {
+    private int tableId;
+    private int pageNumber;
+
+    /**
+     * Constructor. Create a page id structure for a specific page of a
+     * specific B+ tree file.
+     *
+     * @param tableId The id of the BTreeFile that is being referenced
+     * @param pgNo    The page number in that file.
+     */
+    public BTreePageId(int tableId, int pgNo) {
+        this.tableId = tableId;
+        this.pageNumber = pgNo;
+    }
+
+    public int getTableId() {
+        return tableId;
+    }
+
+    public int pageNumber() {
+        return pageNumber;
+    }
+
+    public int hashCode() {
+        return tableId * 31 + pageNumber;
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof BTreePageId)) {
+            return false;
+        }
+        BTreePageId other = (BTreePageId) o;
+        return tableId == other.tableId && pageNumber == other.pageNumber;
+    }
+
+    public int[] serialize() {
+        return new int[]{tableId, pageNumber};
+    }
+
+    public String toString() {
+        return "BTreePageId(" + tableId + ", " + pageNumber + ")";
+    }
+}
@@ -1,8 +1,11 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from
@@ -12,14 +15,56 @@ import java.util.concurrent.ConcurrentHashMap;
  * The BufferPool is also responsible for locking;  when a transaction fetches
  * a page, BufferPool checks that the transaction has the appropriate
  * locks to read/write the page.
+ * <p>
+ * Cached pages are kept in frames in a concurrent hash table, so that a hit
+ * takes no lock of the pool's. The page to evict from a full pool is chosen
+ * by a {@link ReplacementPolicy}, CLOCK unless another one is given; its
+ * bookkeeping for a page sits in the page's frame, so a hit only updates that.
+ * Only picking a victim and installing or dropping a frame are serialized,
+ * and writing a page out locks just its frame.
+ * <p>
+ * Large sequential scans can read into a {@link BufferRing} instead, a few
+ * frames of their own that they recycle, so that they don't flush the pages
+ * other transactions keep using out of the pool.
+ * <p>
+ * A pool created with a {@link PageArena} reads HeapFile pages into the
+ * arena's off-heap frames rather than onto the heap, and gives a frame back
+ * when its page leaves the pool.
+ * <p>
+ * A {@link MemoryAccountant} keeps track of the heap the cached pages take up.
+ * A pool created with a byte budget evicts pages to stay under it as well as
+ * under its number of pages.
  */
 public class BufferPool {
     private int numberOfPages;
-    private Map<PageId, Page> hash;
-    private LRUCache<PageId> lru;
+    private final ConcurrentHashMap<PageId, Frame> frames;
+    private final ReplacementPolicy policy;
+    private final PageArena arena;
+    private final MemoryAccountant accountant;
+    /**
+     * held while picking a victim and installing or dropping a frame, so that
+     * the pool never holds more than numberOfPages pages. Guards the policy.
+     */
+    private final Object evictionLock = new Object();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
     private LockManager lm;
     /**
-     * Bytes per page, including header.
+     * pages each running transaction appended straight to disk; they are
+     * emptied again if the transaction aborts
+     */
+    private Map<TransactionId, List<PageId>> appended;
+    private volatile ReadAhead readAhead;
+    /**
+     * bumped whenever a page is written to disk or dropped from the pool, so
+     * that a prefetch can tell whether the page it read may be stale
+     */
+    private final AtomicLong writeEpoch = new AtomicLong();
+    /**
+     * Bytes per page, including header, of tables that don't set their own
+     * page size.
+     *
+     * @see Catalog#getPageSize
      */
     public static final int PAGE_SIZE = 4096;
 
@@ -30,17 +75,121 @@ public class BufferPool {
      */
     public static final int DEFAULT_PAGES = 50;
 
+    /**
+     * The most frames a {@link BufferRing} gets.
+     */
+    public static final int RING_PAGES = 16;
+
     /**
      * Creates a BufferPool that caches up to numPages pages.
      *
      * @param numPages maximum number of pages in this buffer pool.
      */
     public BufferPool(int numPages) {
+        this(numPages, new ClockPolicy());
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages and evicts the
+     * ones the given policy picks.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy   a new policy, used by this pool only
+     */
+    public BufferPool(int numPages, ReplacementPolicy policy) {
+        this(numPages, policy, null);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages, evicts the ones
+     * the given policy picks, and reads HeapFile pages into the frames of the
+     * given arena. The arena should have a few more frames than the pool has
+     * pages, for the pages being read while the pool is full; pages that
+     * find no free frame, or are larger than a frame, are read onto the heap.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy   a new policy, used by this pool only
+     * @param arena    a new arena, used by this pool only, or null to keep
+     *                 every page on the heap
+     * @see #newArena
+     */
+    public BufferPool(int numPages, ReplacementPolicy policy, PageArena arena) {
+        this(numPages, policy, arena, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a BufferPool whose pages must fit in the given number of bytes
+     * of heap, as estimated by its {@link MemoryAccountant}, as well as in
+     * numPages pages. Pass Integer.MAX_VALUE pages to size the pool by bytes
+     * only. A page that doesn't fit in the budget even once every clean page
+     * is evicted fails like one that doesn't fit in numPages.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy   a new policy, used by this pool only
+     * @param arena    a new arena, used by this pool only, or null to keep
+     *                 every page on the heap
+     * @param budget   maximum estimated bytes of the pages in this pool
+     */
+    public BufferPool(int numPages, ReplacementPolicy policy, PageArena arena, long budget) {
         // some code goes here
         numberOfPages = numPages;
-        hash = new ConcurrentHashMap<>(numberOfPages);
-        lru = new LRUCache<>();
+        this.policy = policy;
+        this.arena = arena;
+        accountant = new MemoryAccountant(budget);
+        frames = new ConcurrentHashMap<>(Math.min(numberOfPages, 1024));
         lm = new LockManager();
+        appended = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return the maximum number of pages in this buffer pool. For a pool
+     * with a byte budget, that is how many pages of the average footprint
+     * of those cached fit in the budget, if fewer.
+     */
+    public int getNumPages() {
+        return (int) Math.min(numberOfPages, accountant.pagesInBudget());
+    }
+
+    public ReplacementPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Creates an arena of {@link #PAGE_SIZE} frames for a pool of the given
+     * number of pages, with {@link #RING_PAGES} frames to spare.
+     */
+    public static PageArena newArena(int numPages) {
+        return new PageArena(numPages + RING_PAGES, PAGE_SIZE);
+    }
+
+    /**
+     * @return the arena this pool reads pages into, e.g. for its stats, or
+     * null if pages are kept on the heap
+     */
+    public PageArena getArena() {
+        return arena;
+    }
+
+    /**
+     * @return the accountant of the heap this pool's pages take up, e.g.
+     * for its stats
+     */
+    public MemoryAccountant getAccountant() {
+        return accountant;
+    }
+
+    /**
+     * @return the number of getPage calls that found their page in the pool
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of getPage calls that had to read their page
+     */
+    public long getMisses() {
+        return misses.sum();
     }
 
     /**
@@ -60,6 +209,35 @@ public class BufferPool {
      */
     public Page getPage(TransactionId tid, PageId pid, Permissions perm)
             throws TransactionAbortedException, DbException {
+        return getPage(tid, pid, perm, false);
+    }
+
+    /**
+     * Same as {@link #getPage(TransactionId, PageId, Permissions)}, except that a
+     * miss on a HeapFile page can be read through the file's memory mapping.
+     *
+     * @param mapped true to load a missing HeapFile page through its mapping
+     * @see HeapFile#readPage(PageId, boolean)
+     */
+    public Page getPage(TransactionId tid, PageId pid, Permissions perm, boolean mapped)
+            throws TransactionAbortedException, DbException {
+        return getPage(tid, pid, perm, mapped, null);
+    }
+
+    /**
+     * Same as {@link #getPage(TransactionId, PageId, Permissions, boolean)},
+     * except that a miss can be read into a frame of the given ring, recycling
+     * the ring's oldest page once the ring is full, rather than into a frame
+     * of the pool's replacement policy. Hits are served from wherever the
+     * page is. Pages got through a ring aren't reported to read-ahead, which
+     * would install the pages ahead of the scan into the replacement policy
+     * and push out the pages the ring is there to protect.
+     *
+     * @param ring the ring of the calling scan, or null to read into the pool
+     * @see #newRing
+     */
+    public Page getPage(TransactionId tid, PageId pid, Permissions perm, boolean mapped, BufferRing ring)
+            throws TransactionAbortedException, DbException {
         // some code goes here
         assert perm != null;
         if (perm == Permissions.READ_ONLY) {
@@ -67,24 +245,239 @@ public class BufferPool {
         } else {
             lm.acquireExclusiveLock(tid, pid);
         }
-        Page page = hash.get(pid);
-        if (page != null) {
-            lru.get(pid);
+        ReadAhead ra = readAhead;
+        if (ra != null && ring == null) {
+            ra.accessed(pid);
+        }
+        Frame frame = frames.get(pid);
+        if (frame != null) {
+            use(frame, ring);
+            hits.increment();
             tid.addPageId(pid);
-            return page;
+            return frame.page;
         }
-        if (hash.size() == numberOfPages) {
-            evictPage(tid);
+        misses.increment();
+        if (ring == null && frames.size() >= numberOfPages) {
+            synchronized (evictionLock) {
+                if (frames.size() >= numberOfPages) {
+                    evictPage();
+                }
+            }
         }
         Catalog catalog = Database.getCatalog();
         DbFile dbFile = catalog.getDbFile(pid.getTableId());
-        page = dbFile.readPage(pid);
-        hash.put(pid, page);
-        lru.put(pid);
+        ByteBuffer buffer = null;
+        if (arena != null && !mapped && dbFile instanceof HeapFile && dbFile.getPageSize() <= arena.getFrameSize()) {
+            buffer = arena.allocate();
+        }
+        Page page;
+        try {
+            if (buffer != null) {
+                page = ((HeapFile) dbFile).readPage(pid, buffer);
+            } else if (mapped && dbFile instanceof HeapFile) {
+                page = ((HeapFile) dbFile).readPage(pid, true);
+            } else {
+                page = dbFile.readPage(pid);
+            }
+        } catch (HeapFile.PageReadException e) {
+            if (buffer != null) {
+                arena.release(buffer);
+            }
+            throw e.getCause();
+        }
+        page = cache(pid, page, buffer, ring);
         tid.addPageId(pid);
         return page;
     }
 
+    /**
+     * Records a hit on a frame. A frame of a ring that is used other than
+     * through its ring is promoted into the replacement policy.
+     */
+    private void use(Frame frame, BufferRing ring) {
+        ReplacementPolicy.Entry entry = frame.entry;
+        if (entry != null) {
+            policy.hit(entry);
+        } else if (frame.ring != ring) {
+            synchronized (evictionLock) {
+                promote(frame);
+            }
+        }
+    }
+
+    /**
+     * Moves a frame of a ring that is still in the pool into the replacement
+     * policy. Must be called holding evictionLock.
+     */
+    private void promote(Frame frame) {
+        PageId pid = frame.page.getId();
+        if (frame.entry == null && frames.get(pid) == frame) {
+            frame.ring = null;
+            frame.entry = policy.admit(pid);
+        }
+    }
+
+    /**
+     * Installs a page that was just read, recycling the oldest page of the
+     * ring or evicting a page of the policy to make room. Another transaction
+     * holding a shared lock on the page may have read and installed it
+     * meanwhile, in which case its copy is kept.
+     *
+     * @param buffer the arena frame the page was read into, or null
+     * @return the cached copy of the page
+     */
+    private Page cache(PageId pid, Page page, ByteBuffer buffer, BufferRing ring) throws DbException {
+        synchronized (evictionLock) {
+            Frame frame = frames.get(pid);
+            if (frame != null) {
+                if (buffer != null) {
+                    arena.release(buffer);
+                }
+                use(frame, ring);
+                return frame.page;
+            }
+            if (ring != null) {
+                PageId old = ring.replace(pid);
+                if (old != null) {
+                    dropRingPage(old, ring);
+                }
+            }
+            long bytes = MemoryAccountant.estimate(page);
+            try {
+                while (isFull(bytes)) {
+                    evictPage();
+                }
+            } catch (DbException e) {
+                if (buffer != null) {
+                    arena.release(buffer);
+                }
+                throw e;
+            }
+            frame = ring == null ? new Frame(page, policy.admit(pid), null) : new Frame(page, null, ring);
+            frame.buffer = buffer;
+            charge(frame, bytes);
+            frames.put(pid, frame);
+            return page;
+        }
+    }
+
+    /**
+     * @return true if a page of the given footprint doesn't fit in the pool
+     * without evicting one
+     */
+    private boolean isFull(long bytes) {
+        return !frames.isEmpty() && (frames.size() >= numberOfPages || !accountant.fits(bytes));
+    }
+
+    private void charge(Frame frame, long bytes) {
+        frame.bytes = bytes;
+        accountant.charge(bytes);
+    }
+
+    /**
+     * Drops a page that left a ring if the ring still owns it. A page that was
+     * dirtied meanwhile can't be dropped (NO STEAL), and goes to the policy.
+     * Must be called holding evictionLock.
+     */
+    private void dropRingPage(PageId pid, BufferRing ring) {
+        Frame frame = frames.get(pid);
+        if (frame == null || frame.ring != ring || frame.entry != null) {
+            return;
+        }
+        if (frame.page.isDirty() == null) {
+            frames.remove(pid, frame);
+            recycle(frame);
+        } else {
+            promote(frame);
+        }
+    }
+
+    /**
+     * Creates a ring for a scan to read into, sized for this pool.
+     *
+     * @see #getPage(TransactionId, PageId, Permissions, boolean, BufferRing)
+     */
+    public BufferRing newRing() {
+        return new BufferRing(Math.max(1, Math.min(RING_PAGES, getNumPages() / 8)));
+    }
+
+    /**
+     * Drops the pages a ring still holds, when its scan is done with it. The
+     * ring can be used again afterwards.
+     */
+    public void releaseRing(BufferRing ring) {
+        synchronized (evictionLock) {
+            for (PageId pid : ring.clear()) {
+                if (pid != null) {
+                    dropRingPage(pid, ring);
+                }
+            }
+        }
+    }
+
+    /**
+     * Turns read-ahead of sequentially read tables on or off. Off by default.
+     *
+     * @param pages how many pages ahead of a sequential reader to prefetch, or
+     *              0 to turn read-ahead off
+     * @see ReadAhead
+     */
+    public void setReadAhead(int pages) {
+        ReadAhead old = readAhead;
+        readAhead = pages > 0 ? new ReadAhead(this, pages) : null;
+        if (old != null) {
+            old.shutdown();
+        }
+    }
+
+    /**
+     * @return the read-ahead of this pool, e.g. for its stats, or null if
+     * read-ahead is off
+     */
+    public ReadAhead getReadAhead() {
+        return readAhead;
+    }
+
+    long writeEpoch() {
+        return writeEpoch.get();
+    }
+
+    boolean isCached(PageId pid) {
+        return frames.containsKey(pid);
+    }
+
+    /**
+     * Installs a page that ReadAhead read, without locking it for anybody.
+     * The page is dropped if it is already cached, if a transaction holds an
+     * exclusive lock on it (it may be writing the page straight to disk, as
+     * HeapFile.appendTuples does), or if any page was written or dropped since
+     * the read began, as the copy read may be stale then. Only clean pages are
+     * evicted to make room.
+     *
+     * @param epoch {@link #writeEpoch} before the page was read
+     * @return true if the page was installed
+     */
+    boolean installPrefetched(Page page, long epoch) {
+        PageId pid = page.getId();
+        synchronized (evictionLock) {
+            if (writeEpoch.get() != epoch || frames.containsKey(pid) || lm.isExclusivelyLocked(pid)) {
+                return false;
+            }
+            long bytes = MemoryAccountant.estimate(page);
+            try {
+                while (isFull(bytes)) {
+                    evictPage();
+                }
+            } catch (DbException e) {
+                return false;
+            }
+            Frame frame = new Frame(page, policy.admit(pid), null);
+            charge(frame, bytes);
+            frames.put(pid, frame);
+            return true;
+        }
+    }
+
     /**
      * Releases the lock on a page.
      * Calling this is very risky, and may result in wrong behavior. Think hard
@@ -138,11 +531,51 @@ public class BufferPool {
         } else {
             //load original pages modified by this transaction from disk
             reloadPages(tid);
+            emptyAppendedPages(tid);
+        }
+        if (appended.remove(tid) != null) {
+            //the appended pages went straight to disk, so read-aheads begun before are stale
+            writeEpoch.incrementAndGet();
         }
         //release all locks held by this transaction
         lm.releaseAllLocks(tid);
     }
 
+    /**
+     * Takes exclusive locks for tid on new pages that it is about to write
+     * straight to disk past the old end of a HeapFile, bypassing the pool.
+     * Stale cached copies of the pages are dropped, and the pages are
+     * remembered so that they are emptied again if tid aborts. When tid
+     * completes, read-aheads of the pages that began before are dropped.
+     *
+     * @see HeapFile#appendTuples
+     */
+    public void lockAppendedPages(TransactionId tid, List<PageId> pids)
+            throws TransactionAbortedException {
+        for (PageId pid : pids) {
+            lm.acquireExclusiveLock(tid, pid);
+            appended.computeIfAbsent(tid, k -> Collections.synchronizedList(new ArrayList<>())).add(pid);
+            discardPage(pid);
+        }
+    }
+
+    /**
+     * Undoes the bulk appends of an aborted transaction. The pages didn't hold
+     * anything before, so their before image is an empty page.
+     */
+    private void emptyAppendedPages(TransactionId tid) throws IOException {
+        List<PageId> pids = appended.get(tid);
+        if (pids == null) {
+            return;
+        }
+        for (PageId pid : pids) {
+            DbFile dbFile = Database.getCatalog().getDbFile(pid.getTableId());
+            byte[] empty = HeapPage.createEmptyPageData(dbFile.getPageSize());
+            dbFile.writePage(new HeapPage((HeapPageId) pid, empty));
+            discardPage(pid);
+        }
+    }
+
     /**
      * Add a tuple to the specified table behalf of transaction tid.  Will
      * acquire a write lock on the page the tuple is added to(Lock
@@ -153,17 +586,23 @@ public class BufferPool {
      * their markDirty bit, and updates cached versions of any pages that have
      * been dirtied so that future requests see up-to-date pages.
      *
+     * The tuple's entries are added to the table's indexes too.
+     *
      * @param tid     the transaction adding the tuple
      * @param tableId the table to add the tuple to
      * @param t       the tuple to add
+     * @see Catalog#addIndex
      */
     public void insertTuple(TransactionId tid, int tableId, Tuple t)
             throws DbException, IOException, TransactionAbortedException {
         // some code goes here
         // not necessary for proj1
         Catalog catalog = Database.getCatalog();
-        HeapFile heapFile = (HeapFile) catalog.getDbFile(tableId);
-        ArrayList<Page> ret = heapFile.insertTuple(tid, t);//marked dirty inside heapfile's method
+        DbFile dbFile = catalog.getDbFile(tableId);
+        ArrayList<Page> ret = dbFile.insertTuple(tid, t);//marked dirty inside heapfile's method
+        for (IndexFile index : catalog.getIndexes(tableId)) {
+            index.insertTuple(tid, t);
+        }
 //        for (Page page : ret) {
 //            page.markDirty(true, tid);
 ////            hash.put(page.getId(), page);
@@ -180,6 +619,8 @@ public class BufferPool {
      * been dirtied, as it is not possible that a new page was created during the deletion
      * (note difference from addTuple).
      *
+     * The tuple's entries are removed from the table's indexes too.
+     *
      * @param tid the transaction adding the tuple.
      * @param t   the tuple to add
      */
@@ -187,8 +628,12 @@ public class BufferPool {
             throws DbException, TransactionAbortedException {
         // some code goes here
         // not necessary for proj1
-        HeapFile heapFile = (HeapFile) Database.getCatalog().getDbFile(t.getRecordId().getPageId().getTableId());
-        Page ret = heapFile.deleteTuple(tid, t);//marked dirty inside heapfile's method
+        int tableId = t.getRecordId().getPageId().getTableId();
+        for (IndexFile index : Database.getCatalog().getIndexes(tableId)) {
+            index.deleteTuple(tid, t);
+        }
+        DbFile dbFile = Database.getCatalog().getDbFile(tableId);
+        Page ret = dbFile.deleteTuple(tid, t);//marked dirty inside heapfile's method
     }
 
     /**
@@ -196,10 +641,10 @@ public class BufferPool {
      * NB: Be careful using this routine -- it writes dirty data to disk so will
      * break simpledb if running in NO STEAL mode.
      */
-    public synchronized void flushAllPages() throws IOException {
+    public void flushAllPages() throws IOException {
         // some code goes here
         // not necessary for proj1
-        for (PageId pageId : hash.keySet()) {
+        for (PageId pageId : frames.keySet()) {
             flushPage(pageId, null);
         }
     }
@@ -210,9 +655,19 @@ public class BufferPool {
      * buffer pool doesn't keep a rolled back page in its
      * cache.
      */
-    public synchronized void discardPage(PageId pid) {
+    public void discardPage(PageId pid) {
         // some code goes here
         // not necessary for proj1
+        writeEpoch.incrementAndGet();
+        synchronized (evictionLock) {
+            Frame frame = frames.remove(pid);
+            if (frame != null && frame.entry != null) {
+                policy.remove(frame.entry);
+            }
+            if (frame != null) {
+                recycle(frame);
+            }
+        }
     }
 
     /**
@@ -220,21 +675,34 @@ public class BufferPool {
      *
      * @param pid an ID indicating the page to flush
      */
-    private synchronized void flushPage(PageId pid, TransactionId tid) throws IOException {
+    private void flushPage(PageId pid, TransactionId tid) throws IOException {
         // some code goes here
         // not necessary for proj1
-        Page page = hash.get(pid);
-        assert page != null;
-        int tableId = page.getId().getTableId();
-        HeapFile heapFile = (HeapFile) Database.getCatalog().getDbFile(tableId);
-        heapFile.writePage(page);
-        page.markDirty(false, tid);
+        Frame frame = frames.get(pid);
+        if (frame == null) {
+            return;
+        }
+        synchronized (frame) {
+            Page page = frame.page;
+            int tableId = page.getId().getTableId();
+            DbFile dbFile = Database.getCatalog().getDbFile(tableId);
+            writeEpoch.incrementAndGet();
+            dbFile.writePage(page);
+            page.markDirty(false, tid);
+            synchronized (evictionLock) {
+                if (frames.get(pid) == frame) {
+                    long bytes = MemoryAccountant.estimate(page);
+                    accountant.adjust(bytes - frame.bytes);
+                    frame.bytes = bytes;
+                }
+            }
+        }
     }
 
     /**
      * Write all pages of the specified transaction to disk.
      */
-    public synchronized void flushPages(TransactionId tid) throws IOException {
+    public void flushPages(TransactionId tid) throws IOException {
         // some code goes here
         // not necessary for proj1
         Set<PageId> pages = tid.getPageIds();
@@ -243,153 +711,95 @@ public class BufferPool {
             return;
         }
         for (PageId pid : pages) {
-            if (hash.get(pid) == null) {
-                continue;
-            }
-            Page p = hash.get(pid);
-            if (p.isDirty() != null) {
+            Frame frame = frames.get(pid);
+            if (frame != null && frame.page.isDirty() != null) {
                 flushPage(pid, tid);
             }
         }
     }
 
-    public synchronized void reloadPages(TransactionId tid) throws IOException {
+    public void reloadPages(TransactionId tid) throws IOException {
         Set<PageId> pageIds = tid.getPageIds();
         tid.clearPages();
         if (pageIds == null) {
             return;
         }
         for (PageId pid : pageIds) {
-            if (hash.get(pid) == null) {
+            Frame frame = frames.get(pid);
+            if (frame == null) {
                 continue;
             }
-            Page p = hash.get(pid);
-            if (p.isDirty() != null) {
-                Catalog catalog = Database.getCatalog();
-                DbFile dbFile = catalog.getDbFile(pid.getTableId());
-                Page original = dbFile.readPage(pid);
-                hash.put(pid, original);
-                lru.put(pid);
+            synchronized (frame) {
+                if (frame.page.isDirty() != null) {
+                    Catalog catalog = Database.getCatalog();
+                    DbFile dbFile = catalog.getDbFile(pid.getTableId());
+                    Page page = dbFile.readPage(pid);
+                    synchronized (evictionLock) {
+                        if (frames.get(pid) == frame) {
+                            recycle(frame);
+                            charge(frame, MemoryAccountant.estimate(page));
+                        }
+                        frame.page = page;
+                    }
+                    if (frame.entry != null) {
+                        policy.hit(frame.entry);
+                    }
+                }
             }
         }
     }
 
     /**
-     * Discards a page from the buffer pool.
-     * Flushes the page to disk to ensure dirty pages are updated on disk.
+     * Discards a page from the buffer pool: the clean one the policy picks.
+     * Only clean pages are evicted (NO STEAL), so nothing needs to be written.
+     * Must be called holding evictionLock.
      */
-    private synchronized void evictPage(TransactionId tid) throws DbException {
+    private void evictPage() throws DbException {
         // some code goes here
         // not necessary for proj1
-        PageId pageId = null;
-        List<PageId> ret = lru.evictCandidates();
-        for (PageId tmp : ret) {
-            Page p = hash.get(tmp);
-            if (p.isDirty() == null) {
-                pageId = tmp;
-                lru.evictKey(pageId);
-                break;
-            }
-        }
-        if (pageId == null) {
+        ReplacementPolicy.Entry victim = policy.evict(this::isClean);
+        if (victim == null) {
             throw new DbException("no free clean page");
         }
-        try {
-            flushPage(pageId, tid);
-        } catch (IOException e) {
-            e.printStackTrace();
-            throw new DbException("cannot flush dirty page when evicting from buffer pool!");
-        }
-        hash.remove(pageId);
+        recycle(frames.remove(victim.pid));
     }
 
-    static class LRUCache<K> {
-        static class Node<K> {
-            Node next;
-            Node prev;
-            K key;
-
-            Node(K k) {
-                key = k;
-            }
-        }
-
-        Map<K, Node> hash = new HashMap<>();
-        Node head;
-
-        LRUCache() {
-            head = new Node(-1);
-            head.next = head;
-            head.prev = head;
-        }
-
-        K evict() {
-            throw new UnsupportedOperationException();
-//            Node n = last();
-//            if (n == null) {
-//                return null;
-//            }
-//            K ret = (K) n.key;
-//            remove(head.prev);
-//            hash.remove(ret);
-//            return ret;
-        }
-
-        List<K> evictCandidates() {
-            List<K> result = new ArrayList<>();
-            Node iter = head.prev;
-            while (iter != head) {
-                result.add((K) iter.key);
-                iter = iter.prev;
-            }
-            return result;
-        }
-
-        void evictKey(K key) {
-            assert hash.containsKey(key);
-            Node node = hash.get(key);
-            remove(node);
-            hash.remove(key);
-        }
-
-        void get(K key) {
-            Node n = hash.get(key);
-            if (n == null) {
-                return;
-            }
-            remove(n);
-            addAfter(head, n);
-        }
-
-        void put(K key) {
-            Node n = hash.get(key);
-            if (n == null) {
-                n = new Node(key);
-                hash.put(key, n);
-                addAfter(head, n);
-            } else {
-                get(key);
-            }
+    /**
+     * Credits the footprint of a page that left the pool, and gives its arena
+     * frame back to the arena once the page has let go of it. Must be called
+     * holding evictionLock, once per page.
+     */
+    private void recycle(Frame frame) {
+        accountant.credit(frame.bytes);
+        frame.bytes = 0;
+        if (frame.buffer != null) {
+            ((HeapPage) frame.page).detach();
+            arena.release(frame.buffer);
+            frame.buffer = null;
         }
+    }
 
-        void remove(Node n) {
-            assert n != head;
-            n.prev.next = n.next;
-            n.next.prev = n.prev;
-        }
+    private boolean isClean(PageId pid) {
+        Frame frame = frames.get(pid);
+        return frame != null && frame.page.isDirty() == null;
+    }
 
-        void addAfter(Node previous, Node n) {
-            n.prev = previous;
-            n.next = previous.next;
-            previous.next.prev = n;
-            previous.next = n;
-        }
+    /**
+     * A cached page, either the policy's entry for it or the ring it belongs
+     * to, the arena frame the page was read into, if any, and the bytes it is
+     * charged. buffer and bytes are guarded by evictionLock.
+     */
+    private static final class Frame {
+        volatile Page page;
+        volatile ReplacementPolicy.Entry entry;
+        volatile BufferRing ring;
+        ByteBuffer buffer;
+        long bytes;
 
-        Node last() {
-            if (head.prev == head) {
-                return null;
-            }
-            return head.prev;
+        Frame(Page page, ReplacementPolicy.Entry entry, BufferRing ring) {
+            this.page = page;
+            this.entry = entry;
+            this.ring = ring;
         }
     }
 }
@@ -0,0 +1,58 @@
+package simpledb;
+
+/**
+ * BufferRing is a small set of frames of the {@link BufferPool} that a large
+ * sequential scan reads its pages into, instead of having them compete with
+ * the pool's working set. Once the ring is full, each page the scan misses
+ * replaces the oldest page of the ring rather than a victim of the pool's
+ * {@link ReplacementPolicy}, so a scan of any size only ever holds as many
+ * frames as the ring has.
+ * <p>
+ * Pages of a ring are in the pool's page table like any other, so other
+ * transactions find them; a page another transaction gets is promoted into
+ * the policy and leaves the ring. A ring is used by one scan at a time, and
+ * should be given back with {@link BufferPool#releaseRing} when the scan is
+ * done, which drops the pages it still holds.
+ *
+ * @see BufferPool#newRing
+ * @see BufferPool#getPage(TransactionId, PageId, Permissions, boolean, BufferRing)
+ */
+public final class BufferRing {
+    private final PageId[] slots;
+    private int next;
+
+    BufferRing(int pages) {
+        slots = new PageId[pages];
+    }
+
+    /**
+     * @return the number of frames of this ring
+     */
+    public int size() {
+        return slots.length;
+    }
+
+    /**
+     * Puts a page in the next slot of the ring.
+     *
+     * @return the page that had the slot before, or null
+     */
+    PageId replace(PageId pid) {
+        PageId old = slots[next];
+        slots[next] = pid;
+        next = (next + 1) % slots.length;
+        return old;
+    }
+
+    /**
+     * Empties the ring.
+     *
+     * @return the pages it held
+     */
+    PageId[] clear() {
+        PageId[] pages = slots.clone();
+        java.util.Arrays.fill(slots, null);
+        next = 0;
+        return pages;
+    }
+}
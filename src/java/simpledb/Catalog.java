@@ -26,6 +26,12 @@ public class Catalog {
     private Map<Integer, String> tableId2TableName = new HashMap<>();
     private Map<Integer, DbFile> tableId2DbFile = new HashMap<>();
     private Map<Integer, String> tableId2PrimaryKeyFieldName = new HashMap<>();
+    /**
+     * indexId -> index
+     * tableId -> indexes of the table
+     */
+    private Map<Integer, IndexFile> indexId2Index = new HashMap<>();
+    private Map<Integer, List<IndexFile>> tableId2Indexes = new HashMap<>();
 
     /**
      * Constructor.
@@ -53,8 +59,12 @@ public class Catalog {
         if (id != null) {
             tableName2Id.remove(name);
             tableId2PrimaryKeyFieldName.remove(id);
-            tableId2DbFile.remove(id);
+            DbFile old = tableId2DbFile.remove(id);
             tableId2TableName.remove(id);
+            if (old != null && old != file) {
+                old.close();
+            }
+            dropIndexes(id);
         }
         tableName2Id.put(name, file.getId());
         tableId2DbFile.put(file.getId(), file);
@@ -78,6 +88,59 @@ public class Catalog {
         addTable(file, (UUID.randomUUID()).toString());
     }
 
+    /**
+     * Registers an index over one of the tables in the catalog. From then on,
+     * its pages can be got from the buffer pool and it is kept up to date by
+     * {@link BufferPool#insertTuple} and {@link BufferPool#deleteTuple}. The
+     * index is dropped along with its table.
+     *
+     * @throws NoSuchElementException if the indexed table doesn't exist
+     */
+    public void addIndex(IndexFile index) {
+        getDbFile(index.getTableId());
+        IndexFile old = indexId2Index.put(index.getId(), index);
+        List<IndexFile> indexes = tableId2Indexes.computeIfAbsent(index.getTableId(), k -> new ArrayList<>());
+        if (old != null) {
+            tableId2Indexes.getOrDefault(old.getTableId(), indexes).remove(old);
+            if (old != index) {
+                old.close();
+            }
+        }
+        indexes.add(index);
+    }
+
+    /**
+     * @return the indexes of the specified table; empty if it has none
+     */
+    public List<IndexFile> getIndexes(int tableid) {
+        List<IndexFile> indexes = tableId2Indexes.get(tableid);
+        return indexes == null ? Collections.emptyList() : Collections.unmodifiableList(indexes);
+    }
+
+    /**
+     * @return an index of the specified table on the given field that
+     * supports the given operation, or null if there is none
+     */
+    public IndexFile getIndex(int tableid, int field, Predicate.Op op) {
+        for (IndexFile index : getIndexes(tableid)) {
+            if (index.getKeyField() == field && index.supports(op)) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    private void dropIndexes(int tableid) {
+        List<IndexFile> indexes = tableId2Indexes.remove(tableid);
+        if (indexes == null) {
+            return;
+        }
+        for (IndexFile index : indexes) {
+            indexId2Index.remove(index.getId());
+            index.close();
+        }
+    }
+
     /**
      * Return the id of the table with a specified name,
      *
@@ -104,6 +167,18 @@ public class Catalog {
         return getDbFile(tableid).getTupleDesc();
     }
 
+    /**
+     * Returns the number of bytes per page of the specified table
+     *
+     * @param tableid The id of the table, as specified by the DbFile.getId()
+     *                function passed to addTable
+     * @throws NoSuchElementException if the table doesn't exist
+     * @see DbFile#getPageSize
+     */
+    public int getPageSize(int tableid) throws NoSuchElementException {
+        return getDbFile(tableid).getPageSize();
+    }
+
     /**
      * Returns the DbFile that can be used to read the contents of the
      * specified table.
@@ -114,6 +189,9 @@ public class Catalog {
     public DbFile getDbFile(int tableid) throws NoSuchElementException {
         // some code goes here
         DbFile file = tableId2DbFile.get(tableid);
+        if (file == null) {
+            file = indexId2Index.get(tableid);
+        }
         if (file == null) {
             throw new NoSuchElementException("requesting table with tableId: " + tableid);
         }
@@ -141,7 +219,15 @@ public class Catalog {
      */
     public void clear() {
         // some code goes here
+        for (DbFile file : tableId2DbFile.values()) {
+            file.close();
+        }
+        for (IndexFile index : indexId2Index.values()) {
+            index.close();
+        }
         tableId2DbFile.clear();
+        indexId2Index.clear();
+        tableId2Indexes.clear();
         tableName2Id.clear();
         tableId2PrimaryKeyFieldName.clear();
         tableId2TableName.clear();
@@ -149,6 +235,19 @@ public class Catalog {
 
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * <p>
+     * Each line describes one table, as in
+     * <code>name (field type [pk|index|hash], ...) [slotted|columnar|compressed] [pagesize n] [clustered field]</code>.
+     * Tables are HeapFiles, SlottedHeapFiles if marked slotted, ColumnFiles if
+     * marked columnar, or HeapFiles stored compressed if marked compressed.
+     * Tables without a pagesize use pages of {@link BufferPool#PAGE_SIZE} bytes.
+     * Fields of HeapFiles marked index get a BTreeFile, stored in
+     * <code>name.field.btree</code> and built when that file doesn't exist yet;
+     * fields marked hash get a HashIndexFile in <code>name.field.hash</code>.
+     * HeapFiles marked clustered keep the batches appended to them sorted on
+     * the given field, so that their {@link ZoneMap} lets range scans on it
+     * skip most pages; their data file should be converted with the same
+     * cluster field, see {@link HeapFile#setClusterField}.
      *
      * @param catalogFile
      */
@@ -168,10 +267,35 @@ public class Catalog {
                 String name = line.substring(0, line.indexOf("(")).trim();
                 //System.out.println("TABLE NAME: " + name);
                 String fields = line.substring(line.indexOf("(") + 1, line.indexOf(")")).trim();
+                String[] options = line.substring(line.indexOf(")") + 1).trim().split("\\s+");
+                int pageSize = BufferPool.PAGE_SIZE;
+                boolean slotted = false;
+                boolean columnar = false;
+                boolean compressed = false;
+                String clustered = null;
+                for (int i = 0; i < options.length; i++) {
+                    String option = options[i].toLowerCase();
+                    if (option.equals("pagesize")) {
+                        pageSize = Integer.parseInt(options[++i]);
+                    } else if (option.equals("slotted")) {
+                        slotted = true;
+                    } else if (option.equals("columnar")) {
+                        columnar = true;
+                    } else if (option.equals("compressed")) {
+                        compressed = true;
+                    } else if (option.equals("clustered")) {
+                        clustered = options[++i];
+                    } else if (!option.isEmpty()) {
+                        System.out.println("Unknown table option " + options[i]);
+                        System.exit(0);
+                    }
+                }
                 String[] els = fields.split(",");
                 ArrayList<String> names = new ArrayList<String>();
                 ArrayList<Type> types = new ArrayList<Type>();
                 String primaryKey = "";
+                List<Integer> indexed = new ArrayList<Integer>();
+                List<Integer> hashed = new ArrayList<Integer>();
                 for (String e : els) {
                     String[] els2 = e.trim().split(" ");
                     names.add(els2[0].trim());
@@ -186,6 +310,10 @@ public class Catalog {
                     if (els2.length == 3) {
                         if (els2[2].trim().equals("pk"))
                             primaryKey = els2[0].trim();
+                        else if (els2[2].trim().equals("index"))
+                            indexed.add(names.size() - 1);
+                        else if (els2[2].trim().equals("hash"))
+                            hashed.add(names.size() - 1);
                         else {
                             System.out.println("Unknown annotation " + els2[2]);
                             System.exit(0);
@@ -195,14 +323,42 @@ public class Catalog {
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder + name + ".dat"), t);
+                File tableFile = new File(baseFolder + name + ".dat");
+                DbFile tabHf = columnar ? new ColumnFile(tableFile, t, pageSize)
+                        : slotted ? new SlottedHeapFile(tableFile, t, pageSize)
+                        : new HeapFile(tableFile, t, pageSize, compressed);
+                if (clustered != null) {
+                    if (!(tabHf instanceof HeapFile) || !names.contains(clustered)) {
+                        throw new IllegalArgumentException("cannot cluster " + name + " on " + clustered);
+                    }
+                    ((HeapFile) tabHf).setClusterField(names.indexOf(clustered));
+                }
                 addTable(tabHf, name, primaryKey);
                 System.out.println("Added table : " + name + " with schema " + t);
+                List<Integer> allIndexed = new ArrayList<Integer>(indexed);
+                allIndexed.addAll(hashed);
+                for (int field : allIndexed) {
+                    if (!(tabHf instanceof HeapFile)) {
+                        throw new IllegalArgumentException("only HeapFiles can be indexed");
+                    }
+                    boolean hash = hashed.contains(field);
+                    File indexFile = new File(baseFolder + name + "." + names.get(field) + (hash ? ".hash" : ".btree"));
+                    boolean exists = indexFile.exists();
+                    IndexFile index = hash ? new HashIndexFile(indexFile, tabHf.getId(), field, pageSize)
+                            : new BTreeFile(indexFile, tabHf.getId(), field, pageSize);
+                    addIndex(index);
+                    if (!exists) {
+                        TransactionId tid = new TransactionId();
+                        index.build(tid);
+                        Database.getBufferPool().transactionComplete(tid);
+                    }
+                    System.out.println("Added " + (hash ? "hash " : "") + "index on " + name + "." + names.get(field));
+                }
             }
-        } catch (IOException e) {
+        } catch (IOException | DbException | TransactionAbortedException e) {
             e.printStackTrace();
             System.exit(0);
-        } catch (IndexOutOfBoundsException e) {
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
             System.out.println("Invalid catalog entry : " + line);
             System.exit(0);
         }
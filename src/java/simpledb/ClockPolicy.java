@@ -0,0 +1,70 @@
+package simpledb;
+
+/**
+ * ClockPolicy is the CLOCK approximation of LRU. Pages sit on a circular list
+ * swept by a hand; a hit sets the page's reference bit, and eviction clears
+ * the bits it passes until it reaches a page without one, which is evicted.
+ * New pages go right behind the hand, without their bit set, so they are the
+ * last ones the hand reaches but the first it evicts unless they are used
+ * again. Hits never write more than one flag, and eviction is amortized O(1).
+ * <p>
+ * This is the default policy of {@link BufferPool}.
+ */
+public class ClockPolicy implements ReplacementPolicy {
+    private Entry hand;
+    private int size;
+
+    public Entry admit(PageId pid) {
+        Entry e = new Entry(pid);
+        add(e);
+        return e;
+    }
+
+    /**
+     * Puts an entry of another policy on the clock, right behind the hand.
+     */
+    void add(Entry e) {
+        e.referenced = false;
+        if (hand == null) {
+            hand = e;
+        } else {
+            e.linkBefore(hand);
+        }
+        size++;
+    }
+
+    public void hit(Entry e) {
+        if (!e.referenced) {
+            e.referenced = true;
+        }
+    }
+
+    public void remove(Entry e) {
+        if (e.next == e) {
+            hand = null;
+        } else if (hand == e) {
+            hand = e.next;
+        }
+        e.unlink();
+        size--;
+    }
+
+    public Entry evict(java.util.function.Predicate<PageId> evictable) {
+        // two rounds clear every bit; a third finds nothing new
+        for (int i = 0; i < 2 * size + 1 && hand != null; i++) {
+            Entry e = hand;
+            hand = e.next;
+            if (e.referenced) {
+                e.referenced = false;
+            } else if (evictable.test(e.pid)) {
+                remove(e);
+                return e;
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+}
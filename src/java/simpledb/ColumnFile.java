@@ -0,0 +1,418 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * ColumnFile is a DbFile that stores each field of its TupleDesc in a page
+ * sequence of its own, so a scan that needs only some of the columns reads
+ * only their pages.
+ * <p>
+ * Column i lives in the file named after the table file with ".i" appended,
+ * as ColumnPages. Rows are positional: row r is in slot r % n of page r / n of
+ * every column, where n is the number of values of that column's type that fit
+ * on a page. Every column page has its own bitmap of used rows, so a scan can
+ * tell which rows exist from any one column. Column 0 determines how many rows
+ * the table has room for, and RecordIds of its tuples point at column 0
+ * pages.
+ *
+ * @see ColumnPage
+ * @see SeqScan#setRequiredFields
+ */
+public class ColumnFile implements DbFile {
+    private static final long serialVersionUID = 1L;
+
+    private final File file;
+    private final TupleDesc tupleDesc;
+    private final int pageSize;
+    private transient FileChannel[] channels;
+    private transient FreeSpaceMap freeSpaceMap;
+
+    /**
+     * Constructs a column file backed by one file per column next to the
+     * specified file, with pages of {@link BufferPool#PAGE_SIZE} bytes.
+     */
+    public ColumnFile(File f, TupleDesc td) {
+        this(f, td, BufferPool.PAGE_SIZE);
+    }
+
+    /**
+     * Constructs a column file backed by one file per column next to the
+     * specified file, with pages of the given size.
+     */
+    public ColumnFile(File f, TupleDesc td, int pageSize) {
+        file = f;
+        tupleDesc = td;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @return the file whose name the column files are named after. The
+     * file itself isn't used.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the file holding the pages of the given column
+     */
+    public File columnFile(int column) {
+        return new File(file.getPath() + "." + column);
+    }
+
+    public int getId() {
+        return file.getAbsolutePath().hashCode();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return tupleDesc;
+    }
+
+    @Override
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return the number of rows that fit on a page of the given column
+     */
+    public int rowsPerPage(int column) {
+        return ColumnPage.slotsPerPage(tupleDesc.getFieldType(column), pageSize);
+    }
+
+    private synchronized FileChannel getChannel(int column) throws IOException {
+        if (channels == null) {
+            channels = new FileChannel[tupleDesc.numFields()];
+        }
+        if (channels[column] == null || !channels[column].isOpen()) {
+            channels[column] = new RandomAccessFile(columnFile(column), "rw").getChannel();
+        }
+        return channels[column];
+    }
+
+    @Override
+    public synchronized void close() {
+        if (freeSpaceMap != null) {
+            freeSpaceMap.close();
+            freeSpaceMap = null;
+        }
+        if (channels == null) {
+            return;
+        }
+        for (FileChannel channel : channels) {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        channels = null;
+    }
+
+    /**
+     * Returns the number of pages of all columns together.
+     */
+    public int numPages() {
+        int pages = 0;
+        for (int i = 0; i < tupleDesc.numFields(); i++) {
+            pages += numPages(i);
+        }
+        return pages;
+    }
+
+    /**
+     * Returns the number of pages of the given column on disk.
+     */
+    public int numPages(int column) {
+        return (int) (columnFile(column).length() / pageSize);
+    }
+
+    /**
+     * @return the number of rows the table has room for; rows past the end of
+     * a column's file are empty
+     */
+    int numRows() {
+        return numPages(0) * rowsPerPage(0);
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        if (!(pid instanceof ColumnPageId)) {
+            return null;
+        }
+        ColumnPageId cpid = (ColumnPageId) pid;
+        try {
+            long offset = (long) cpid.pageNumber() * pageSize;
+            ByteBuffer buffer = ByteBuffer.allocate(pageSize);
+            FileChannel fc = getChannel(cpid.getColumn());
+            //a short read past the end of file leaves the rest of the page zeroed
+            while (buffer.hasRemaining()) {
+                if (fc.read(buffer, offset + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            return new ColumnPage(cpid, buffer.array());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        ColumnPageId pid = (ColumnPageId) page.getId();
+        long offset = (long) pid.pageNumber() * pageSize;
+        ByteBuffer buffer = ByteBuffer.wrap(page.getPageData());
+        FileChannel fc = getChannel(pid.getColumn());
+        while (buffer.hasRemaining()) {
+            fc.write(buffer, offset + buffer.position());
+        }
+        if (pid.getColumn() == 0) {
+            getFreeSpaceMap().persist(pid.pageNumber(), ((ColumnPage) page).getNumEmptySlots() > 0);
+        }
+    }
+
+    /**
+     * Returns the map of column 0 pages with an empty slot, loading or
+     * rebuilding it on first use.
+     */
+    private synchronized FreeSpaceMap getFreeSpaceMap() throws IOException {
+        if (freeSpaceMap == null) {
+            FreeSpaceMap fsm = new FreeSpaceMap(FreeSpaceMap.sideFile(columnFile(0)));
+            int pages = numPages(0);
+            if (!fsm.load(pages)) {
+                BitSet hasFree = new BitSet(pages);
+                for (int i = 0; i < pages; i++) {
+                    ColumnPage page = (ColumnPage) readPage(new ColumnPageId(getId(), 0, i));
+                    hasFree.set(i, page.getNumEmptySlots() > 0);
+                }
+                fsm.reset(hasFree, pages);
+            }
+            freeSpaceMap = fsm;
+        }
+        return freeSpaceMap;
+    }
+
+    /**
+     * Grows column 0 by one empty page, which the free space map marks full
+     * until the caller has inserted into it. The other columns grow when
+     * their pages for the new rows are flushed.
+     *
+     * @return the number of the new page
+     */
+    private synchronized int allocatePage() throws IOException {
+        FreeSpaceMap fsm = getFreeSpaceMap();
+        int pageNo = numPages(0);
+        getChannel(0).write(ByteBuffer.wrap(new byte[1]), (long) (pageNo + 1) * pageSize - 1);
+        fsm.setFree(pageNo, false);
+        return pageNo;
+    }
+
+    /**
+     * @return the page of the given column that holds the given row
+     */
+    private ColumnPage getRowPage(TransactionId tid, int column, int row, Permissions perm)
+            throws DbException, TransactionAbortedException {
+        PageId pid = new ColumnPageId(getId(), column, row / rowsPerPage(column));
+        return (ColumnPage) Database.getBufferPool().getPage(tid, pid, perm);
+    }
+
+    /**
+     * @return the row the tuple with the given RecordId is stored in
+     */
+    private int row(RecordId rid) {
+        return rid.getPageId().pageNumber() * rowsPerPage(0) + rid.tupleno();
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        if (!tupleDesc.equals(t.getTupleDesc())) {
+            throw new DbException("tuple desc not match: " + t);
+        }
+        BufferPool bufferPool = Database.getBufferPool();
+        FreeSpaceMap fsm = getFreeSpaceMap();
+        int row = -1;
+
+        int numPages = numPages(0);
+        for (int i = fsm.nextFreePage(0); i >= 0 && i < numPages; i = fsm.nextFreePage(i + 1)) {
+            ColumnPageId pid = new ColumnPageId(getId(), 0, i);
+            boolean held = bufferPool.holdsLock(tid, pid);
+            ColumnPage page = (ColumnPage) bufferPool.getPage(tid, pid, Permissions.READ_ONLY);
+            if (page.getNumEmptySlots() > 0) {
+                row = i * rowsPerPage(0) + page.firstEmptySlot();
+                break;
+            }
+            //stale hint. we only looked at this page, so don't keep it locked
+            fsm.setFree(i, false);
+            if (!held) {
+                bufferPool.releasePage(tid, pid);
+            }
+        }
+        if (row < 0) {
+            row = allocatePage() * rowsPerPage(0);
+        }
+
+        ArrayList<Page> result = new ArrayList<>();
+        for (int i = 0; i < tupleDesc.numFields(); i++) {
+            ColumnPage page = getRowPage(tid, i, row, Permissions.READ_WRITE);
+            page.markDirty(true, tid);
+            page.setField(row % rowsPerPage(i), t.getField(i));
+            result.add(page);
+        }
+        ColumnPage first = (ColumnPage) result.get(0);
+        fsm.setFree(first.getId().pageNumber(), first.getNumEmptySlots() > 0);
+        t.setRecordId(new RecordId(first.getId(), row % rowsPerPage(0)));
+        return result;
+    }
+
+    // see DbFile.java for javadocs
+    public Page deleteTuple(TransactionId tid, Tuple t) throws DbException,
+            TransactionAbortedException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !(rid.getPageId() instanceof ColumnPageId)
+                || rid.getPageId().getTableId() != getId()) {
+            throw new DbException("tuple not found:" + t);
+        }
+        int row = row(rid);
+        ColumnPage[] pages = new ColumnPage[tupleDesc.numFields()];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = getRowPage(tid, i, row, Permissions.READ_WRITE);
+            int slot = row % rowsPerPage(i);
+            if (!pages[i].isSlotUsed(slot)) {
+                throw new DbException("tuple not found:" + t);
+            }
+            //fields a scan didn't read are null and match anything
+            Field f = t.getField(i);
+            if (f != null && !f.equals(pages[i].getField(slot))) {
+                throw new DbException("tuple field(" + i + ") not match: param:" + f);
+            }
+        }
+        for (int i = 0; i < pages.length; i++) {
+            pages[i].markDirty(true, tid);
+            pages[i].clearSlot(row % rowsPerPage(i));
+        }
+        try {
+            getFreeSpaceMap().setFree(pages[0].getId().pageNumber(), true);
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new DbException("cannot load free space map of " + file);
+        }
+        t.setRecordId(null);
+        return pages[0];
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return iterator(tid, null);
+    }
+
+    /**
+     * Returns an iterator over the tuples of this file that reads only the
+     * pages of the given columns. The other fields of the returned tuples are
+     * null.
+     *
+     * @param columns indexes of the fields to read, or null for all of them
+     */
+    public DbFileIterator iterator(TransactionId tid, Set<Integer> columns) {
+        int[] read;
+        if (columns == null) {
+            read = new int[tupleDesc.numFields()];
+            for (int i = 0; i < read.length; i++) {
+                read[i] = i;
+            }
+        } else if (columns.isEmpty()) {
+            //still need one column to tell which rows exist
+            read = new int[]{0};
+        } else {
+            read = new int[columns.size()];
+            int n = 0;
+            for (int column : new TreeSet<>(columns)) {
+                read[n++] = column;
+            }
+        }
+        return new ColumnFileIterator(this, tid, read);
+    }
+
+    static class ColumnFileIterator implements DbFileIterator {
+        private final ColumnFile file;
+        private final TransactionId tid;
+        private final int[] columns;
+        private final ColumnPage[] pages;
+        private int row = 0;
+        private boolean opened = false;
+        private Tuple next;
+
+        ColumnFileIterator(ColumnFile file, TransactionId tid, int[] columns) {
+            this.file = file;
+            this.tid = tid;
+            this.columns = columns;
+            this.pages = new ColumnPage[columns.length];
+        }
+
+        @Override
+        public void open() throws DbException, TransactionAbortedException {
+            row = 0;
+            next = null;
+            Arrays.fill(pages, null);
+            opened = true;
+        }
+
+        private ColumnPage page(int i) throws DbException, TransactionAbortedException {
+            int column = columns[i];
+            int pageNo = row / file.rowsPerPage(column);
+            if (pages[i] == null || pages[i].getId().pageNumber() != pageNo) {
+                pages[i] = file.getRowPage(tid, column, row, Permissions.READ_ONLY);
+            }
+            return pages[i];
+        }
+
+        @Override
+        public boolean hasNext() throws DbException, TransactionAbortedException {
+            if (!opened) {
+                return false;
+            }
+            int numRows = file.numRows();
+            while (next == null && row < numRows) {
+                if (page(0).isSlotUsed(row % file.rowsPerPage(columns[0]))) {
+                    Tuple t = new Tuple(file.tupleDesc);
+                    for (int i = 0; i < columns.length; i++) {
+                        t.setField(columns[i], page(i).getField(row % file.rowsPerPage(columns[i])));
+                    }
+                    int rowsPerPage0 = file.rowsPerPage(0);
+                    t.setRecordId(new RecordId(new ColumnPageId(file.getId(), 0, row / rowsPerPage0),
+                            row % rowsPerPage0));
+                    next = t;
+                }
+                row++;
+            }
+            return next != null;
+        }
+
+        @Override
+        public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException("no more tuples");
+            }
+            Tuple t = next;
+            next = null;
+            return t;
+        }
+
+        @Override
+        public void rewind() throws DbException, TransactionAbortedException {
+            close();
+            open();
+        }
+
+        @Override
+        public void close() {
+            opened = false;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * ColumnPage stores the values of one column of a ColumnFile for a run of
+ * consecutive rows. Its format is that of a HeapPage whose tuples have the
+ * column's type as their only field: a header bitmap with one bit per slot,
+ * set if the row is in use, followed by fixed-size slots. Slot i of page p
+ * holds row p * slots per page + i.
+ *
+ * @see ColumnFile
+ */
+public class ColumnPage implements Page {
+    final ColumnPageId pid;
+    final Type type;
+    final int pageSize;
+    final int numSlots;
+    final byte[] data;
+    final ByteBuffer bb;
+    int numEmptySlots;
+
+    byte[] oldData;
+    TransactionId dirtier;
+
+    /**
+     * Create a ColumnPage from a set of bytes of data read from disk. The
+     * bytes are copied, so the array may be reused by the caller.
+     */
+    public ColumnPage(ColumnPageId id, byte[] data) throws IOException {
+        this.pid = id;
+        this.type = Database.getCatalog().getTupleDesc(id.getTableId()).getFieldType(id.getColumn());
+        this.pageSize = Database.getCatalog().getPageSize(id.getTableId());
+        this.numSlots = slotsPerPage(type, pageSize);
+        this.data = Arrays.copyOf(data, pageSize);
+        this.bb = ByteBuffer.wrap(this.data);
+        numEmptySlots = numSlots;
+        for (int i = 0; i < numSlots; i++) {
+            if (isSlotUsed(i)) {
+                numEmptySlots--;
+            }
+        }
+        setBeforeImage();
+    }
+
+    /**
+     * @return the number of values of the given type that fit on a page
+     */
+    public static int slotsPerPage(Type type, int pageSize) {
+        return pageSize * 8 / (type.getLen() * 8 + 1);
+    }
+
+    public ColumnPageId getId() {
+        return pid;
+    }
+
+    private int slotOffset(int slot) {
+        return (numSlots + 7) / 8 + slot * type.getLen();
+    }
+
+    /**
+     * Returns true if associated slot on this page is filled.
+     */
+    public boolean isSlotUsed(int slot) {
+        return (data[slot / 8] & (1 << (slot % 8))) != 0;
+    }
+
+    /**
+     * Returns the number of empty slots on this page.
+     */
+    public int getNumEmptySlots() {
+        return numEmptySlots;
+    }
+
+    /**
+     * @return the first empty slot, or -1 if the page is full
+     */
+    public int firstEmptySlot() {
+        if (numEmptySlots == 0) {
+            return -1;
+        }
+        for (int i = 0; i < numSlots; i++) {
+            if (!isSlotUsed(i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the value in a used slot
+     */
+    public Field getField(int slot) {
+        try {
+            return type.parse(bb, slotOffset(slot));
+        } catch (java.text.ParseException e) {
+            e.printStackTrace();
+            throw new java.util.NoSuchElementException("parsing error!");
+        }
+    }
+
+    /**
+     * Stores a value in an empty slot and marks the slot used.
+     *
+     * @throws DbException if the slot is in use or the value is of the wrong type
+     */
+    public void setField(int slot, Field f) throws DbException {
+        if (isSlotUsed(slot)) {
+            throw new DbException("slot " + slot + " of " + pid + " is in use");
+        }
+        if (f == null || f.getType() != type) {
+            throw new DbException("field not match: " + f);
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(type.getLen());
+        try {
+            f.serialize(new DataOutputStream(baos));
+        } catch (IOException e) {
+            // this really shouldn't happen
+            e.printStackTrace();
+        }
+        System.arraycopy(baos.toByteArray(), 0, data, slotOffset(slot), type.getLen());
+        data[slot / 8] |= 1 << (slot % 8);
+        numEmptySlots--;
+    }
+
+    /**
+     * Empties a used slot.
+     *
+     * @throws DbException if the slot is already empty
+     */
+    public void clearSlot(int slot) throws DbException {
+        if (!isSlotUsed(slot)) {
+            throw new DbException("slot " + slot + " of " + pid + " is empty");
+        }
+        Arrays.fill(data, slotOffset(slot), slotOffset(slot) + type.getLen(), (byte) 0);
+        data[slot / 8] &= ~(1 << (slot % 8));
+        numEmptySlots++;
+    }
+
+    public byte[] getPageData() {
+        return data.clone();
+    }
+
+    public ColumnPage getBeforeImage() {
+        try {
+            return new ColumnPage(pid, oldData);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        oldData = getPageData();
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtier = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtier;
+    }
+}
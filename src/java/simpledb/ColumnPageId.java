@@ -0,0 +1,64 @@
+package simpledb;
+
+/**
+ * Unique identifier for ColumnPage objects: a page of one column of a
+ * ColumnFile.
+ */
+public class ColumnPageId implements PageId {
+    private int tableId;
+    private int column;
+    private int pageNumber;
+
+    /**
+     * Constructor. Create a page id structure for a specific page of a
+     * specific column of a specific table.
+     *
+     * @param tableId The table that is being referenced
+     * @param column  The index of the column in the table's TupleDesc
+     * @param pgNo    The page number in that column.
+     */
+    public ColumnPageId(int tableId, int column, int pgNo) {
+        this.tableId = tableId;
+        this.column = column;
+        this.pageNumber = pgNo;
+    }
+
+    public int getTableId() {
+        return tableId;
+    }
+
+    /**
+     * @return the index of the column this page belongs to
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * @return the page number in the column getColumn() of the table
+     * getTableId()
+     */
+    public int pageNumber() {
+        return pageNumber;
+    }
+
+    public int hashCode() {
+        return (tableId * 31 + column) * 31 + pageNumber;
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof ColumnPageId)) {
+            return false;
+        }
+        ColumnPageId other = (ColumnPageId) o;
+        return tableId == other.tableId && column == other.column && pageNumber == other.pageNumber;
+    }
+
+    public int[] serialize() {
+        return new int[]{tableId, column, pageNumber};
+    }
+
+    public String toString() {
+        return "ColumnPageId(" + tableId + ", " + column + ", " + pageNumber + ")";
+    }
+}
@@ -0,0 +1,264 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * CompressedPageStore keeps the pages of a compressed HeapFile. Each page is
+ * deflated on its own into a variable-size block of the table file, and an
+ * index in a side file (the table file name with ".idx" appended) maps page
+ * numbers to blocks. Pages are inflated back to the normal HeapPage layout on
+ * read, so the buffer pool and everything above it never see the compressed
+ * form.
+ * <p>
+ * The index holds one entry per page: the block's offset in the table file
+ * (long), the length of the compressed page in it (int) and the block's
+ * capacity (int). A length of 0 stands for an empty page, which has no block;
+ * a length equal to the page size means the page is stored uncompressed
+ * because it didn't deflate to anything smaller. A page that is rewritten goes
+ * back into its block if it fits, and to a new block at the end of the file
+ * otherwise. Blocks are rounded up to {@link #BLOCK_ALIGN} bytes, so small
+ * updates usually fit in place.
+ *
+ * @see HeapFile#isCompressed
+ */
+public class CompressedPageStore {
+    private static final int ENTRY_SIZE = 16;
+    /**
+     * Block sizes are multiples of this many bytes.
+     */
+    static final int BLOCK_ALIGN = 64;
+
+    private final File file;
+    private final File indexFile;
+    private final int pageSize;
+    private FileChannel channel;
+    private FileChannel indexChannel;
+    private final Deflater deflater = new Deflater();
+    private final Inflater inflater = new Inflater();
+    private long end = -1;
+
+    /**
+     * Creates a store for the given table file and its index side file.
+     * Nothing is read until a page is.
+     */
+    public CompressedPageStore(File file, int pageSize) {
+        this.file = file;
+        this.indexFile = indexFile(file);
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @return the side file holding the page index of the given table file
+     */
+    public static File indexFile(File tableFile) {
+        return new File(tableFile.getPath() + ".idx");
+    }
+
+    /**
+     * @return the number of pages in the store
+     */
+    public int numPages() {
+        return (int) (indexFile.length() / ENTRY_SIZE);
+    }
+
+    /**
+     * Reads and inflates a page. Pages past the end of the store read as
+     * empty pages.
+     *
+     * @return the page's data, pageSize bytes in the HeapPage format
+     */
+    public synchronized byte[] read(int pageNo) throws IOException {
+        byte[] data = new byte[pageSize];
+        if (pageNo >= numPages()) {
+            return data;
+        }
+        ByteBuffer entry = readEntry(pageNo);
+        long offset = entry.getLong();
+        int length = entry.getInt();
+        if (length == 0) {
+            return data;
+        }
+        ByteBuffer block = ByteBuffer.allocate(length);
+        FileChannel fc = getChannel();
+        while (block.hasRemaining()) {
+            if (fc.read(block, offset + block.position()) < 0) {
+                throw new IOException("block of page " + pageNo + " is truncated in " + file);
+            }
+        }
+        if (length == pageSize) {
+            return block.array();
+        }
+        inflater.reset();
+        inflater.setInput(block.array());
+        try {
+            int n = 0;
+            while (n < pageSize && !inflater.finished()) {
+                n += inflater.inflate(data, n, pageSize - n);
+                if (inflater.needsInput()) {
+                    break;
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt block of page " + pageNo + " in " + file, e);
+        }
+        return data;
+    }
+
+    /**
+     * Deflates a page and writes it to its block, or to a new block if it
+     * doesn't fit, then updates its index entry.
+     */
+    public synchronized void write(int pageNo, byte[] data) throws IOException {
+        byte[] block = deflate(data);
+        int length = block.length;
+        long offset = 0;
+        int capacity = 0;
+        if (pageNo < numPages()) {
+            ByteBuffer entry = readEntry(pageNo);
+            offset = entry.getLong();
+            entry.getInt();
+            capacity = entry.getInt();
+        }
+        if (length > capacity) {
+            offset = end();
+            capacity = (length + BLOCK_ALIGN - 1) / BLOCK_ALIGN * BLOCK_ALIGN;
+            end = offset + capacity;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(block);
+        FileChannel fc = getChannel();
+        while (buffer.hasRemaining()) {
+            fc.write(buffer, offset + buffer.position());
+        }
+        //entries of pages skipped over are zeros, i.e. empty pages
+        writeEntry(pageNo, offset, length, capacity);
+    }
+
+    /**
+     * Grows the store by the given number of empty pages.
+     */
+    public synchronized void extend(int pages) throws IOException {
+        int last = numPages() + pages - 1;
+        if (pages > 0) {
+            writeEntry(last, 0, 0, 0);
+        }
+    }
+
+    /**
+     * Shrinks the store to the given number of pages. The table file is cut
+     * back to the end of the last block still in use.
+     */
+    public synchronized void truncate(int pages) throws IOException {
+        if (pages >= numPages()) {
+            return;
+        }
+        getIndexChannel().truncate((long) pages * ENTRY_SIZE);
+        end = -1;
+        getChannel().truncate(end());
+    }
+
+    /**
+     * Closes the table and index files. They are reopened on the next access.
+     */
+    public synchronized void close() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            if (indexChannel != null) {
+                indexChannel.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+        indexChannel = null;
+        end = -1;
+    }
+
+    /**
+     * @return the page compressed, or the page itself if it doesn't compress
+     * to fewer than pageSize bytes. An empty array for an all-zero page.
+     */
+    private byte[] deflate(byte[] data) {
+        boolean empty = true;
+        for (int i = 0; i < data.length && empty; i++) {
+            empty = data[i] == 0;
+        }
+        if (empty) {
+            return new byte[0];
+        }
+        deflater.reset();
+        deflater.setInput(data, 0, pageSize);
+        deflater.finish();
+        byte[] out = new byte[pageSize];
+        int n = 0;
+        while (!deflater.finished() && n < pageSize) {
+            n += deflater.deflate(out, n, pageSize - n);
+        }
+        if (!deflater.finished() || n >= pageSize) {
+            return data.clone();
+        }
+        byte[] block = new byte[n];
+        System.arraycopy(out, 0, block, 0, n);
+        return block;
+    }
+
+    /**
+     * @return the offset just past the last block of the table file
+     */
+    private long end() throws IOException {
+        if (end < 0) {
+            end = 0;
+            for (int i = 0; i < numPages(); i++) {
+                ByteBuffer entry = readEntry(i);
+                long offset = entry.getLong();
+                entry.getInt();
+                end = Math.max(end, offset + entry.getInt());
+            }
+        }
+        return end;
+    }
+
+    private ByteBuffer readEntry(int pageNo) throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+        FileChannel fc = getIndexChannel();
+        while (entry.hasRemaining()) {
+            if (fc.read(entry, (long) pageNo * ENTRY_SIZE + entry.position()) < 0) {
+                throw new IOException("index entry of page " + pageNo + " is truncated in " + indexFile);
+            }
+        }
+        entry.flip();
+        return entry;
+    }
+
+    private void writeEntry(int pageNo, long offset, int length, int capacity) throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+        entry.putLong(offset).putInt(length).putInt(capacity);
+        entry.flip();
+        FileChannel fc = getIndexChannel();
+        while (entry.hasRemaining()) {
+            fc.write(entry, (long) pageNo * ENTRY_SIZE + entry.position());
+        }
+    }
+
+    private FileChannel getChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = new RandomAccessFile(file, "rw").getChannel();
+        }
+        return channel;
+    }
+
+    private FileChannel getIndexChannel() throws IOException {
+        if (indexChannel == null || !indexChannel.isOpen()) {
+            indexChannel = new RandomAccessFile(indexFile, "rw").getChannel();
+        }
+        return indexChannel;
+    }
+}
@@ -57,8 +57,36 @@ public class Database {
         return _instance._bufferpool;
     }
 
+    /**
+     * Replaces the buffer pool with one that evicts the pages the given
+     * policy picks, e.g. a {@link ClockPolicy} or {@link TwoQueuePolicy}.
+     */
+    public static BufferPool resetBufferPool(int pages, ReplacementPolicy policy) {
+        _instance._bufferpool = new BufferPool(pages, policy);
+        return _instance._bufferpool;
+    }
+
+    /**
+     * Replaces the buffer pool with one that reads pages into the frames of
+     * the given arena, see {@link BufferPool#newArena}.
+     */
+    public static BufferPool resetBufferPool(int pages, ReplacementPolicy policy, PageArena arena) {
+        _instance._bufferpool = new BufferPool(pages, policy, arena);
+        return _instance._bufferpool;
+    }
+
+    /**
+     * Replaces the buffer pool with one whose pages must also fit in the
+     * given number of bytes of heap, see {@link MemoryAccountant}.
+     */
+    public static BufferPool resetBufferPool(int pages, ReplacementPolicy policy, long budget) {
+        _instance._bufferpool = new BufferPool(pages, policy, null, budget);
+        return _instance._bufferpool;
+    }
+
     //reset the database, used for unit tests only.
     public static void reset() {
+        _instance._catalog.clear();
     	_instance = new Database();
     }
 
@@ -84,4 +84,26 @@ public interface DbFile extends Serializable {
      * @return TupleDesc of this DbFile.
      */
     public TupleDesc getTupleDesc();
+
+    /**
+     * Returns the number of bytes per page of this file, including header.
+     * Defaults to {@link BufferPool#PAGE_SIZE}.
+     */
+    public default int getPageSize() {
+        return BufferPool.PAGE_SIZE;
+    }
+
+    /**
+     * Returns the number of pages in this file, e.g. for estimating the cost of
+     * scanning it.
+     */
+    public int numPages();
+
+    /**
+     * Releases any OS resources (open channels etc.) held by this file.
+     * Called by the catalog when the table is dropped or replaced. The file
+     * must still be usable afterwards; it may simply reopen what it needs.
+     */
+    public default void close() {
+    }
 }
@@ -39,9 +39,23 @@ public class Filter extends Operator {
             TransactionAbortedException {
         // some code goes here
         super.open();
+        pushDown(predicate);
         iterator.open();
     }
 
+    /**
+     * Hands a predicate to the SeqScan under this filter (possibly through
+     * other filters), so the scan can drop rows before building tuples for them.
+     * The filter still applies the predicate itself.
+     */
+    private void pushDown(Predicate p) {
+        if (iterator instanceof SeqScan) {
+            ((SeqScan) iterator).addPredicate(p);
+        } else if (iterator instanceof Filter) {
+            ((Filter) iterator).pushDown(p);
+        }
+    }
+
     public void close() {
         // some code goes here
         super.close();
@@ -0,0 +1,176 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+
+/**
+ * FreeSpaceMap remembers which pages of a HeapFile have at least one empty
+ * slot, so that HeapFile.insertTuple can go straight to such a page instead of
+ * looking at every page of the table.
+ * <p>
+ * The map is persisted in a side file next to the table file (the table file
+ * name with ".fsm" appended). The side file starts with an int holding the
+ * number of pages it covers, followed by a bitmap with one bit per page, set
+ * if the page has free space. The bit of a page is written through every time
+ * the page is written to disk, so the side file describes the table as it is
+ * on disk. In memory, bits also follow inserts and deletes of running
+ * transactions.
+ * <p>
+ * The map is only a hint: a transaction may abort after a delete freed a slot,
+ * so callers must check the page itself and clear the bit if it turns out to
+ * be full.
+ *
+ * @see HeapFile#insertTuple
+ */
+public class FreeSpaceMap {
+    private static final int HEADER_SIZE = 4;
+
+    private final File file;
+    private final BitSet free = new BitSet();
+    private int numPages = 0;
+    private FileChannel channel;
+
+    /**
+     * Creates a map stored in the given side file. Nothing is read until
+     * {@link #load} is called.
+     */
+    public FreeSpaceMap(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the side file holding the free space map of the given table file
+     */
+    public static File sideFile(File tableFile) {
+        return new File(tableFile.getPath() + ".fsm");
+    }
+
+    /**
+     * Reads the map from its side file.
+     *
+     * @param expectedPages the number of pages in the table right now
+     * @return false if the side file is missing or doesn't cover exactly
+     * expectedPages pages, in which case the caller should rebuild the map
+     */
+    public synchronized boolean load(int expectedPages) throws IOException {
+        free.clear();
+        numPages = 0;
+        if (!file.exists() || file.length() < HEADER_SIZE) {
+            return false;
+        }
+        FileChannel fc = getChannel();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        fc.read(header, 0);
+        header.flip();
+        int pages = header.getInt();
+        if (pages != expectedPages || fc.size() < HEADER_SIZE + (pages + 7) / 8) {
+            return false;
+        }
+        ByteBuffer bits = ByteBuffer.allocate((pages + 7) / 8);
+        while (bits.hasRemaining()) {
+            if (fc.read(bits, HEADER_SIZE + bits.position()) < 0) {
+                return false;
+            }
+        }
+        free.or(BitSet.valueOf(bits.array()));
+        numPages = pages;
+        return true;
+    }
+
+    /**
+     * Replaces the whole map, e.g. after rebuilding it from the table's pages,
+     * and writes it out to the side file.
+     *
+     * @param hasFree   bit i is set if page i has an empty slot
+     * @param pages     the number of pages in the table
+     */
+    public synchronized void reset(BitSet hasFree, int pages) throws IOException {
+        free.clear();
+        free.or(hasFree);
+        numPages = pages;
+        FileChannel fc = getChannel();
+        fc.truncate(0);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + (pages + 7) / 8);
+        buffer.putInt(pages);
+        byte[] bits = free.toByteArray();
+        buffer.put(bits, 0, Math.min(bits.length, buffer.remaining()));
+        buffer.rewind();
+        while (buffer.hasRemaining()) {
+            fc.write(buffer, buffer.position());
+        }
+    }
+
+    /**
+     * @return the first page at or after from that is believed to have an
+     * empty slot, or -1 if there is none.
+     */
+    public synchronized int nextFreePage(int from) {
+        int pageNo = free.nextSetBit(from);
+        return pageNo < numPages ? pageNo : -1;
+    }
+
+    /**
+     * Records in memory whether a page has an empty slot.
+     */
+    public synchronized void setFree(int pageNo, boolean hasFree) {
+        free.set(pageNo, hasFree);
+        if (pageNo >= numPages) {
+            numPages = pageNo + 1;
+        }
+    }
+
+    /**
+     * Records whether a page that was just written to disk has an empty slot,
+     * both in memory and in the side file.
+     */
+    public synchronized void persist(int pageNo, boolean hasFree) throws IOException {
+        setFree(pageNo, hasFree);
+        FileChannel fc = getChannel();
+        byte b = 0;
+        for (int i = 0; i < 8; i++) {
+            if (free.get(pageNo / 8 * 8 + i)) {
+                b |= 1 << i;
+            }
+        }
+        fc.write(ByteBuffer.wrap(new byte[]{b}), HEADER_SIZE + pageNo / 8);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(numPages);
+        header.flip();
+        fc.write(header, 0);
+    }
+
+    /**
+     * Forgets the pages at and after the given page, after the table was
+     * truncated to that many pages.
+     */
+    public synchronized void truncate(int pages) throws IOException {
+        BitSet kept = free.get(0, pages);
+        reset(kept, pages);
+    }
+
+    /**
+     * Closes the side file. It is reopened if the map is written to again.
+     */
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+    }
+
+    private FileChannel getChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = new RandomAccessFile(file, "rw").getChannel();
+        }
+        return channel;
+    }
+}
@@ -0,0 +1,405 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * HashIndexFile is an extendible hash index over one field of a HeapFile. It
+ * maps each key to the RecordIds of the tuples with that key, and answers
+ * equality lookups only: a probe reads the directory and the key's bucket.
+ * <p>
+ * The directory (page 0) maps the low bits of a key's hash to a bucket page;
+ * see HashPage for the format. A full bucket is split in two on the next bit
+ * of the hash, doubling the directory first if the bucket already used all of
+ * its bits. Buckets that can't be split, because the directory is as large as
+ * a page allows or because all their keys have the same hash (e.g. a key with
+ * many duplicates), get overflow pages chained to them instead. Deletes just
+ * remove the entry; buckets are never merged.
+ * <p>
+ * All pages are got through the buffer pool, so the usual page locks apply:
+ * probes lock the directory and the bucket shared, inserts lock the bucket
+ * exclusively, and the directory too when a bucket is split. Pages allocated
+ * by a transaction that aborts stay in the file, unused.
+ *
+ * @see Catalog#addIndex
+ */
+public class HashIndexFile extends AbstractIndexFile<HashPage> {
+    private static final long serialVersionUID = 1L;
+
+    private static final int DIRECTORY_PAGE = 0;
+    /**
+     * how full {@link #build} fills buckets, so that inserts don't split them
+     * right away
+     */
+    private static final double BUILD_FILL = 0.7;
+
+    /**
+     * Constructs an index stored in the specified file over the given field of
+     * the given table, with pages of {@link BufferPool#PAGE_SIZE} bytes. The
+     * table must be in the catalog. Use {@link #build} to fill the index from
+     * the tuples already in the table.
+     *
+     * @param f        the file that stores the index
+     * @param tableId  the indexed table, a HeapFile
+     * @param keyField the index of the key field in the table's TupleDesc
+     */
+    public HashIndexFile(File f, int tableId, int keyField) {
+        this(f, tableId, keyField, BufferPool.PAGE_SIZE);
+    }
+
+    /**
+     * Same as {@link #HashIndexFile(File, int, int)}, with pages of the given
+     * size.
+     */
+    public HashIndexFile(File f, int tableId, int keyField, int pageSize) {
+        super(f, tableId, keyField, pageSize);
+    }
+
+    public boolean supports(Predicate.Op op) {
+        return op == Predicate.Op.EQUALS;
+    }
+
+    /**
+     * A probe reads the directory and a bucket.
+     */
+    @Override
+    public int estimateProbePages() {
+        return 2;
+    }
+
+    /**
+     * @return the hash of a key, with its bits mixed so that the low ones
+     * tell apart keys that are close together
+     */
+    static int hash(Field key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    protected PageId pageId(int pageNo) {
+        return new HashPageId(getId(), pageNo);
+    }
+
+    @Override
+    protected HashPage decodePage(PageId pid, byte[] data) throws IOException {
+        return new HashPage((HashPageId) pid, data, keyType, pageSize);
+    }
+
+    private HashPage newBucket(TransactionId tid, int depth) throws DbException, TransactionAbortedException {
+        HashPage page = newPage(tid);
+        page.type = HashPage.BUCKET;
+        page.depth = depth;
+        return page;
+    }
+
+    /**
+     * @return the entry of the given tuple, which must be stored in the
+     * indexed table
+     */
+    private HashPage.Entry entryOf(Tuple t) throws DbException {
+        RecordId rid = indexedRecordId(t);
+        return new HashPage.Entry(t.getField(keyField), rid.getPageId().pageNumber(), rid.tupleno());
+    }
+
+    /**
+     * @return the number of the bucket page the directory maps the key to, or
+     * 0 if the index is empty
+     */
+    private static int bucketFor(HashPage directory, Field key) {
+        return directory.buckets[hash(key) & (directory.buckets.length - 1)];
+    }
+
+    /**
+     * Adds the entry of a tuple that was just inserted into the indexed table.
+     *
+     * @return the pages that were modified
+     */
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        HashPage.Entry e = entryOf(t);
+        ArrayList<Page> dirtied = new ArrayList<>();
+        while (true) {
+            HashPage directory = getPage(tid, DIRECTORY_PAGE, Permissions.READ_ONLY);
+            int pageNo = bucketFor(directory, e.key);
+            if (pageNo == 0) {
+                directory = getPage(tid, DIRECTORY_PAGE, Permissions.READ_WRITE);
+                HashPage bucket = newBucket(tid, 0);
+                directory.type = HashPage.DIRECTORY;
+                directory.buckets[0] = bucket.getId().pageNumber();
+                directory.markDirty(true, tid);
+                dirtied.add(directory);
+                dirtied.add(bucket);
+                continue;
+            }
+            HashPage bucket = getPage(tid, pageNo, Permissions.READ_WRITE);
+            if (!bucket.isFull()) {
+                bucket.entries.add(e);
+                bucket.markDirty(true, tid);
+                dirtied.add(bucket);
+                return dirtied;
+            }
+            if (bucket.link == 0 && canSplit(bucket, e)) {
+                split(tid, bucket, dirtied);
+                continue;
+            }
+            addOverflow(tid, bucket, e, dirtied);
+            return dirtied;
+        }
+    }
+
+    /**
+     * @return true if splitting the bucket would separate some of its keys
+     * and the one being added
+     */
+    private boolean canSplit(HashPage bucket, HashPage.Entry e) {
+        if (bucket.depth >= HashPage.maxDepth(pageSize)) {
+            return false;
+        }
+        int h = hash(e.key);
+        for (HashPage.Entry other : bucket.entries) {
+            if (hash(other.key) != h) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits a full bucket that has no overflow pages on the next bit of the
+     * hash, doubling the directory if needed.
+     */
+    private void split(TransactionId tid, HashPage bucket, List<Page> dirtied)
+            throws DbException, TransactionAbortedException {
+        HashPage directory = getPage(tid, DIRECTORY_PAGE, Permissions.READ_WRITE);
+        if (bucket.depth == Integer.numberOfTrailingZeros(directory.buckets.length)) {
+            int[] doubled = Arrays.copyOf(directory.buckets, directory.buckets.length * 2);
+            System.arraycopy(directory.buckets, 0, doubled, directory.buckets.length, directory.buckets.length);
+            directory.buckets = doubled;
+            directory.depth++;
+        }
+        int bit = 1 << bucket.depth;
+        bucket.depth++;
+        HashPage sibling = newBucket(tid, bucket.depth);
+        for (Iterator<HashPage.Entry> it = bucket.entries.iterator(); it.hasNext(); ) {
+            HashPage.Entry entry = it.next();
+            if ((hash(entry.key) & bit) != 0) {
+                sibling.entries.add(entry);
+                it.remove();
+            }
+        }
+        int pageNo = bucket.getId().pageNumber();
+        for (int i = 0; i < directory.buckets.length; i++) {
+            if (directory.buckets[i] == pageNo && (i & bit) != 0) {
+                directory.buckets[i] = sibling.getId().pageNumber();
+            }
+        }
+        bucket.markDirty(true, tid);
+        directory.markDirty(true, tid);
+        dirtied.add(bucket);
+        dirtied.add(sibling);
+        dirtied.add(directory);
+    }
+
+    /**
+     * Adds an entry to the first overflow page of a full bucket that has
+     * room, chaining a new one if none has.
+     */
+    private void addOverflow(TransactionId tid, HashPage bucket, HashPage.Entry e, List<Page> dirtied)
+            throws DbException, TransactionAbortedException {
+        HashPage page = bucket;
+        while (page.isFull()) {
+            if (page.link == 0) {
+                HashPage overflow = newBucket(tid, bucket.depth);
+                page.link = overflow.getId().pageNumber();
+                page.markDirty(true, tid);
+                dirtied.add(page);
+                page = overflow;
+                break;
+            }
+            page = getPage(tid, page.link, Permissions.READ_WRITE);
+        }
+        page.entries.add(e);
+        page.markDirty(true, tid);
+        dirtied.add(page);
+    }
+
+    /**
+     * Removes the entry of a tuple that is about to be deleted from the
+     * indexed table.
+     *
+     * @return the page the entry was removed from
+     * @throws DbException if the index has no entry for the tuple
+     */
+    public Page deleteTuple(TransactionId tid, Tuple t) throws DbException, TransactionAbortedException {
+        HashPage.Entry e = entryOf(t);
+        HashPage directory = getPage(tid, DIRECTORY_PAGE, Permissions.READ_ONLY);
+        int pageNo = bucketFor(directory, e.key);
+        while (pageNo != 0) {
+            HashPage page = getPage(tid, pageNo, Permissions.READ_WRITE);
+            for (int i = 0; i < page.entries.size(); i++) {
+                if (page.entries.get(i).sameAs(e)) {
+                    page.entries.remove(i);
+                    page.markDirty(true, tid);
+                    return page;
+                }
+            }
+            pageNo = page.link;
+        }
+        throw new DbException("no entry for " + t.getRecordId() + " in index " + file);
+    }
+
+    /**
+     * Fills the index with the entries of all tuples in the table, replacing
+     * whatever it held. The directory is sized so that buckets end up about
+     * {@link #BUILD_FILL} full, and the pages are written straight to the
+     * file, so the index must not be in use meanwhile. The table is read as
+     * tid.
+     */
+    public void build(TransactionId tid) throws DbException, TransactionAbortedException, IOException {
+        List<HashPage.Entry> entries = new ArrayList<>();
+        DbFileIterator it = Database.getCatalog().getDbFile(tableId).iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            entries.add(entryOf(it.next()));
+        }
+        it.close();
+
+        clear();
+
+        int capacity = HashPage.capacity(keyType, pageSize);
+        int depth = 0;
+        while (depth < HashPage.maxDepth(pageSize) && (1 << depth) * capacity * BUILD_FILL < entries.size()) {
+            depth++;
+        }
+        List<List<HashPage.Entry>> buckets = new ArrayList<>();
+        for (int i = 0; i < 1 << depth; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        for (HashPage.Entry e : entries) {
+            buckets.get(hash(e.key) & ((1 << depth) - 1)).add(e);
+        }
+
+        HashPage directory = emptyPage(DIRECTORY_PAGE, HashPage.DIRECTORY, depth);
+        directory.buckets = new int[1 << depth];
+        int next = DIRECTORY_PAGE + 1;
+        for (int i = 0; i < buckets.size(); i++) {
+            List<HashPage.Entry> bucket = buckets.get(i);
+            directory.buckets[i] = next;
+            int start = 0;
+            do {
+                HashPage page = emptyPage(next++, HashPage.BUCKET, depth);
+                int end = Math.min(start + capacity, bucket.size());
+                page.entries.addAll(bucket.subList(start, end));
+                page.link = end < bucket.size() ? next : 0;
+                writePage(page);
+                start = end;
+            } while (start < bucket.size());
+        }
+        writePage(directory);
+    }
+
+    private HashPage emptyPage(int pageNo, int type, int depth) throws IOException {
+        HashPage page = emptyPage(pageNo);
+        page.type = type;
+        page.depth = depth;
+        return page;
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return new HashIndexIterator(tid, null);
+    }
+
+    /**
+     * Returns the tuples of the table with the key the predicate is equal to.
+     *
+     * @throws UnsupportedOperationException if the predicate isn't an equality
+     */
+    public DbFileIterator indexIterator(TransactionId tid, IndexPredicate ipred) {
+        if (!supports(ipred.getOp())) {
+            throw new UnsupportedOperationException("hash index can't evaluate " + ipred);
+        }
+        return new HashIndexIterator(tid, ipred);
+    }
+
+    /**
+     * Iterates over the bucket chain of a key, or over all buckets if there is
+     * no predicate.
+     */
+    private class HashIndexIterator implements DbFileIterator {
+        private final TransactionId tid;
+        private final IndexPredicate ipred;
+        /**
+         * the first pages of the bucket chains still to read
+         */
+        private Deque<Integer> chains;
+        private HashPage page;
+        private int index;
+        private Tuple next;
+
+        HashIndexIterator(TransactionId tid, IndexPredicate ipred) {
+            this.tid = tid;
+            this.ipred = ipred;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            HashPage directory = getPage(tid, DIRECTORY_PAGE, Permissions.READ_ONLY);
+            chains = new ArrayDeque<>();
+            if (ipred != null) {
+                chains.add(bucketFor(directory, ipred.getField()));
+            } else {
+                Set<Integer> seen = new HashSet<>();
+                for (int b : directory.buckets) {
+                    if (seen.add(b)) {
+                        chains.add(b);
+                    }
+                }
+            }
+            chains.remove(0);
+            page = null;
+            next = null;
+        }
+
+        public boolean hasNext() throws DbException, TransactionAbortedException {
+            while (next == null && chains != null) {
+                if (page == null || index == page.entries.size()) {
+                    int pageNo = page != null && page.link != 0 ? page.link
+                            : chains.isEmpty() ? 0 : chains.poll();
+                    if (pageNo == 0) {
+                        chains = null;
+                        break;
+                    }
+                    page = getPage(tid, pageNo, Permissions.READ_ONLY);
+                    index = 0;
+                    continue;
+                }
+                HashPage.Entry e = page.entries.get(index++);
+                if (ipred == null || ipred.matches(e.key)) {
+                    next = fetch(tid, e.page, e.slot);
+                }
+            }
+            return next != null;
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Tuple t = next;
+            next = null;
+            return t;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            close();
+            open();
+        }
+
+        public void close() {
+            chains = null;
+            page = null;
+            next = null;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * HashPage is a page of a HashIndexFile: its directory or one of its
+ * buckets.
+ * <p>
+ * Every page starts with a header of four ints: the page's type, a depth,
+ * a count and a link.
+ * <ul>
+ * <li>The directory is page 0. Its depth is the global depth d of the index
+ * and it is followed by the 2^d page numbers of the buckets that keys with
+ * each value of the low d bits of their hash go to. Several directory slots
+ * may share a bucket.</li>
+ * <li>A bucket's depth is its local depth: all its keys agree on that many low
+ * bits of their hash. Its count is the number of entries that follow, each a
+ * key and the page number and slot of the RecordId it refers to. The link is
+ * the number of the bucket's next overflow page, or 0.</li>
+ * </ul>
+ * Pages that are all zeros are unused; an all zero directory is that of an
+ * empty index.
+ *
+ * @see HashIndexFile
+ */
+public class HashPage implements Page {
+    static final int UNUSED = 0;
+    static final int DIRECTORY = 1;
+    static final int BUCKET = 2;
+
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * An entry of a bucket. RecordIds are kept as page number and slot; their
+     * table is the indexed one.
+     */
+    static class Entry {
+        final Field key;
+        final int page;
+        final int slot;
+
+        Entry(Field key, int page, int slot) {
+            this.key = key;
+            this.page = page;
+            this.slot = slot;
+        }
+
+        boolean sameAs(Entry other) {
+            return page == other.page && slot == other.slot && key.equals(other.key);
+        }
+    }
+
+    final HashPageId pid;
+    final Type keyType;
+    final int pageSize;
+    int type;
+    int depth;
+    int link;
+    /**
+     * the bucket page numbers of a directory
+     */
+    int[] buckets;
+    /**
+     * the entries of a bucket
+     */
+    final List<Entry> entries;
+
+    byte[] oldData;
+    TransactionId dirtier;
+
+    /**
+     * Create a HashPage from a set of bytes of data read from disk. The key
+     * type and page size are those of the HashIndexFile registered in the
+     * catalog under the page's table id.
+     */
+    public HashPage(HashPageId id, byte[] data) throws IOException {
+        this(id, data, keyType(id), Database.getCatalog().getPageSize(id.getTableId()));
+    }
+
+    HashPage(HashPageId id, byte[] data, Type keyType, int pageSize) throws IOException {
+        this.pid = id;
+        this.keyType = keyType;
+        this.pageSize = pageSize;
+        ByteBuffer bb = ByteBuffer.wrap(data);
+        type = bb.getInt(0);
+        depth = bb.getInt(4);
+        int count = bb.getInt(8);
+        link = bb.getInt(12);
+        entries = new ArrayList<>();
+        if (type == DIRECTORY) {
+            buckets = new int[1 << depth];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = bb.getInt(HEADER_SIZE + i * 4);
+            }
+        } else if (pid.pageNumber() == 0) {
+            //the directory of an empty index
+            type = DIRECTORY;
+            buckets = new int[1];
+        }
+        int entrySize = keyType.getLen() + 8;
+        try {
+            for (int i = 0; type == BUCKET && i < count; i++) {
+                int offset = HEADER_SIZE + i * entrySize;
+                entries.add(new Entry(keyType.parse(bb, offset),
+                        bb.getInt(offset + keyType.getLen()), bb.getInt(offset + keyType.getLen() + 4)));
+            }
+        } catch (java.text.ParseException e) {
+            throw new IOException("corrupt " + pid + ": " + e.getMessage());
+        }
+        oldData = Arrays.copyOf(data, pageSize);
+    }
+
+    private static Type keyType(HashPageId id) {
+        HashIndexFile f = (HashIndexFile) Database.getCatalog().getDbFile(id.getTableId());
+        return f.getKeyType();
+    }
+
+    /**
+     * @return the number of entries that fit on a bucket page of the given size
+     */
+    static int capacity(Type keyType, int pageSize) {
+        return (pageSize - HEADER_SIZE) / (keyType.getLen() + 8);
+    }
+
+    /**
+     * @return the largest global depth whose directory fits on a page of the
+     * given size
+     */
+    static int maxDepth(int pageSize) {
+        int slots = (pageSize - HEADER_SIZE) / 4;
+        return 31 - Integer.numberOfLeadingZeros(slots);
+    }
+
+    boolean isFull() {
+        return entries.size() >= capacity(keyType, pageSize);
+    }
+
+    public HashPageId getId() {
+        return pid;
+    }
+
+    public byte[] getPageData() {
+        ByteBuffer bb = ByteBuffer.allocate(pageSize);
+        bb.putInt(type);
+        bb.putInt(depth);
+        bb.putInt(type == DIRECTORY ? buckets.length : entries.size());
+        bb.putInt(link);
+        if (type == DIRECTORY) {
+            for (int b : buckets) {
+                bb.putInt(b);
+            }
+            return bb.array();
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(keyType.getLen());
+        DataOutputStream dos = new DataOutputStream(baos);
+        for (Entry e : entries) {
+            baos.reset();
+            try {
+                e.key.serialize(dos);
+                dos.flush();
+            } catch (IOException ex) {
+                // this really shouldn't happen
+                ex.printStackTrace();
+            }
+            bb.put(baos.toByteArray(), 0, keyType.getLen());
+            bb.putInt(e.page);
+            bb.putInt(e.slot);
+        }
+        return bb.array();
+    }
+
+    public HashPage getBeforeImage() {
+        try {
+            return new HashPage(pid, oldData, keyType, pageSize);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        oldData = getPageData();
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtier = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtier;
+    }
+}
@@ -0,0 +1,49 @@
+package simpledb;
+
+/**
+ * Unique identifier for HashPage objects.
+ */
+public class HashPageId implements PageId {
+    private int tableId;
+    private int pageNumber;
+
+    /**
+     * Constructor. Create a page id structure for a specific page of a
+     * specific hash index file.
+     *
+     * @param tableId The id of the HashIndexFile that is being referenced
+     * @param pgNo    The page number in that file.
+     */
+    public HashPageId(int tableId, int pgNo) {
+        this.tableId = tableId;
+        this.pageNumber = pgNo;
+    }
+
+    public int getTableId() {
+        return tableId;
+    }
+
+    public int pageNumber() {
+        return pageNumber;
+    }
+
+    public int hashCode() {
+        return tableId * 31 + pageNumber;
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof HashPageId)) {
+            return false;
+        }
+        HashPageId other = (HashPageId) o;
+        return tableId == other.tableId && pageNumber == other.pageNumber;
+    }
+
+    public int[] serialize() {
+        return new int[]{tableId, pageNumber};
+    }
+
+    public String toString() {
+        return "HashPageId(" + tableId + ", " + pageNumber + ")";
+    }
+}
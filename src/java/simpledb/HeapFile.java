@@ -2,6 +2,11 @@ package simpledb;
 
 import javax.xml.crypto.Data;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.util.*;
 
 /**
@@ -15,19 +20,83 @@ import java.util.*;
  * @see simpledb.HeapPage#HeapPage
  */
 public class HeapFile implements DbFile {
+    /**
+     * Number of times page I/O is tried on a channel that another thread
+     * closed under it.
+     */
+    private static final int IO_ATTEMPTS = 3;
     private File file;
     private TupleDesc tupleDesc;
+    private final int pageSize;
+    /**
+     * long-lived channel used for all page I/O. positional read/write don't touch the
+     * channel's own position, so concurrent readers can share it without locking.
+     */
+    private transient FileChannel channel;
+
+    /**
+     * Bytes covered by each read-only mapping of the file in memory-mapped
+     * mode. A multiple of every supported page size, so no page straddles two
+     * segments.
+     */
+    static final int MAPPED_SEGMENT_SIZE = 64 * 1024 * 1024;
+    /**
+     * Most pages the file grows by at a time on a bulk append.
+     *
+     * @see #appendTuples
+     */
+    static final int EXTENT_PAGES = 64;
+    private transient Map<Integer, MappedByteBuffer> segments = new HashMap<>();
+    private volatile boolean memoryMapped = false;
+    private transient FreeSpaceMap freeSpaceMap;
+    private final boolean compressed;
+    private transient CompressedPageStore compressedStore;
+    private transient PageChecksums checksums;
+    private volatile int clusterField = -1;
+    private transient volatile ZoneMap zoneMap;
 
     /**
-     * Constructs a heap file backed by the specified file.
+     * Constructs a heap file backed by the specified file, with pages of
+     * {@link BufferPool#PAGE_SIZE} bytes.
      *
      * @param f the file that stores the on-disk backing store for this heap
      *          file.
      */
     public HeapFile(File f, TupleDesc td) {
         // some code goes here
+        this(f, td, BufferPool.PAGE_SIZE);
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file, with pages of the
+     * given size, e.g. 8, 16 or 64 KB for tables with wide rows. The file must
+     * have been written with the same page size (see HeapFileEncoder).
+     *
+     * @param pageSize bytes per page, including header. a power of two no
+     *                 larger than {@link #MAPPED_SEGMENT_SIZE}
+     * @throws IllegalArgumentException if pageSize is not supported
+     */
+    public HeapFile(File f, TupleDesc td, int pageSize) {
+        this(f, td, pageSize, false);
+    }
+
+    /**
+     * Constructs a heap file with pages of the given size, optionally stored
+     * compressed. Compressed files trade CPU for space, so they suit cold
+     * tables that are mostly read, e.g. archives built by HeapFileEncoder,
+     * which are largely zero padding.
+     *
+     * @param compressed true if the file is in the format of a
+     *                   CompressedPageStore (see HeapFileEncoder#compress)
+     */
+    public HeapFile(File f, TupleDesc td, int pageSize, boolean compressed) {
+        if (pageSize <= 0 || Integer.bitCount(pageSize) != 1 || pageSize > MAPPED_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("unsupported page size " + pageSize);
+        }
         file = f;
         tupleDesc = td;
+        this.pageSize = pageSize;
+        this.compressed = compressed;
     }
 
     /**
@@ -66,38 +135,501 @@ public class HeapFile implements DbFile {
         return tupleDesc;
     }
 
+    /**
+     * @return the number of bytes per page of this file
+     */
+    @Override
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Returns the channel backing this file, (re)opening it if needed.
+     * A channel is closed when a thread blocked in I/O on it gets interrupted,
+     * or when the catalog drops the table, so it's reopened lazily here.
+     */
+    private synchronized FileChannel getChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = new RandomAccessFile(file, "rw").getChannel();
+        }
+        return channel;
+    }
+
+    /**
+     * Reads from the file into the rest of a buffer, starting at the given
+     * offset plus the buffer's position, until the buffer is full or the file
+     * ends.
+     * <p>
+     * The channel is shared by all threads, and interrupting one of them in
+     * I/O closes it for the others too, which get an
+     * AsynchronousCloseException. They retry on a reopened channel; the
+     * interrupted thread gives up.
+     */
+    private void readFully(ByteBuffer buffer, long offset) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                FileChannel fc = getChannel();
+                while (buffer.hasRemaining()) {
+                    if (fc.read(buffer, offset + buffer.position()) < 0) {
+                        return;
+                    }
+                }
+                return;
+            } catch (ClosedChannelException e) {
+                checkRetry(e, attempt);
+            }
+        }
+    }
+
+    /**
+     * Writes the rest of a buffer to the file, starting at the given offset
+     * plus the buffer's position, retrying like {@link #readFully}.
+     */
+    private void writeFully(ByteBuffer buffer, long offset) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                FileChannel fc = getChannel();
+                while (buffer.hasRemaining()) {
+                    fc.write(buffer, offset + buffer.position());
+                }
+                return;
+            } catch (ClosedChannelException e) {
+                checkRetry(e, attempt);
+            }
+        }
+    }
+
+    private static void checkRetry(ClosedChannelException e, int attempt) throws ClosedChannelException {
+        if (e instanceof ClosedByInterruptException || Thread.currentThread().isInterrupted()
+                || attempt >= IO_ATTEMPTS) {
+            throw e;
+        }
+    }
+
+    /**
+     * @return the side files a HeapFile keeps next to the given table file:
+     * its free space map, checksums, zone map and compressed page index
+     */
+    public static List<File> sideFiles(File tableFile) {
+        return Arrays.asList(FreeSpaceMap.sideFile(tableFile), PageChecksums.sideFile(tableFile),
+                ZoneMap.sideFile(tableFile), CompressedPageStore.indexFile(tableFile));
+    }
+
+    /**
+     * Has a temporary table file and all of its side files deleted when the
+     * JVM exits, including side files that haven't been created yet.
+     *
+     * @see #sideFiles
+     */
+    public static void deleteOnExit(File tableFile) {
+        tableFile.deleteOnExit();
+        for (File f : sideFiles(tableFile)) {
+            f.deleteOnExit();
+        }
+    }
+
+    /**
+     * @return true if the pages of this file are stored compressed
+     * @see CompressedPageStore
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * @return the checksums of the pages of this file, e.g. for their
+     * verification stats
+     */
+    public synchronized PageChecksums getChecksums() throws IOException {
+        if (checksums == null) {
+            PageChecksums crcs = new PageChecksums(PageChecksums.sideFile(file));
+            crcs.load(numPages());
+            checksums = crcs;
+        }
+        return checksums;
+    }
+
+    /**
+     * Declares this table clustered on a field: {@link #appendTuples} sorts
+     * each extent of the tuples it loads on it, so that their pages cover
+     * narrow ranges of the field in the {@link ZoneMap} and range scans on it
+     * skip most pages. Declaring the field doesn't sort the file itself; it
+     * should be written sorted, e.g. by HeapFileEncoder with the same cluster
+     * field. Tuples inserted later go to any page with room, which keeps
+     * results correct but wears down the clustering.
+     *
+     * @param field the index of the field, or -1 if the table isn't clustered
+     */
+    public void setClusterField(int field) {
+        if (field < -1 || field >= tupleDesc.numFields()) {
+            throw new IllegalArgumentException("no field " + field + " in " + tupleDesc);
+        }
+        clusterField = field;
+    }
+
+    /**
+     * @return the field this table is clustered on, or -1
+     */
+    public int getClusterField() {
+        return clusterField;
+    }
+
+    /**
+     * Returns the zone map of this file, loading it from its side file on
+     * first use. If the side file is missing or was written for another
+     * schema or another length of the file, the map starts out without summaries, and pages get theirs as
+     * they are written; the pages aren't read to rebuild it.
+     */
+    ZoneMap getZoneMap() throws IOException {
+        ZoneMap map = zoneMap;
+        if (map != null) {
+            return map;
+        }
+        synchronized (this) {
+            if (zoneMap == null) {
+                map = new ZoneMap(ZoneMap.sideFile(file), ZoneMap.types(tupleDesc));
+                if (!map.load(numPages())) {
+                    map.reset(Collections.emptyList());
+                }
+                zoneMap = map;
+            }
+            return zoneMap;
+        }
+    }
+
+    /**
+     * @return false if the zone map of this file shows that no tuple on the
+     * given page satisfies all of the predicates. Scans without predicates
+     * needn't ask
+     */
+    boolean mayMatch(int pageNo, List<Predicate> predicates) throws DbException {
+        try {
+            return getZoneMap().mayMatch(pageNo, predicates);
+        } catch (IOException e) {
+            throw new DbException("cannot load zone map of " + file + ": " + e.getMessage());
+        }
+    }
+
+    private synchronized CompressedPageStore getCompressedStore() {
+        if (compressedStore == null) {
+            compressedStore = new CompressedPageStore(file, pageSize);
+        }
+        return compressedStore;
+    }
+
+    /**
+     * Closes the channel backing this file. Called by the catalog when the table is
+     * removed. Any later page I/O reopens the file.
+     */
+    @Override
+    public synchronized void close() {
+        //mappings stay valid after the channel is closed; they are unmapped once no page uses them
+        segments = new HashMap<>();
+        if (freeSpaceMap != null) {
+            freeSpaceMap.close();
+            freeSpaceMap = null;
+        }
+        if (compressedStore != null) {
+            compressedStore.close();
+        }
+        if (checksums != null) {
+            checksums.close();
+        }
+        if (zoneMap != null) {
+            zoneMap.close();
+            zoneMap = null;
+        }
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+    }
+
+    /**
+     * Selects whether pages of this table are read through a memory mapping of
+     * the file rather than through channel reads.
+     *
+     * @see #readPage(PageId, boolean)
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
     // see DbFile.java for javadocs
     public Page readPage(PageId pid) {
+        return readPage(pid, memoryMapped);
+    }
+
+    /**
+     * Read the specified page from disk.
+     * <p>
+     * In mapped mode the HeapPage is decoded straight out of a read-only mapping
+     * of the file, in segments of {@link #MAPPED_SEGMENT_SIZE} bytes. A page that
+     * isn't fully backed by the file yet (the file is being extended) is read
+     * through the channel instead. Pages of compressed files are inflated from
+     * their blocks and never mapped.
+     *
+     * @param pid    the page to read
+     * @param mapped true to read the page through the file's memory mapping
+     * @throws PageReadException if the page can't be read or fails
+     *                           verification; see {@link #readCheckedPage}
+     */
+    public Page readPage(PageId pid, boolean mapped) {
         // some code goes here
         if (!(pid instanceof HeapPageId)) {
             return null;
         }
+        try {
+            return readCheckedPage(pid, mapped);
+        } catch (DbException e) {
+            throw new PageReadException(e);
+        }
+    }
+
+    /**
+     * Reads a page into a frame of a {@link PageArena}, for the page to decode
+     * its tuples out of. Compressed pages are inflated into the frame.
+     *
+     * @param frame a free frame of at least {@link #getPageSize} bytes
+     * @return the page, which refers to the frame until it is
+     * {@link HeapPage#detach}ed
+     * @throws PageReadException if the page can't be read or fails
+     *                           verification
+     */
+    HeapPage readPage(PageId pid, ByteBuffer frame) {
+        try {
+            return readCheckedPage(pid, false, frame);
+        } catch (DbException e) {
+            throw new PageReadException(e);
+        }
+    }
+
+    /**
+     * Carries the DbException of a failed page read out of readPage, whose
+     * signature doesn't allow checked exceptions. BufferPool.getPage rethrows
+     * the cause.
+     */
+    public static class PageReadException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        PageReadException(DbException cause) {
+            super(cause.getMessage(), cause);
+        }
+
+        @Override
+        public synchronized DbException getCause() {
+            return (DbException) super.getCause();
+        }
+    }
+
+    /**
+     * Same as {@link #readPage(PageId, boolean)}, except that failures are
+     * reported as a checked exception. Pages that have a checksum (see
+     * {@link PageChecksums}) are verified against it.
+     *
+     * @throws DbException if the page can't be read, or its data doesn't
+     *                     match its checksum, e.g. after a torn write
+     */
+    public HeapPage readCheckedPage(PageId pid, boolean mapped) throws DbException {
+        return readCheckedPage(pid, mapped, null);
+    }
+
+    private HeapPage readCheckedPage(PageId pid, boolean mapped, ByteBuffer frame) throws DbException {
         HeapPageId heapPageId = (HeapPageId) pid;
-        int pageNumber = pid.pageNumber();
-        int offset = pageNumber * BufferPool.PAGE_SIZE;
-        byte[] buffer = new byte[BufferPool.PAGE_SIZE];
-        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");) {
-            randomAccessFile.seek(offset);
-            randomAccessFile.read(buffer);
-            HeapPage page = new HeapPage(heapPageId, buffer);
-            return page;
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+        try {
+            ByteBuffer data = null;
+            if (compressed) {
+                data = ByteBuffer.wrap(getCompressedStore().read(pid.pageNumber()));
+                if (frame != null) {
+                    frame.clear();
+                    frame.put(data).flip();
+                    data = frame;
+                }
+            } else if (mapped) {
+                data = mappedPage(pid.pageNumber());
+            }
+            if (data == null) {
+                long offset = (long) pid.pageNumber() * pageSize;
+                ByteBuffer buffer = frame == null ? ByteBuffer.allocate(pageSize) : frame;
+                buffer.clear().limit(pageSize);
+                //a short read past the end of file leaves the rest of the page zeroed
+                readFully(buffer, offset);
+                //a frame still holds the page it had before
+                while (frame != null && buffer.hasRemaining()) {
+                    buffer.put((byte) 0);
+                }
+                buffer.flip();
+                data = buffer;
+            }
+            getChecksums().verify(pid.pageNumber(), data);
+            if (data == frame) {
+                return new HeapPage(heapPageId, data, true);
+            }
+            return data.hasArray() ? new HeapPage(heapPageId, data.array()) : new HeapPage(heapPageId, data);
         } catch (IOException e) {
             e.printStackTrace();
+            throw new DbException("cannot read " + pid + " from " + file + ": " + e);
         }
+    }
 
-        return null;
+    /**
+     * Returns a read-only view of the given page inside the mapping of its segment,
+     * mapping (or remapping a segment that was mapped while shorter) as needed.
+     *
+     * @return the page's bytes, or null if the page lies beyond the end of the file
+     */
+    private synchronized ByteBuffer mappedPage(int pageNumber) throws IOException {
+        long offset = (long) pageNumber * pageSize;
+        int segment = (int) (offset / MAPPED_SEGMENT_SIZE);
+        int segmentOffset = (int) (offset % MAPPED_SEGMENT_SIZE);
+        MappedByteBuffer mbb = segments.get(segment);
+        if (mbb == null || mbb.capacity() < segmentOffset + pageSize) {
+            FileChannel fc = getChannel();
+            long segmentStart = (long) segment * MAPPED_SEGMENT_SIZE;
+            long length = Math.min(MAPPED_SEGMENT_SIZE, fc.size() - segmentStart);
+            if (length < segmentOffset + pageSize) {
+                return null;
+            }
+            mbb = fc.map(FileChannel.MapMode.READ_ONLY, segmentStart, length);
+            segments.put(segment, mbb);
+        }
+        ByteBuffer page = mbb.duplicate();
+        page.position(segmentOffset);
+        page.limit(segmentOffset + pageSize);
+        return page.slice();
     }
 
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException {
         // some code goes here
         // not necessary for proj1
-        int num = page.getId().pageNumber();
-        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
-            randomAccessFile.seek(num * BufferPool.PAGE_SIZE);
-            randomAccessFile.write(page.getPageData());
+        byte[] data = page.getPageData();
+        PageChecksums checksums = getChecksums();
+        checksums.beginWrite(page.getId().pageNumber(), data);
+        if (page instanceof HeapPage) {
+            ZoneMap map = getZoneMap();
+            map.set(page.getId().pageNumber(), map.summarize(((HeapPage) page).iterator()));
+        }
+        if (compressed) {
+            getCompressedStore().write(page.getId().pageNumber(), data);
+        } else {
+            writeFully(ByteBuffer.wrap(data), (long) page.getId().pageNumber() * pageSize);
+        }
+        checksums.endWrite(page.getId().pageNumber());
+        if (page instanceof HeapPage) {
+            getFreeSpaceMap().persist(page.getId().pageNumber(), ((HeapPage) page).getNumEmptySlots() > 0);
+        }
+    }
+
+    /**
+     * Returns the free space map of this file, loading it from its side file on
+     * first use, or rebuilding it from the page headers if the side file is
+     * missing or out of date.
+     */
+    private synchronized FreeSpaceMap getFreeSpaceMap() throws IOException {
+        if (freeSpaceMap == null) {
+            FreeSpaceMap fsm = new FreeSpaceMap(FreeSpaceMap.sideFile(file));
+            int pages = numPages();
+            if (!fsm.load(pages)) {
+                fsm.reset(scanFreeSpace(pages), pages);
+            }
+            freeSpaceMap = fsm;
+        }
+        return freeSpaceMap;
+    }
+
+    /**
+     * Finds the pages with an empty slot by reading just the header of every
+     * page on disk.
+     */
+    private BitSet scanFreeSpace(int pages) throws IOException {
+        int numSlots = slotsPerPage();
+        ByteBuffer header = ByteBuffer.allocate((numSlots + 7) / 8);
+        BitSet hasFree = new BitSet(pages);
+        for (int i = 0; i < pages; i++) {
+            header.clear();
+            if (compressed) {
+                header.put(getCompressedStore().read(i), 0, header.capacity());
+            } else {
+                readFully(header, (long) i * pageSize);
+            }
+            int used = 0;
+            for (int b = 0; b < header.capacity(); b++) {
+                used += Integer.bitCount(header.get(b) & 0xff);
+            }
+            hasFree.set(i, used < numSlots);
+        }
+        return hasFree;
+    }
+
+    /**
+     * @return the number of tuples that fit on one page of this file
+     */
+    public int slotsPerPage() {
+        return pageSize * 8 / (tupleDesc.getSize() * 8 + 1);
+    }
+
+    /**
+     * Grows the file by the given number of empty pages in one go and reserves
+     * them for the caller: the free space map marks them full until the caller
+     * says otherwise, so concurrent inserts don't pick them.
+     *
+     * @return the number of the first new page
+     */
+    private synchronized int allocateExtent(int pages) throws IOException {
+        FreeSpaceMap fsm = getFreeSpaceMap();
+        int first = numPages();
+        if (compressed) {
+            getCompressedStore().extend(pages);
+        } else {
+            //writing the last byte is enough: the gap reads back as zeros, i.e. as empty pages
+            long end = (long) (first + pages) * pageSize;
+            writeFully(ByteBuffer.wrap(new byte[1]), end - 1);
+        }
+        getChecksums().extend(first + pages);
+        ZoneMap map = getZoneMap();
+        for (int i = first; i < first + pages; i++) {
+            fsm.setFree(i, false);
+            map.set(i, map.emptySummary());
+        }
+        return first;
+    }
+
+    /**
+     * Writes consecutive pages starting at page number first with a single
+     * positional write.
+     */
+    private void writePages(int first, List<HeapPage> pages) throws IOException {
+        if (compressed) {
+            for (HeapPage page : pages) {
+                writePage(page);
+            }
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(pages.size() * pageSize);
+        PageChecksums checksums = getChecksums();
+        ZoneMap map = getZoneMap();
+        for (HeapPage page : pages) {
+            byte[] data = page.getPageData();
+            checksums.beginWrite(page.getId().pageNumber(), data);
+            map.set(page.getId().pageNumber(), map.summarize(page.iterator()));
+            buffer.put(data);
+        }
+        buffer.flip();
+        writeFully(buffer, (long) first * pageSize);
+        FreeSpaceMap fsm = getFreeSpaceMap();
+        for (HeapPage page : pages) {
+            checksums.endWrite(page.getId().pageNumber());
+            fsm.persist(page.getId().pageNumber(), page.getNumEmptySlots() > 0);
         }
     }
 
@@ -106,8 +638,10 @@ public class HeapFile implements DbFile {
      */
     public int numPages() {
         // some code goes here
-
-        return (int) file.length() / BufferPool.PAGE_SIZE;
+        if (compressed) {
+            return getCompressedStore().numPages();
+        }
+        return (int) (file.length() / pageSize);
     }
 
     // see DbFile.java for javadocs
@@ -116,10 +650,13 @@ public class HeapFile implements DbFile {
         // some code goes here
         // not necessary for proj1
         BufferPool bufferPool = Database.getBufferPool();
+        FreeSpaceMap fsm = getFreeSpaceMap();
         HeapPageId heapPageId = null;
 
-        for (int i = 0; i < numPages(); i++) {
+        int numPages = numPages();
+        for (int i = fsm.nextFreePage(0); i >= 0 && i < numPages; i = fsm.nextFreePage(i + 1)) {
             HeapPageId phid = new HeapPageId(getId(), i);
+            boolean held = bufferPool.holdsLock(tid, phid);
             Page page = bufferPool.getPage(tid, phid, Permissions.READ_ONLY);
             assert page != null;
             assert page instanceof HeapPage;
@@ -128,21 +665,102 @@ public class HeapFile implements DbFile {
                 heapPageId = phid;
                 break;
             }
+            //stale hint. we only looked at this page, so don't keep it locked
+            fsm.setFree(i, false);
+            if (!held) {
+                bufferPool.releasePage(tid, phid);
+            }
         }
         if (heapPageId == null) {
-            heapPageId = new HeapPageId(getId(), numPages());
-            HeapPage hp = new HeapPage(heapPageId, HeapPage.createEmptyPageData());
-            this.writePage(hp);
+            heapPageId = new HeapPageId(getId(), allocateExtent(1));
         }
         HeapPage heapPage = (HeapPage) bufferPool.getPage(tid, heapPageId, Permissions.READ_WRITE);
         heapPage.markDirty(true, tid);
-        int tmp = heapPage.getNumEmptySlots();
         heapPage.insertTuple(t);
+        //the page may be read by this transaction before it is written, which summarizes it exactly
+        getZoneMap().widen(heapPageId.pageNumber(), t);
+        fsm.setFree(heapPageId.pageNumber(), heapPage.getNumEmptySlots() > 0);
         ArrayList<Page> result = new ArrayList<>();
         result.add(heapPage);
         return result;
     }
 
+    /**
+     * Appends tuples at the end of this file. Unlike insertTuple, which goes
+     * through the buffer pool one tuple and one page at a time, this takes up
+     * to {@link #EXTENT_PAGES} pages' worth of tuples at a time, grows the file
+     * by the pages they fill and writes those out at once, so it is meant for
+     * loading large batches. Clustered tables sort the tuples of each extent
+     * on their cluster field before writing it, so that memory stays bounded
+     * by one extent: the pages of an extent cover narrow ranges of the field,
+     * but extents overlap unless the batch arrives sorted already.
+     * <p>
+     * The new pages go to disk right away, bypassing the buffer pool, but tid
+     * holds exclusive locks on them until it completes, so no other transaction
+     * can see them before that, and the buffer pool empties them again if tid
+     * aborts. This is the one exception to NO STEAL: uncommitted tuples reach
+     * the file before tid commits, and as there is no log to undo them, a
+     * crash before tid completes leaves them in the table.
+     *
+     * @return the number of tuples appended
+     * @see BufferPool#lockAppendedPages
+     */
+    public int appendTuples(TransactionId tid, Iterator<Tuple> tuples)
+            throws DbException, IOException, TransactionAbortedException {
+        BufferPool bufferPool = Database.getBufferPool();
+        FreeSpaceMap fsm = getFreeSpaceMap();
+        int slots = slotsPerPage();
+        int count = 0;
+        while (tuples.hasNext()) {
+            List<Tuple> extent = take(tuples, EXTENT_PAGES * slots, clusterField);
+            int numPages = (extent.size() + slots - 1) / slots;
+            int first = allocateExtent(numPages);
+            int written = 0;
+            try {
+                List<HeapPage> pages = new ArrayList<>();
+                List<PageId> pids = new ArrayList<>();
+                Iterator<Tuple> it = extent.iterator();
+                while (it.hasNext()) {
+                    HeapPageId pid = new HeapPageId(getId(), first + pages.size());
+                    HeapPage page = new HeapPage(pid, HeapPage.createEmptyPageData(pageSize));
+                    for (int i = 0; i < slots && it.hasNext(); i++) {
+                        page.insertTuple(it.next());
+                        count++;
+                    }
+                    pages.add(page);
+                    pids.add(pid);
+                }
+                bufferPool.lockAppendedPages(tid, pids);
+                writePages(first, pages);
+                written = numPages;
+            } finally {
+                //pages reserved for an extent that failed are left empty for later inserts
+                for (int i = first + written; i < first + numPages; i++) {
+                    fsm.persist(i, true);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Takes up to the given number of tuples off an iterator.
+     *
+     * @param field the field to sort the tuples on, or -1 to keep their order
+     * @return the tuples taken
+     */
+    private static List<Tuple> take(Iterator<Tuple> tuples, int limit, int field) {
+        List<Tuple> list = new ArrayList<>();
+        while (list.size() < limit && tuples.hasNext()) {
+            list.add(tuples.next());
+        }
+        if (field >= 0) {
+            list.sort((a, b) -> a.getField(field).equals(b.getField(field)) ? 0
+                    : a.getField(field).compare(Predicate.Op.LESS_THAN, b.getField(field)) ? -1 : 1);
+        }
+        return list;
+    }
+
     // see DbFile.java for javadocs
     public Page deleteTuple(TransactionId tid, Tuple t) throws DbException,
             TransactionAbortedException {
@@ -152,40 +770,260 @@ public class HeapFile implements DbFile {
         HeapPage heapPage = (HeapPage) bufferPool.getPage(tid, t.getRecordId().getPageId(), Permissions.READ_WRITE);
         heapPage.markDirty(true, tid);
         heapPage.deleteTuple(t);
+        try {
+            getFreeSpaceMap().setFree(heapPage.getId().pageNumber(), true);
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new DbException("cannot load free space map of " + file);
+        }
         return heapPage;
     }
 
+    /**
+     * Compacts this file after deletes left it sparse: moves tuples from the
+     * last pages into free slots of the first ones, then truncates the empty
+     * pages at the end of the file. Runs online, alongside other transactions.
+     * <p>
+     * Tuples are moved by a series of transactions that each dirty at most
+     * half of the buffer pool, since dirty pages can't be evicted before they
+     * commit. Pages are looked at under a shared lock, which is released
+     * again if the page turns out to have nothing to move into or out of, and
+     * upgraded to an exclusive one only for the pages tuples are moved between,
+     * so readers are only held up by the pages a batch actually changes. The
+     * trailing empty pages stay locked until they are truncated, so no other
+     * transaction sees them go. Moved tuples get new
+     * RecordIds, and their entries in the table's indexes are moved along,
+     * which counts against the pages a transaction may dirty.
+     *
+     * @return what was done
+     * @throws TransactionAbortedException if a vacuum transaction was chosen
+     *                                     as a deadlock victim. It is rolled
+     *                                     back; earlier ones stay committed
+     */
+    public VacuumReport vacuum() throws DbException, TransactionAbortedException, IOException {
+        BufferPool bufferPool = Database.getBufferPool();
+        int slots = slotsPerPage();
+        //pages dirtied by a batch, plus the two being worked on, must leave clean pages to evict
+        int batch = Math.max(1, (bufferPool.getNumPages() - 2) / 2);
+        long bytesBefore = file.length();
+        int pagesBefore = numPages();
+        int moved = 0;
+        FreeSpaceMap fsm = getFreeSpaceMap();
+        List<IndexFile> indexes = Database.getCatalog().getIndexes(getId());
+
+        int low = 0;
+        int high = pagesBefore - 1;
+        while (low < high) {
+            TransactionId tid = new TransactionId();
+            try {
+                Set<Integer> dirtied = new HashSet<>();
+                //a moved tuple may dirty an index page for its old entry and one for its new
+                int indexPages = 0;
+                while (low < high && dirtied.size() + indexPages < batch) {
+                    //fetched afresh every time: a page we only looked at may have been evicted since
+                    HeapPageId dstId = new HeapPageId(getId(), low);
+                    if (inspect(tid, dstId).getNumEmptySlots() == 0) {
+                        release(tid, dstId, dirtied);
+                        low++;
+                        continue;
+                    }
+                    HeapPageId srcId = new HeapPageId(getId(), high);
+                    if (inspect(tid, srcId).getNumEmptySlots() == slots) {
+                        release(tid, srcId, dirtied);
+                        high--;
+                        continue;
+                    }
+                    HeapPage dst = (HeapPage) bufferPool.getPage(tid, dstId, Permissions.READ_WRITE);
+                    HeapPage src = (HeapPage) bufferPool.getPage(tid, srcId, Permissions.READ_WRITE);
+                    dst.markDirty(true, tid);
+                    src.markDirty(true, tid);
+                    dirtied.add(low);
+                    dirtied.add(high);
+                    Iterator<Tuple> tuples = src.iterator();
+                    List<Tuple> moving = new ArrayList<>();
+                    int room = dst.getNumEmptySlots();
+                    if (!indexes.isEmpty()) {
+                        room = Math.min(room, Math.max(1, (batch - dirtied.size() - indexPages) / (2 * indexes.size())));
+                    }
+                    for (int i = room; i > 0 && tuples.hasNext(); i--) {
+                        moving.add(tuples.next());
+                    }
+                    for (Tuple t : moving) {
+                        for (IndexFile index : indexes) {
+                            index.deleteTuple(tid, t);
+                        }
+                        src.deleteTuple(t);
+                        dst.insertTuple(t);
+                        getZoneMap().widen(low, t);
+                        for (IndexFile index : indexes) {
+                            index.insertTuple(tid, t);
+                        }
+                        moved++;
+                    }
+                    fsm.setFree(low, dst.getNumEmptySlots() > 0);
+                    fsm.setFree(high, true);
+                    indexPages += 2 * indexes.size() * moving.size();
+                }
+                bufferPool.transactionComplete(tid);
+            } catch (TransactionAbortedException e) {
+                bufferPool.transactionComplete(tid, false);
+                throw e;
+            }
+        }
+
+        TransactionId tid = new TransactionId();
+        try {
+            int pages = numPages();
+            int end = pages;
+            while (end > 0) {
+                HeapPageId pid = new HeapPageId(getId(), end - 1);
+                HeapPage page = (HeapPage) bufferPool.getPage(tid, pid, Permissions.READ_WRITE);
+                if (page.getNumEmptySlots() != slots) {
+                    break;
+                }
+                end--;
+            }
+            for (int i = end; i < pages; i++) {
+                bufferPool.discardPage(new HeapPageId(getId(), i));
+            }
+            truncate(pages, end);
+            bufferPool.transactionComplete(tid);
+        } catch (TransactionAbortedException e) {
+            bufferPool.transactionComplete(tid, false);
+            throw e;
+        }
+
+        VacuumReport report = new VacuumReport(pagesBefore, numPages(), moved, bytesBefore - file.length());
+        Debug.log("%s: %s", file.getName(), report);
+        return report;
+    }
+
+    /**
+     * Gets a page for vacuum to look at, under a shared lock.
+     */
+    private HeapPage inspect(TransactionId tid, HeapPageId pid)
+            throws DbException, TransactionAbortedException {
+        return (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+    }
+
+    /**
+     * Lets go of a page vacuum only looked at, unless tid dirtied it.
+     */
+    private void release(TransactionId tid, HeapPageId pid, Set<Integer> dirtied) {
+        if (!dirtied.contains(pid.pageNumber())) {
+            Database.getBufferPool().releasePage(tid, pid);
+        }
+    }
+
+    /**
+     * Cuts this file, its free space map, checksums and zone map back to the given
+     * number of pages, unless the file has grown since the caller counted
+     * them.
+     *
+     * @param expected the number of pages the caller saw
+     * @param pages    the number of pages to keep
+     */
+    private synchronized void truncate(int expected, int pages) throws IOException {
+        if (pages >= expected || numPages() != expected) {
+            return;
+        }
+        if (compressed) {
+            getCompressedStore().truncate(pages);
+        } else {
+            getChannel().truncate((long) pages * pageSize);
+            //drop mappings that cover the cut off pages
+            segments = new HashMap<>();
+        }
+        getFreeSpaceMap().truncate(pages);
+        getChecksums().truncate(pages);
+        getZoneMap().truncate(pages);
+    }
+
     // see DbFile.java for javadocs
     public DbFileIterator iterator(TransactionId tid) {
         // some code goes here
 
-        return new HeapFileTupleIterator(this, tid);
+        return new HeapFileTupleIterator(this, tid, memoryMapped);
+    }
+
+    /**
+     * Returns an iterator over all the tuples stored in this HeapFile.
+     *
+     * @param mapped true to read pages missing from the buffer pool through the
+     *               file's memory mapping, regardless of the table's setting
+     * @see #readPage(PageId, boolean)
+     */
+    public DbFileIterator iterator(TransactionId tid, boolean mapped) {
+        return new HeapFileTupleIterator(this, tid, mapped);
+    }
+
+    /**
+     * Returns an iterator over the tuples of this HeapFile that satisfy all of
+     * the given predicates. Rows are checked against the raw page bytes, so
+     * tuples are only built for the rows that are returned. Pages that the
+     * zone map rules out aren't read at all. A file larger than the buffer
+     * pool is read through a {@link BufferRing}, so that scanning it doesn't
+     * flush the rest of the pool.
+     *
+     * @see HeapPage#iterator(List)
+     */
+    public DbFileIterator iterator(TransactionId tid, boolean mapped, List<Predicate> predicates) {
+        return new HeapFileTupleIterator(this, tid, mapped, predicates);
     }
 
     static class HeapFileTupleIterator implements DbFileIterator {
         private HeapFile hf;
         private TransactionId tid;
+        private boolean mapped;
+        private List<Predicate> predicates;
 
         private int pageIndex = 0;
         private boolean opened = false;
+        /**
+         * the ring pages are read into when the file is larger than the pool
+         */
+        private BufferRing ring;
 
         private Iterator<Tuple> iterator;
 
         public HeapFileTupleIterator(HeapFile hf, TransactionId tid) {
+            this(hf, tid, false);
+        }
+
+        public HeapFileTupleIterator(HeapFile hf, TransactionId tid, boolean mapped) {
+            this(hf, tid, mapped, Collections.emptyList());
+        }
+
+        public HeapFileTupleIterator(HeapFile hf, TransactionId tid, boolean mapped, List<Predicate> predicates) {
             this.hf = hf;
             this.tid = tid;
+            this.mapped = mapped;
+            this.predicates = predicates;
         }
 
         private void loadNextPage() throws DbException, TransactionAbortedException {
+            int numPages = hf.numPages();
+            while (pageIndex < numPages && !predicates.isEmpty() && !hf.mayMatch(pageIndex, predicates)) {
+                pageIndex++;
+            }
+            if (pageIndex >= numPages) {
+                iterator = null;
+                return;
+            }
             BufferPool bufferPool = Database.getBufferPool();
             PageId pageId = new HeapPageId(hf.getId(), pageIndex++);
-            HeapPage curPage = (HeapPage) bufferPool.getPage(tid, pageId, Permissions.READ_ONLY);
-            iterator = curPage.iterator();
+            HeapPage curPage = (HeapPage) bufferPool.getPage(tid, pageId, Permissions.READ_ONLY, mapped, ring);
+            iterator = curPage.iterator(predicates);
         }
 
         @Override
         public void open() throws DbException, TransactionAbortedException {
             pageIndex = 0;
+            BufferPool bufferPool = Database.getBufferPool();
+            if (ring == null && hf.numPages() > bufferPool.getNumPages()) {
+                // the scan can't stay cached anyway; keep it from flushing everything else
+                ring = bufferPool.newRing();
+            }
             loadNextPage();
             opened = true;
         }
@@ -221,6 +1059,10 @@ public class HeapFile implements DbFile {
         @Override
         public void close() {
             opened = false;
+            if (ring != null) {
+                Database.getBufferPool().releaseRing(ring);
+                ring = null;
+            }
         }
     }
 }
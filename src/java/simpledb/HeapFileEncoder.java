@@ -1,7 +1,13 @@
 package simpledb;
 
 import java.io.*;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 
 /**
  * HeapFileEncoder reads a comma delimited text file or accepts
@@ -12,6 +18,10 @@ import java.util.ArrayList;
  */
 
 public class HeapFileEncoder {
+    /**
+     * Most lines sorted in memory at once when writing a clustered table.
+     */
+    static int RUN_LINES = 100000;
 
     /**
      * Convert the specified tuple list (with only integer fields) into a binary
@@ -30,6 +40,18 @@ public class HeapFileEncoder {
      * @see HeapFile
      */
     public static void convert(ArrayList<ArrayList<Integer>> tuples, File outFile, int npagebytes, int numFields) throws IOException {
+        convert(tuples, outFile, npagebytes, numFields, -1);
+    }
+
+    /**
+     * Like {@link #convert(ArrayList, File, int, int)}, but sorts the tuples
+     * on a field, see
+     * {@link #convert(File, File, int, int, Type[], char, int)}.
+     *
+     * @param clusterField the index of the field to sort on, or -1
+     */
+    public static void convert(ArrayList<ArrayList<Integer>> tuples, File outFile, int npagebytes, int numFields,
+                               int clusterField) throws IOException {
         File tempInput = File.createTempFile("tempTable", ".txt");
         tempInput.deleteOnExit();
         BufferedWriter bw = new BufferedWriter(new FileWriter(tempInput));
@@ -49,7 +71,11 @@ public class HeapFileEncoder {
             bw.write('\n');
         }
         bw.close();
-        convert(tempInput, outFile, npagebytes, numFields);
+        Type[] ts = new Type[numFields];
+        for (int i = 0; i < ts.length; i++) {
+            ts[i] = Type.INT_TYPE;
+        }
+        convert(tempInput, outFile, npagebytes, numFields, ts, ',', clusterField);
     }
 
     public static void convert(File inFile, File outFile, int npagebytes,
@@ -92,6 +118,28 @@ public class HeapFileEncoder {
     public static void convert(File inFile, File outFile, int npagebytes,
                                int numFields, Type[] typeAr, char fieldSeparator)
             throws IOException {
+        convert(inFile, outFile, npagebytes, numFields, typeAr, fieldSeparator, -1);
+    }
+
+    /**
+     * Like {@link #convert(File, File, int, int, Type[], char)}, but can write
+     * the tuples sorted on a field. The table should then be opened with the
+     * same cluster field, see {@link HeapFile#setClusterField}. Either way, a
+     * {@link ZoneMap} with the range of every INT_TYPE field on each page is
+     * written next to the output file.
+     *
+     * @param clusterField the index of the field to sort on, or -1 to write the
+     *                     tuples in input order
+     */
+    public static void convert(File inFile, File outFile, int npagebytes,
+                               int numFields, Type[] typeAr, char fieldSeparator,
+                               int clusterField) throws IOException {
+        if (clusterField >= 0) {
+            inFile = sort(inFile, typeAr, fieldSeparator, clusterField);
+        }
+        ZoneMap zoneMap = new ZoneMap(ZoneMap.sideFile(outFile), typeAr);
+        List<int[]> summaries = new ArrayList<int[]>();
+        int[] summary = zoneMap.emptySummary();
 
         int nrecbytes = 0;
         for (int i = 0; i < numFields; i++) {
@@ -108,6 +156,9 @@ public class HeapFileEncoder {
 
         BufferedReader br = new BufferedReader(new FileReader(inFile));
         FileOutputStream os = new FileOutputStream(outFile);
+        // side files left over from an earlier version of the table are wrong now
+        for (File f : HeapFile.sideFiles(outFile))
+            f.delete();
 
         // our numbers probably won't be much larger than 1024 digits
         char buf[] = new char[1024];
@@ -142,7 +193,9 @@ public class HeapFileEncoder {
                 String s = new String(buf, 0, curpos);
                 if (typeAr[fieldNo] == Type.INT_TYPE) {
                     try {
-                        pageStream.writeInt(Integer.parseInt(s.trim()));
+                        int value = Integer.parseInt(s.trim());
+                        pageStream.writeInt(value);
+                        zoneMap.include(summary, fieldNo, value);
                     } catch (NumberFormatException e) {
                         System.out.println("BAD LINE : " + s);
                     }
@@ -219,9 +272,152 @@ public class HeapFileEncoder {
 
                 recordcount = 0;
                 npages++;
+                summaries.add(summary);
+                summary = zoneMap.emptySummary();
             }
         }
         br.close();
         os.close();
+        ZoneMap.write(outFile, typeAr, summaries);
+        if (clusterField >= 0)
+            inFile.delete();
+    }
+
+    /**
+     * Copies the lines of a text file to a temporary file, sorted on a field.
+     * The file is sorted externally: runs of at most {@link #RUN_LINES} lines
+     * are sorted in memory and written to temporary files, which are then
+     * merged, so memory stays bounded however large the input is.
+     *
+     * @return the sorted copy
+     */
+    private static File sort(File inFile, final Type[] typeAr, final char fieldSeparator,
+                             final int field) throws IOException {
+        final Comparator<String> byField;
+        if (typeAr[field] == Type.INT_TYPE) {
+            byField = Comparator.comparingInt(line -> Integer.parseInt(field(line, fieldSeparator, field)));
+        } else {
+            byField = Comparator.comparing(line -> field(line, fieldSeparator, field));
+        }
+
+        List<File> runs = new ArrayList<File>();
+        BufferedReader br = new BufferedReader(new FileReader(inFile));
+        try {
+            List<String> lines = new ArrayList<String>();
+            String line;
+            do {
+                line = br.readLine();
+                if (line != null && !line.trim().isEmpty())
+                    lines.add(line);
+                if (lines.size() == RUN_LINES || line == null && (!lines.isEmpty() || runs.isEmpty())) {
+                    lines.sort(byField);
+                    runs.add(writeLines(lines.iterator()));
+                    lines.clear();
+                }
+            } while (line != null);
+        } finally {
+            br.close();
+        }
+        if (runs.size() == 1)
+            return runs.get(0);
+
+        final List<BufferedReader> readers = new ArrayList<BufferedReader>();
+        try {
+            // the head line of each run, ordered by field; the index of its run goes along
+            final PriorityQueue<Map.Entry<String, Integer>> heads = new PriorityQueue<Map.Entry<String, Integer>>(
+                    runs.size(), Map.Entry.comparingByKey(byField));
+            for (File run : runs) {
+                BufferedReader reader = new BufferedReader(new FileReader(run));
+                readers.add(reader);
+                String head = reader.readLine();
+                if (head != null)
+                    heads.add(new AbstractMap.SimpleEntry<String, Integer>(head, readers.size() - 1));
+            }
+            return writeLines(new Iterator<String>() {
+                public boolean hasNext() {
+                    return !heads.isEmpty();
+                }
+
+                public String next() {
+                    Map.Entry<String, Integer> head = heads.poll();
+                    try {
+                        String line = readers.get(head.getValue()).readLine();
+                        if (line != null)
+                            heads.add(new AbstractMap.SimpleEntry<String, Integer>(line, head.getValue()));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return head.getKey();
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (BufferedReader reader : readers)
+                reader.close();
+            for (File run : runs)
+                run.delete();
+        }
+    }
+
+    /**
+     * Writes lines to a new temporary file.
+     */
+    private static File writeLines(Iterator<String> lines) throws IOException {
+        File f = File.createTempFile("sortedTable", ".txt");
+        f.deleteOnExit();
+        BufferedWriter bw = new BufferedWriter(new FileWriter(f));
+        try {
+            while (lines.hasNext()) {
+                bw.write(lines.next());
+                bw.write('\n');
+            }
+        } finally {
+            bw.close();
+        }
+        return f;
+    }
+
+    private static String field(String line, char fieldSeparator, int field) {
+        int start = 0;
+        for (int i = 0; i < field; i++) {
+            start = line.indexOf(fieldSeparator, start) + 1;
+            if (start == 0)
+                throw new IllegalArgumentException("line has no field " + field + ": " + line);
+        }
+        int end = line.indexOf(fieldSeparator, start);
+        return line.substring(start, end < 0 ? line.length() : end).trim();
+    }
+
+    /**
+     * Copies a heap file in the plain format (as written by convert) into a
+     * compressed store, to be opened as a compressed HeapFile. Empty pages
+     * take no space in the store.
+     *
+     * @param inFile     the plain heap file
+     * @param outFile    the table file of the compressed store; its index
+     *                   goes next to it. Existing files are replaced, and
+     *                   side files left over from an earlier table deleted
+     * @param npagebytes the number of bytes per page of the input file
+     * @throws IOException if a file can't be read or written
+     * @see CompressedPageStore
+     */
+    public static void compress(File inFile, File outFile, int npagebytes) throws IOException {
+        outFile.delete();
+        for (File f : HeapFile.sideFiles(outFile))
+            f.delete();
+        CompressedPageStore store = new CompressedPageStore(outFile, npagebytes);
+        DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(inFile)));
+        try {
+            byte[] page = new byte[npagebytes];
+            long pages = inFile.length() / npagebytes;
+            for (int i = 0; i < pages; i++) {
+                is.readFully(page);
+                store.write(i, page);
+            }
+        } finally {
+            is.close();
+            store.close();
+        }
     }
 }
@@ -2,6 +2,7 @@ package simpledb;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and
@@ -14,11 +15,42 @@ public class HeapPage implements Page {
 
     HeapPageId pid;
     TupleDesc td;
-    byte header[];
+    /**
+     * the header bitmap, 64 slots per word: slot i is used if bit i % 64 of
+     * word i / 64 is set. same bit order as the header bytes on the page.
+     */
+    long usedSlots[];
+    /** number of empty slots, kept up to date by markSlotUsed */
+    int numEmptySlots;
+    /**
+     * tuples decoded so far, or added by insertTuple. a null entry in a used slot
+     * hasn't been decoded from data yet. allocated on the first tuple kept.
+     */
     Tuple tuples[];
     int numSlots;
+    /** bytes per page of the table this page belongs to */
+    int pageSize;
+    /**
+     * serialized form of the page, kept up to date by insertTuple/deleteTuple.
+     * fields of undecoded slots are read from here.
+     */
+    volatile ByteBuffer data;
+    /**
+     * true while data is still the buffer the page was built from, which
+     * mustn't be written to. the first change to the page makes a private copy.
+     */
+    boolean shared;
+    /**
+     * true while data or oldDataBuffer is a frame of a {@link PageArena}. tuples
+     * decoded out of the frame aren't kept then, see {@link #detach}.
+     */
+    boolean framed;
 
     byte[] oldData;
+    /**
+     * before image of a page that hasn't had setBeforeImage() called yet: the bytes it was built from.
+     */
+    ByteBuffer oldDataBuffer;
 
     boolean dirty;
     List<TransactionId> txn = new ArrayList<>();
@@ -28,9 +60,10 @@ public class HeapPage implements Page {
      * The format of a HeapPage is a set of header bytes indicating
      * the slots of the page that are in use, some number of tuple slots.
      * Specifically, the number of tuples is equal to: <p>
-     * floor((BufferPool.PAGE_SIZE*8) / (tuple size * 8 + 1))
+     * floor((page size*8) / (tuple size * 8 + 1))
      * <p> where tuple size is the size of tuples in this
-     * database table, which can be determined via {@link Catalog#getTupleDesc}.
+     * database table, which can be determined via {@link Catalog#getTupleDesc},
+     * and page size is the table's page size, see {@link Catalog#getPageSize}.
      * The number of 8-bit header words is equal to:
      * <p>
      * ceiling(no. tuple slots / 8)
@@ -38,30 +71,60 @@ public class HeapPage implements Page {
      *
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
-     * @see BufferPool#PAGE_SIZE
+     * @see Catalog#getPageSize
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Create a HeapPage from a buffer holding the page's bytes, positioned at
+     * the start of the page, e.g. a slice of a memory-mapped table file.
+     * <p>
+     * The page keeps the buffer and decodes fields out of it only when they
+     * are accessed (see {@link #getField} and {@link #iterator(List)}), so the
+     * buffer (or the byte[] given to {@link #HeapPage(HeapPageId, byte[])})
+     * must not be modified afterwards. It also serves as the before image of
+     * the page until {@link #setBeforeImage} is called.
+     *
+     * @see HeapFile#readPage(PageId, boolean)
+     */
+    HeapPage(HeapPageId id, ByteBuffer data) {
+        this(id, data, false);
+    }
+
+    /**
+     * Same as {@link #HeapPage(HeapPageId, ByteBuffer)}, for data that may be
+     * a frame of a {@link PageArena}. A page built from a frame is a view of
+     * it: fields are decoded out of the frame on every access, and the tuples
+     * returned aren't kept by the page, until the page is first modified or
+     * {@link #detach}ed.
+     *
+     * @param framed true if data is a frame the page must let go of once it is dropped
+     */
+    HeapPage(HeapPageId id, ByteBuffer data, boolean framed) {
         this.pid = id;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.pageSize = Database.getCatalog().getPageSize(id.getTableId());
         this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
-
-        // allocate and read the header slots of this page
-        header = new byte[getHeaderSize()];
-        for (int i = 0; i < header.length; i++)
-            header[i] = dis.readByte();
-
-        try {
-            // allocate and read the actual records of this page
-            tuples = new Tuple[numSlots];
-            for (int i = 0; i < tuples.length; i++)
-                tuples[i] = readNextTuple(dis, i);
-        } catch (NoSuchElementException e) {
-            e.printStackTrace();
-        }
-        dis.close();
-
-        setBeforeImage();
+        this.data = data.slice();
+
+        // read the header bytes of this page into words, ignoring bits past the last slot
+        usedSlots = new long[(numSlots + 63) / 64];
+        for (int i = 0; i < getHeaderSize(); i++)
+            usedSlots[i / 8] |= (this.data.get(i) & 0xffL) << (i % 8 * 8);
+        if (numSlots % 64 != 0)
+            usedSlots[usedSlots.length - 1] &= (1L << numSlots % 64) - 1;
+        int used = 0;
+        for (long word : usedSlots)
+            used += Long.bitCount(word);
+        numEmptySlots = numSlots - used;
+
+        // tuples are decoded on demand
+
+        oldDataBuffer = this.data;
+        shared = true;
+        this.framed = framed;
     }
 
     /**
@@ -71,7 +134,7 @@ public class HeapPage implements Page {
      */
     private int getNumTuples() {
         // some code goes here
-        return BufferPool.PAGE_SIZE * 8 / (td.getSize() * 8 + 1);
+        return pageSize * 8 / (td.getSize() * 8 + 1);
 
     }
 
@@ -83,7 +146,7 @@ public class HeapPage implements Page {
     private int getHeaderSize() {
 
         // some code goes here
-        return (getNumTuples() + 7) / 8;
+        return (numSlots + 7) / 8;
 
     }
 
@@ -91,8 +154,11 @@ public class HeapPage implements Page {
      * Return a view of this page before it was modified
      * -- used by recovery
      */
-    public HeapPage getBeforeImage() {
+    public synchronized HeapPage getBeforeImage() {
         try {
+            if (oldData == null) {
+                return framed ? new HeapPage(pid, copy(oldDataBuffer)) : new HeapPage(pid, oldDataBuffer);
+            }
             return new HeapPage(pid, oldData);
         } catch (IOException e) {
             e.printStackTrace();
@@ -102,8 +168,36 @@ public class HeapPage implements Page {
         return null;
     }
 
-    public void setBeforeImage() {
-        oldData = getPageData().clone();
+    public synchronized void setBeforeImage() {
+        oldData = getPageData();
+        oldDataBuffer = null;
+        framed = shared;
+    }
+
+    /**
+     * Lets go of the arena frame the page was built from, copying whatever
+     * still refers to it onto the heap, so that the frame can be reused while
+     * the page is still in use, e.g. by a scan that is part way through it.
+     */
+    synchronized void detach() {
+        if (!framed) {
+            return;
+        }
+        if (oldDataBuffer != null) {
+            oldData = copy(oldDataBuffer);
+            oldDataBuffer = null;
+        }
+        if (shared) {
+            data = ByteBuffer.wrap(getPageData());
+            shared = false;
+        }
+        framed = false;
+    }
+
+    private byte[] copy(ByteBuffer buffer) {
+        byte[] bytes = new byte[pageSize];
+        buffer.duplicate().get(bytes, 0, Math.min(buffer.remaining(), pageSize));
+        return bytes;
     }
 
     /**
@@ -116,39 +210,80 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Suck up tuples from the source file.
+     * @return the offset of the given slot's tuple from the start of the page
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            for (int i = 0; i < td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
-            return null;
-        }
+    private int slotOffset(int slotId) {
+        return getHeaderSize() + slotId * td.getSize();
+    }
 
-        // read fields in the tuple
-        Tuple t = new Tuple(td);
-        RecordId rid = new RecordId(pid, slotId);
-        t.setRecordId(rid);
-        try {
-            for (int j = 0; j < td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
-            }
-        } catch (java.text.ParseException e) {
-            e.printStackTrace();
-            throw new NoSuchElementException("parsing error!");
+    /**
+     * Returns the tuple in the given slot, e.g. the one a RecordId from an
+     * index points at.
+     *
+     * @throws NoSuchElementException if the slot is empty
+     */
+    public Tuple getTuple(int slotId) throws NoSuchElementException {
+        if (slotId < 0 || slotId >= numSlots || !isSlotUsed(slotId)) {
+            throw new NoSuchElementException("slot " + slotId + " is empty");
         }
+        return tupleAt(slotId);
+    }
 
+    /**
+     * Returns the tuple in a used slot, decoding it from the page's bytes on
+     * first access.
+     */
+    private synchronized Tuple tupleAt(int slotId) throws NoSuchElementException {
+        Tuple t = tuples == null ? null : tuples[slotId];
+        if (t != null) {
+            return t;
+        }
+        t = new Tuple(td);
+        t.setRecordId(new RecordId(pid, slotId));
+        for (int j = 0; j < td.numFields(); j++) {
+            t.setField(j, getField(slotId, j));
+        }
+        if (!(framed && shared)) {
+            keep(slotId, t);
+        }
         return t;
     }
 
+    private synchronized void keep(int slotId, Tuple t) {
+        if (tuples == null) {
+            tuples = new Tuple[numSlots];
+        }
+        tuples[slotId] = t;
+    }
+
+    /**
+     * Returns one field of the tuple in a used slot. For a slot that hasn't
+     * been decoded into a Tuple yet, only this field is decoded, straight from
+     * its fixed offset in the page.
+     *
+     * @param slotId the slot of the tuple
+     * @param field  the index of the field in the tuple
+     * @throws NoSuchElementException if the slot is empty or can't be parsed
+     */
+    public Field getField(int slotId, int field) throws NoSuchElementException {
+        if (!isSlotUsed(slotId)) {
+            throw new NoSuchElementException("slot " + slotId + " is empty");
+        }
+        // the page may be detached from its frame at any time, see detach
+        synchronized (this) {
+            Tuple t = tuples == null ? null : tuples[slotId];
+            if (t != null) {
+                return t.getField(field);
+            }
+            try {
+                return td.getFieldType(field).parse(data, slotOffset(slotId) + td.getFieldOffset(field));
+            } catch (java.text.ParseException e) {
+                e.printStackTrace();
+                throw new NoSuchElementException("parsing error!");
+            }
+        }
+    }
+
     /**
      * Generates a byte array representing the contents of this page.
      * Used to serialize this page to disk.
@@ -156,69 +291,64 @@ public class HeapPage implements Page {
      * The invariant here is that it should be possible to pass the byte
      * array generated by getPageData to the HeapPage constructor and
      * have it produce an identical HeapPage object.
+     * <p>
+     * The serialized page is maintained in place as tuples are inserted and
+     * deleted, so this is just a copy of it.
      *
      * @return A byte array correspond to the bytes of this page.
      * @see #HeapPage
      */
-    public byte[] getPageData() {
-        int len = BufferPool.PAGE_SIZE;
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
+    public synchronized byte[] getPageData() {
+        byte[] pageData = new byte[pageSize];
+        ByteBuffer bb = data.duplicate();
+        bb.get(pageData, 0, Math.min(bb.remaining(), pageData.length));
+        return pageData;
+    }
 
-        // create the header of the page
-        for (int i = 0; i < header.length; i++) {
-            try {
-                dos.writeByte(header[i]);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
+    /**
+     * Makes data safe to write to, copying it first if the page still shares
+     * the buffer it was built from.
+     */
+    private synchronized void ensureWritable() {
+        if (shared) {
+            data = ByteBuffer.wrap(getPageData());
+            shared = false;
         }
+    }
 
-        // create the tuples
-        for (int i = 0; i < tuples.length; i++) {
-
-            // empty slot
-            if (!isSlotUsed(i)) {
-                for (int j = 0; j < td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                }
-                continue;
-            }
-
-            // non-empty slot
+    /**
+     * Serializes a tuple into the given slot of data.
+     *
+     * @throws DbException if the tuple doesn't serialize to a tuple of this page's TupleDesc
+     */
+    private void writeSlot(int slotId, Tuple t) throws DbException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(td.getSize());
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
             for (int j = 0; j < td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
-                try {
-                    f.serialize(dos);
-
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+                t.getField(j).serialize(dos);
             }
-        }
-
-        // padding
-        int zerolen = BufferPool.PAGE_SIZE - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        try {
             dos.flush();
         } catch (IOException e) {
+            // this really shouldn't happen
             e.printStackTrace();
         }
+        if (baos.size() != td.getSize()) {
+            throw new DbException("tuple desc not match: " + t);
+        }
+        ByteBuffer bb = data.duplicate();
+        bb.position(slotOffset(slotId));
+        bb.put(baos.toByteArray());
+    }
 
-        return baos.toByteArray();
+    /**
+     * Zeroes the bytes of the given slot in data.
+     */
+    private void clearSlot(int slotId) {
+        int offset = slotOffset(slotId);
+        for (int i = 0; i < td.getSize(); i++) {
+            data.put(offset + i, (byte) 0);
+        }
     }
 
     /**
@@ -231,8 +361,15 @@ public class HeapPage implements Page {
      * @return The returned ByteArray.
      */
     public static byte[] createEmptyPageData() {
-        int len = BufferPool.PAGE_SIZE;
-        return new byte[len]; //all 0
+        return createEmptyPageData(BufferPool.PAGE_SIZE);
+    }
+
+    /**
+     * Same as {@link #createEmptyPageData()}, for a table with pages of the
+     * given size.
+     */
+    public static byte[] createEmptyPageData(int pageSize) {
+        return new byte[pageSize]; //all 0
     }
 
     /**
@@ -262,7 +399,7 @@ public class HeapPage implements Page {
         if (!isSlotUsed(tupleNo)) {
             throw new DbException("tuple not found:" + t);
         }
-        Tuple target = tuples[tupleNo];
+        Tuple target = tupleAt(tupleNo);
         if(!target.getTupleDesc().equals(t.getTupleDesc())){
             throw new DbException("tuple desc not match: param:" + t + " target:" + target);
         }
@@ -271,8 +408,14 @@ public class HeapPage implements Page {
                 throw new DbException("tuple field(" + i + " not match: param:" + t.getField(i) + " target:" + target.getField(i));
             }
         }
-        tuples[tupleNo] = null;
+        ensureWritable();
+        synchronized (this) {
+            if (tuples != null) {
+                tuples[tupleNo] = null;
+            }
+        }
         markSlotUsed(tupleNo, false);
+        clearSlot(tupleNo);
         t.setRecordId(null);
     }
 
@@ -287,16 +430,16 @@ public class HeapPage implements Page {
     public void insertTuple(Tuple t) throws DbException {
         // some code goes here
         // not necessary for lab1
-        for (int i = 0; i < tuples.length; i++) {
-            if (tuples[i] == null) {
-                markSlotUsed(i, true);
-                tuples[i] = t;
-                RecordId rid = new RecordId(getId(), i);
-                t.setRecordId(rid);
-                return;
-            }
+        int i = nextSlot(0, false);
+        if (i < 0) {
+            throw new DbException("tuple cannot be inserted");
         }
-        throw new DbException("tuple cannot be inserted");
+        ensureWritable();
+        writeSlot(i, t);
+        keep(i, t);
+        markSlotUsed(i, true);
+        RecordId rid = new RecordId(getId(), i);
+        t.setRecordId(rid);
     }
 
     /**
@@ -308,9 +451,12 @@ public class HeapPage implements Page {
         // not necessary for lab1
         this.dirty = dirty;
         if (dirty) {
-            txn.add(tid);
+            //a page is dirtied once per tuple inserted or deleted; one clean must undo them all
+            if (!txn.contains(tid)) {
+                txn.add(tid);
+            }
         } else {
-            txn.remove(tid);
+            txn.clear();
         }
     }
 
@@ -331,15 +477,7 @@ public class HeapPage implements Page {
      */
     public int getNumEmptySlots() {
         // some code goes here
-        int result = 0;
-        for (int i = 0; i < getNumTuples(); i++) {
-            int idx = i / 8;
-            int shift = 1 << (i % 8);
-            if ((header[idx] & shift) == 0) {
-                result++;
-            }
-        }
-        return result;
+        return numEmptySlots;
     }
 
     /**
@@ -347,9 +485,30 @@ public class HeapPage implements Page {
      */
     public boolean isSlotUsed(int i) {
         // some code goes here
-        byte b = header[i / 8];
+        return (usedSlots[i / 64] & (1L << i)) != 0;
+    }
 
-        return (b & (1 << ((i % 8)))) != 0;
+    /**
+     * Finds the first used (or empty) slot at or after from, looking at the
+     * header 64 slots at a time.
+     *
+     * @param used true to look for a used slot, false for an empty one
+     * @return the slot number, or -1 if there is no such slot
+     */
+    int nextSlot(int from, boolean used) {
+        if (from >= numSlots) {
+            return -1;
+        }
+        int w = from / 64;
+        long word = (used ? usedSlots[w] : ~usedSlots[w]) & (-1L << from);
+        while (word == 0) {
+            if (++w == usedSlots.length) {
+                return -1;
+            }
+            word = used ? usedSlots[w] : ~usedSlots[w];
+        }
+        int slot = w * 64 + Long.numberOfTrailingZeros(word);
+        return slot < numSlots ? slot : -1;
     }
 
     /**
@@ -358,14 +517,12 @@ public class HeapPage implements Page {
     private void markSlotUsed(int i, boolean value) {
         // some code goes here
         // not necessary for lab1
-        byte b = header[i / 8];
-        if (value) {
-            b |= (1 << ((i % 8)));
-            header[i / 8] = b;
-        } else {
-            b &= ~(1 << ((i % 8)));
-            header[i / 8] = b;
+        if (isSlotUsed(i) == value) {
+            return;
         }
+        usedSlots[i / 64] ^= 1L << i;
+        numEmptySlots += value ? -1 : 1;
+        data.put(i / 8, (byte) (usedSlots[i / 64] >>> (i / 8 % 8 * 8)));
     }
 
     /**
@@ -374,26 +531,56 @@ public class HeapPage implements Page {
      */
     public Iterator<Tuple> iterator() {
         // some code goes here
-        return new Iter(this);
+        return new Iter(this, Collections.emptyList());
+    }
+
+    /**
+     * Returns an iterator over the tuples on this page that satisfy all of the
+     * given predicates. The predicates are evaluated on fields decoded one at a
+     * time, so no Tuple is built for a row that fails them.
+     *
+     * @param predicates predicates over this page's TupleDesc, all of which a
+     *                   returned tuple must satisfy
+     */
+    public Iterator<Tuple> iterator(List<Predicate> predicates) {
+        return new Iter(this, predicates);
     }
 
     static class Iter implements Iterator<Tuple> {
         HeapPage hp;
+        List<Predicate> predicates;
         int index;
+        boolean matched = false; //slot at index is used and satisfies the predicates
 
-        public Iter(HeapPage hp) {
+        public Iter(HeapPage hp, List<Predicate> predicates) {
             this.hp = hp;
+            this.predicates = predicates;
             index = 0;
         }
 
+        private boolean matches(int slot) {
+            for (Predicate p : predicates) {
+                if (!hp.getField(slot, p.getField()).compare(p.getOp(), p.getOperand())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
         @Override
         public boolean hasNext() {
-            while (index < hp.tuples.length && hp.tuples[index] == null) {
-                index++;
+            if (matched) {
+                return true;
             }
-            if (index >= hp.tuples.length) {
+            index = hp.nextSlot(index, true);
+            while (index >= 0 && !matches(index)) {
+                index = hp.nextSlot(index + 1, true);
+            }
+            if (index < 0) {
+                index = hp.numSlots;
                 return false;
             }
+            matched = true;
             return true;
         }
 
@@ -402,8 +589,8 @@ public class HeapPage implements Page {
             if (!hasNext()) {
                 throw new NoSuchElementException();
             }
-            return hp.tuples[index++];
+            matched = false;
+            return hp.tupleAt(index++);
         }
     }
 }
-
@@ -0,0 +1,55 @@
+package simpledb;
+
+import java.io.IOException;
+
+/**
+ * An IndexFile is a DbFile that maps the values of one field of a table, the
+ * key, to the RecordIds of the table's tuples with that value. It doesn't hold
+ * tuples of its own: its iterators return the tuples of the indexed table, and
+ * insertTuple and deleteTuple add and remove the entry of a tuple that was
+ * just inserted into or is about to be deleted from the table (see
+ * {@link BufferPool#insertTuple}). Its TupleDesc is that of the table.
+ * <p>
+ * Indexes are registered with {@link Catalog#addIndex}. Their pages are read
+ * and locked through the buffer pool like those of tables.
+ */
+public interface IndexFile extends DbFile {
+    /**
+     * @return the id of the indexed table
+     */
+    public int getTableId();
+
+    /**
+     * @return the index of the key field in the table's TupleDesc
+     */
+    public int getKeyField();
+
+    /**
+     * @return true if {@link #indexIterator} can find the keys that satisfy a
+     * predicate with the given operation without looking at all of them
+     */
+    public boolean supports(Predicate.Op op);
+
+    /**
+     * Returns an iterator over the tuples of the table whose key satisfies the
+     * given predicate.
+     *
+     * @throws UnsupportedOperationException if the predicate's operation
+     *                                       isn't supported
+     */
+    public DbFileIterator indexIterator(TransactionId tid, IndexPredicate ipred);
+
+    /**
+     * Fills the index with the entries of all tuples in the table, replacing
+     * whatever it held. The table is read as tid.
+     */
+    public void build(TransactionId tid) throws DbException, TransactionAbortedException, IOException;
+
+    /**
+     * Estimates the number of pages read to find the entries of a key, for
+     * costing index lookups.
+     */
+    public default int estimateProbePages() {
+        return 1;
+    }
+}
@@ -0,0 +1,164 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * IndexNestedLoopJoin is a Join that, instead of reading its inner child, looks
+ * up the inner tuples that match each outer tuple in an {@link IndexFile} on
+ * the inner join field. It pays a few page reads per outer tuple rather than
+ * a scan of the inner table, so it wins when the outer side is small.
+ * <p>
+ * The inner child must be a {@link SeqScan} of the index's table, possibly
+ * under Filters. It is never opened: it gives the join its TupleDesc, and its
+ * transaction, pushed down predicates and filters are applied to the tuples
+ * the index returns.
+ */
+public class IndexNestedLoopJoin extends Join {
+
+    private static final long serialVersionUID = 1L;
+
+    private final IndexFile index;
+    private TransactionId tid;
+    private List<Predicate> innerPredicates;
+    private Tuple outer;
+    private DbFileIterator probe;
+
+    /**
+     * Constructor.
+     *
+     * @param p      The predicate to use to join the children; its second field
+     *               must be the index's key
+     * @param child1 Iterator for the left(outer) relation to join
+     * @param child2 the inner relation, a SeqScan of the index's table under
+     *               zero or more Filters
+     * @param index  the index to look the inner tuples up in
+     * @throws IllegalArgumentException if the index can't evaluate the join
+     *                                  over child2
+     */
+    public IndexNestedLoopJoin(JoinPredicate p, DbIterator child1, DbIterator child2, IndexFile index) {
+        super(p, child1, child2);
+        SeqScan scan = innerScan(child2);
+        if (scan == null || scan.getTableId() != index.getTableId()) {
+            throw new IllegalArgumentException("inner child is not a scan of the index's table");
+        }
+        if (index.getKeyField() != p.getField2() || !index.supports(keyOp(p.getOperator()))) {
+            throw new IllegalArgumentException("index can't evaluate " + getJoinField2Name() + " "
+                    + p.getOperator() + " " + getJoinField1Name());
+        }
+        this.index = index;
+    }
+
+    public IndexFile getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the SeqScan under the Filters that make up child, or null if
+     * child is something else
+     */
+    static SeqScan innerScan(DbIterator child) {
+        while (child instanceof Filter) {
+            child = ((Filter) child).getChildren()[0];
+        }
+        return child instanceof SeqScan ? (SeqScan) child : null;
+    }
+
+    /**
+     * @return the operation to look up the keys k with, for a join predicate
+     * <code>outer op k</code>
+     */
+    static Predicate.Op keyOp(Predicate.Op op) {
+        switch (op) {
+            case GREATER_THAN:
+                return Predicate.Op.LESS_THAN;
+            case GREATER_THAN_OR_EQ:
+                return Predicate.Op.LESS_THAN_OR_EQ;
+            case LESS_THAN:
+                return Predicate.Op.GREATER_THAN;
+            case LESS_THAN_OR_EQ:
+                return Predicate.Op.GREATER_THAN_OR_EQ;
+            default:
+                return op;
+        }
+    }
+
+    @Override
+    protected boolean scansInner() {
+        return false;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        DbIterator child = getChildren()[1];
+        innerPredicates = new ArrayList<>();
+        while (child instanceof Filter) {
+            innerPredicates.add(((Filter) child).getPredicate());
+            child = ((Filter) child).getChildren()[0];
+        }
+        SeqScan scan = (SeqScan) child;
+        innerPredicates.addAll(scan.getPredicates());
+        tid = scan.getTransactionId();
+        super.open();
+        outer = null;
+    }
+
+    public void close() {
+        super.close();
+        closeProbe();
+        outer = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        super.rewind();
+        closeProbe();
+        outer = null;
+    }
+
+    private void closeProbe() {
+        if (probe != null) {
+            probe.close();
+            probe = null;
+        }
+    }
+
+    /**
+     * Returns the next outer tuple joined with a matching inner one, probing
+     * the index with each outer tuple's join field in turn.
+     *
+     * @return The next matching tuple.
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        DbIterator child1 = getChildren()[0];
+        JoinPredicate p = getJoinPredicate();
+        while (true) {
+            while (probe != null && probe.hasNext()) {
+                Tuple inner = probe.next();
+                if (matchesInner(inner) && p.filter(outer, inner)) {
+                    return combine(outer, inner);
+                }
+            }
+            closeProbe();
+            if (!child1.hasNext()) {
+                outer = null;
+                return null;
+            }
+            outer = child1.next();
+            Field key = outer.getField(p.getField1());
+            if (key != null) {
+                probe = index.indexIterator(tid, new IndexPredicate(keyOp(p.getOperator()), key));
+                probe.open();
+            }
+        }
+    }
+
+    private boolean matchesInner(Tuple inner) {
+        for (Predicate predicate : innerPredicates) {
+            if (!predicate.filter(inner)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,59 @@
+package simpledb;
+
+import java.io.Serializable;
+
+/**
+ * IndexPredicate compares the key of an index to a specified Field value. It
+ * is the form of {@link Predicate} an {@link IndexFile} understands: the field
+ * is implied by the index.
+ */
+public class IndexPredicate implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Predicate.Op op;
+    private Field fieldvalue;
+
+    /**
+     * Constructor.
+     *
+     * @param op     the operation to compare keys with
+     * @param fvalue the value keys are compared to
+     */
+    public IndexPredicate(Predicate.Op op, Field fvalue) {
+        this.op = op;
+        this.fieldvalue = fvalue;
+    }
+
+    public Field getField() {
+        return fieldvalue;
+    }
+
+    public Predicate.Op getOp() {
+        return op;
+    }
+
+    /**
+     * @return true if a key satisfies this predicate
+     */
+    public boolean matches(Field key) {
+        return key.compare(op, fieldvalue);
+    }
+
+    /**
+     * Return true if the fieldvalue in the supplied predicate
+     * is satisfied by this predicate's fieldvalue and
+     * operator.
+     *
+     * @param ipd The field to compare against.
+     */
+    public boolean equals(IndexPredicate ipd) {
+        if (ipd == null)
+            return false;
+        return (op.equals(ipd.op) && fieldvalue.equals(ipd.fieldvalue));
+    }
+
+    public String toString() {
+        return "key " + op + " " + fieldvalue;
+    }
+}
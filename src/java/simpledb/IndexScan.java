@@ -0,0 +1,67 @@
+package simpledb;
+
+import java.util.NoSuchElementException;
+
+/**
+ * IndexScan is an access method that reads the tuples of a table whose value
+ * of an indexed field satisfies a predicate, by looking them up in an
+ * {@link IndexFile} instead of reading the whole table. Its TupleDesc is that
+ * of a {@link SeqScan} of the table with the same alias.
+ * <p>
+ * Predicates pushed down by a {@link Filter} are not used: the filter applies
+ * them itself.
+ */
+public class IndexScan extends SeqScan {
+
+    private static final long serialVersionUID = 1L;
+
+    private final IndexFile index;
+    private final IndexPredicate ipred;
+    private DbFileIterator iterator;
+
+    /**
+     * Creates a scan of the tuples of the index's table whose key satisfies
+     * ipred, as a part of the specified transaction.
+     *
+     * @param tid        The transaction this scan is running as a part of.
+     * @param index      the index to look the tuples up in
+     * @param ipred      the predicate on the index's key
+     * @param tableAlias the alias of the table (see {@link SeqScan})
+     */
+    public IndexScan(TransactionId tid, IndexFile index, IndexPredicate ipred, String tableAlias) {
+        super(tid, index.getTableId(), tableAlias);
+        this.index = index;
+        this.ipred = ipred;
+    }
+
+    public IndexFile getIndex() {
+        return index;
+    }
+
+    public IndexPredicate getIndexPredicate() {
+        return ipred;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        iterator = index.indexIterator(getTransactionId(), ipred);
+        iterator.open();
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DbException {
+        return iterator.hasNext();
+    }
+
+    public Tuple next() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        return iterator.next();
+    }
+
+    public void close() {
+        iterator.close();
+    }
+
+    public void rewind() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        iterator.rewind();
+    }
+}
@@ -1,6 +1,9 @@
 package simpledb;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 
 /**
  * Inserts tuples read from the child operator into the tableid specified in the
@@ -9,6 +12,13 @@ import java.io.IOException;
 public class Insert extends Operator {
 
     private static final long serialVersionUID = 1L;
+    /**
+     * Children producing more than this many pages worth of tuples are appended
+     * to the table in bulk rather than inserted one tuple at a time.
+     *
+     * @see HeapFile#appendTuples
+     */
+    static final int BULK_INSERT_PAGES = 16;
     private TransactionId tid;
     private DbIterator child;
     private int tableId;
@@ -67,6 +77,10 @@ public class Insert extends Operator {
      * instances of BufferPool is available via Database.getBufferPool(). Note
      * that insert DOES NOT need check to see if a particular tuple is a
      * duplicate before inserting it.
+     * <p>
+     * The first {@link #BULK_INSERT_PAGES} pages worth of tuples are buffered.
+     * If the child has more, everything is handed to HeapFile.appendTuples
+     * instead, which writes whole extents of new pages at once.
      * 
      * @return A 1-field tuple containing the number of inserted records, or
      *         null if called more than once.
@@ -79,16 +93,31 @@ public class Insert extends Operator {
             return null;
         }
         BufferPool bufferPool = Database.getBufferPool();
+        DbFile dbFile = Database.getCatalog().getDbFile(tableId);
+        //only HeapFiles can be appended to in bulk, and only without indexes to keep up to date
+        boolean bulk = dbFile instanceof HeapFile && Database.getCatalog().getIndexes(tableId).isEmpty();
+        int threshold = bulk ? ((HeapFile) dbFile).slotsPerPage() * BULK_INSERT_PAGES : 0;
+        List<Tuple> head = new ArrayList<>();
+        while (head.size() < threshold && child.hasNext()) {
+            head.add(child.next());
+        }
         int count = 0;
-        while (child.hasNext()) {
-            Tuple tuple = child.next();
-            try {
-                bufferPool.insertTuple(tid, tableId, tuple);
-            } catch (IOException e) {
-                e.printStackTrace();
-                throw new DbException("cannot do insertion");
+        try {
+            if (threshold > 0 && child.hasNext()) {
+                count = append((HeapFile) dbFile, head);
+            } else {
+                for (Tuple tuple : head) {
+                    bufferPool.insertTuple(tid, tableId, tuple);
+                    count++;
+                }
+                while (child.hasNext()) {
+                    bufferPool.insertTuple(tid, tableId, child.next());
+                    count++;
+                }
             }
-            count++;
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new DbException("cannot do insertion");
         }
         Tuple result = new Tuple(getTupleDesc());
         result.setField(0, new IntField(count));
@@ -96,6 +125,49 @@ public class Insert extends Operator {
         return result;
     }
 
+    /**
+     * Appends the buffered tuples followed by the rest of the child. The
+     * child's checked exceptions are passed through the Iterator as a
+     * ChildException and rethrown here.
+     */
+    private int append(HeapFile heapFile, List<Tuple> head)
+            throws DbException, TransactionAbortedException, IOException {
+        Iterator<Tuple> buffered = head.iterator();
+        Iterator<Tuple> tuples = new Iterator<Tuple>() {
+            @Override
+            public boolean hasNext() {
+                try {
+                    return buffered.hasNext() || child.hasNext();
+                } catch (DbException | TransactionAbortedException e) {
+                    throw new ChildException(e);
+                }
+            }
+
+            @Override
+            public Tuple next() {
+                try {
+                    return buffered.hasNext() ? buffered.next() : child.next();
+                } catch (DbException | TransactionAbortedException e) {
+                    throw new ChildException(e);
+                }
+            }
+        };
+        try {
+            return heapFile.appendTuples(tid, tuples);
+        } catch (ChildException e) {
+            if (e.getCause() instanceof TransactionAbortedException) {
+                throw (TransactionAbortedException) e.getCause();
+            }
+            throw (DbException) e.getCause();
+        }
+    }
+
+    private static class ChildException extends RuntimeException {
+        ChildException(Exception cause) {
+            super(cause);
+        }
+    }
+
     @Override
     public DbIterator[] getChildren() {
         // some code goes here
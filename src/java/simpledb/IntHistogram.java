@@ -161,7 +161,16 @@ public class IntHistogram {
      */
     public double avgSelectivity() {
         // some code goes here
-        return 1.0;
+        // the selectivity of an equality with a value drawn from the histogrammed
+        // ones: a value lands in a bucket as often as the bucket is high
+        if (total == 0) {
+            return 0;
+        }
+        double result = 0;
+        for (long height : list) {
+            result += height * 1.0 / total * (height * 1.0 / singleBucketCapacity / total);
+        }
+        return result;
     }
 
     /**
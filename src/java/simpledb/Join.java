@@ -72,7 +72,9 @@ public class Join extends Operator {
         // some code goes here
         super.open();
         child1.open();
-        child2.open();
+        if (scansInner()) {
+            child2.open();
+        }
         outer = null;
     }
 
@@ -80,18 +82,31 @@ public class Join extends Operator {
         // some code goes here
         super.close();
         child1.close();
-        child2.close();
+        if (scansInner()) {
+            child2.close();
+        }
         outer = null;
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
         // some code goes here
         child1.rewind();
-        child2.rewind();
+        if (scansInner()) {
+            child2.rewind();
+        }
         outer = null;
         materialized = null;
     }
 
+    /**
+     * @return true if this join reads its inner child. Joins that look the
+     * matching inner tuples up some other way return false, and the inner
+     * child is then left closed; it only describes the inner relation.
+     */
+    protected boolean scansInner() {
+        return true;
+    }
+
     /**
      * Returns the next tuple generated by the join, or null if there are no
      * more tuples. Logically, this is the next tuple in r1 cross r2 that
@@ -157,7 +172,7 @@ public class Join extends Operator {
         return null;
     }
 
-    private Tuple combine(Tuple outer, Tuple tuple2) {
+    Tuple combine(Tuple outer, Tuple tuple2) {
         Tuple result = new Tuple(getTupleDesc());
         Iterator<Field> ii = outer.fields();
         int idx = 0;
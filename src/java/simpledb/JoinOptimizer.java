@@ -13,6 +13,11 @@ import javax.swing.tree.*;
 public class JoinOptimizer {
     LogicalPlan p;
     Vector<LogicalJoinNode> joins;
+    /**
+     * the statistics passed to orderJoins, for costing index lookups; the
+     * global ones until then
+     */
+    private Map<String, TableStats> stats;
 
     /**
      * Constructor
@@ -32,6 +37,10 @@ public class JoinOptimizer {
      * inner/outer here -- because DbIterator's don't provide any cardinality
      * estimates, and stats only has information about the base tables. For this
      * reason, the plan1
+     * <p>
+     * Joins that {@link #orderJoins} chose to evaluate with an index become
+     * IndexNestedLoopJoins, as long as plan2 still is a scan of a table with a
+     * suitable index.
      *
      * @param lj    The join being considered
      * @param plan1 The left join node's child
@@ -63,7 +72,13 @@ public class JoinOptimizer {
 
         JoinPredicate p = new JoinPredicate(t1id, lj.p, t2id);
 
-        j = new Join(p, plan1, plan2);
+        SeqScan inner = lj.indexJoin ? IndexNestedLoopJoin.innerScan(plan2) : null;
+        IndexFile index = inner == null ? null : joinIndex(inner.getTableId(), t2id, lj.p);
+        if (index != null) {
+            j = new IndexNestedLoopJoin(p, plan1, plan2, index);
+        } else {
+            j = new Join(p, plan1, plan2);
+        }
 
         return j;
 
@@ -91,6 +106,19 @@ public class JoinOptimizer {
      */
     public double estimateJoinCost(LogicalJoinNode j, int card1, int card2,
                                    double cost1, double cost2) {
+        return estimateJoinCost(j, card1, card2, cost1, cost2, true);
+    }
+
+    /**
+     * Same as {@link #estimateJoinCost(LogicalJoinNode, int, int, double, double)},
+     * where an index nested-loop join is only considered if the right-hand
+     * side is a base table rather than the result of other joins.
+     */
+    private double estimateJoinCost(LogicalJoinNode j, int card1, int card2,
+                                    double cost1, double cost2, boolean innerIsTable) {
+        if (innerIsTable && useIndexJoin(j, card1, card2, cost1, cost2)) {
+            return estimateIndexJoinCost(j, card1, cost1);
+        }
         if (j instanceof LogicalSubplanJoinNode) {
             // A LogicalSubplanJoinNode represents a subquery.
             // You do not need to implement proper support for these for Project 3.
@@ -105,6 +133,74 @@ public class JoinOptimizer {
         }
     }
 
+    /**
+     * Estimates the cost of joining by looking up the right-hand tuples that
+     * match each left-hand tuple in an index on the right-hand field: the
+     * left-hand side, plus one index lookup and one predicate application per
+     * match for each left-hand tuple.
+     *
+     * @return the estimated cost, or infinity if the right-hand table has no
+     * index that can evaluate the join
+     */
+    double estimateIndexJoinCost(LogicalJoinNode j, int card1, double cost1) {
+        if (j instanceof LogicalSubplanJoinNode || j.t2Alias == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        Integer tableId = p.getTableId(j.t2Alias);
+        if (tableId == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        Map<String, TableStats> stats = this.stats != null ? this.stats : TableStats.getStatsMap();
+        TableStats s = stats.get(Database.getCatalog().getTableName(tableId));
+        int field;
+        try {
+            field = Database.getCatalog().getTupleDesc(tableId).fieldNameToIndex(j.f2PureName);
+        } catch (NoSuchElementException e) {
+            return Double.POSITIVE_INFINITY;
+        }
+        IndexFile index = joinIndex(tableId, field, j.p);
+        if (s == null || index == null || s.totalTuples() == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        // the index returns the matches before the right-hand filters drop some
+        double selectivity = j.p == Predicate.Op.EQUALS && isPkey(j.t2Alias, j.f2PureName)
+                ? 1.0 / s.totalTuples()
+                : s.avgSelectivity(field, IndexNestedLoopJoin.keyOp(j.p));
+        return cost1 + card1 * (s.estimateIndexScanCost(index, selectivity) + selectivity * s.totalTuples());
+    }
+
+    /**
+     * @return true if an index nested-loop join is cheaper than Join for the
+     * given join. Join evaluates equalities by hashing both sides, which reads
+     * each of them once, so the index only wins that case when the left-hand
+     * side is small.
+     */
+    private boolean useIndexJoin(LogicalJoinNode j, int card1, int card2, double cost1, double cost2) {
+        double indexCost = estimateIndexJoinCost(j, card1, cost1);
+        if (indexCost == Double.POSITIVE_INFINITY) {
+            return false;
+        }
+        double joinCost = j.p == Predicate.Op.EQUALS ? cost1 + cost2 + card1 + card2
+                : cost1 + card1 * cost2 + card1 * card2;
+        return indexCost < joinCost;
+    }
+
+    /**
+     * @return the index of the given table on the given field that needs the
+     * fewest page reads per lookup for a join predicate <code>outer op
+     * field</code>, or null if there is none
+     */
+    static IndexFile joinIndex(int tableId, int field, Predicate.Op op) {
+        IndexFile best = null;
+        for (IndexFile index : Database.getCatalog().getIndexes(tableId)) {
+            if (index.getKeyField() == field && index.supports(IndexNestedLoopJoin.keyOp(op))
+                    && (best == null || index.estimateProbePages() < best.estimateProbePages())) {
+                best = index;
+            }
+        }
+        return best;
+    }
+
     /**
      * Estimate the cardinality of a join. The cardinality of a join is the
      * number of tuples produced by the join.
@@ -209,6 +305,10 @@ public class JoinOptimizer {
 
         // some code goes here
         //Replace the following
+        if (joins.isEmpty()) {
+            return new Vector<LogicalJoinNode>();
+        }
+        this.stats = stats;
         PlanCache planCache = new PlanCache();
         for (int i = 0; i < joins.size(); i++) {
             Set<Set<LogicalJoinNode>> subsets = enumerateSubsets(joins, i + 1);
@@ -291,6 +391,7 @@ public class JoinOptimizer {
         double t1cost, t2cost;
         int t1card, t2card;
         boolean leftPkey, rightPkey;
+        boolean t1IsTable = true, t2IsTable = true;
 
         if (news.isEmpty()) { // base case -- both are base relations
             prevBest = new Vector<LogicalJoinNode>();
@@ -326,6 +427,7 @@ public class JoinOptimizer {
                 // subtree is
                 t1card = bestCard;
                 leftPkey = hasPkey(prevBest);
+                t1IsTable = false;
 
                 t2cost = j.t2Alias == null ? 0 : stats.get(table2Name)
                         .estimateScanCost();
@@ -342,6 +444,7 @@ public class JoinOptimizer {
                 // subtree is
                 t2card = bestCard;
                 rightPkey = hasPkey(prevBest);
+                t2IsTable = false;
 
                 t1cost = stats.get(table1Name).estimateScanCost();
                 t1card = stats.get(table1Name).estimateTableCardinality(
@@ -356,14 +459,16 @@ public class JoinOptimizer {
         }
 
         // case where prevbest is left
-        double cost1 = estimateJoinCost(j, t1card, t2card, t1cost, t2cost);
+        double cost1 = estimateJoinCost(j, t1card, t2card, t1cost, t2cost, t2IsTable);
+        boolean indexJoin = t2IsTable && useIndexJoin(j, t1card, t2card, t1cost, t2cost);
 
         LogicalJoinNode j2 = j.swapInnerOuter();
-        double cost2 = estimateJoinCost(j2, t2card, t1card, t2cost, t1cost);
+        double cost2 = estimateJoinCost(j2, t2card, t1card, t2cost, t1cost, t1IsTable);
         if (cost2 < cost1) {
             boolean tmp;
             j = j2;
             cost1 = cost2;
+            indexJoin = t1IsTable && useIndexJoin(j2, t2card, t1card, t2cost, t1cost);
             tmp = rightPkey;
             rightPkey = leftPkey;
             leftPkey = tmp;
@@ -371,6 +476,13 @@ public class JoinOptimizer {
         if (cost1 >= bestCostSoFar)
             return null;
 
+        if (indexJoin) {
+            // j may be one of the joins being ordered; record the choice on a copy
+            LogicalJoinNode chosen = new LogicalJoinNode(j.t1Alias, j.t2Alias, j.f1PureName, j.f2PureName, j.p);
+            chosen.indexJoin = true;
+            j = chosen;
+        }
+
         CostCard cc = new CostCard();
 
         cc.card = estimateJoinCardinality(j, t1card, t2card, leftPkey,
@@ -71,6 +71,14 @@ public class LockManager {
         return lock.isHoldingLock(tid);
     }
 
+    /**
+     * @return true if some transaction holds an exclusive lock on the page
+     */
+    public boolean isExclusivelyLocked(PageId pageId) {
+        CustomLock lock = hash.get(pageId);
+        return lock != null && lock.isWriteLocked();
+    }
+
     public void releaseAllLocks(TransactionId tid) {
         Set<CustomLock> s = tid2Lock.get(tid);
         //There must be something insane going on if releaseAllLocks is invoked in more than one thread.
@@ -109,7 +117,7 @@ class CustomLock {
             long prev = cur;
             cur = System.currentTimeMillis();
             waitTime -= cur - prev;
-            timeOut = waitTime < 0;
+            timeOut = waitTime <= 0;
         }
         if (timeOut) {
             throw new TransactionAbortedException(tid.getId() + "");
@@ -194,6 +202,10 @@ class CustomLock {
 //        notifyAll();
 //    }
 
+    public synchronized boolean isWriteLocked() {
+        return writeCount > 0;
+    }
+
     public synchronized boolean isHoldingLock(TransactionId tid) {
         return holdingLock.contains(tid);
     }
@@ -265,7 +265,6 @@ public class LogFile {
             }
             pid = (PageId)idConsts[0].newInstance(idArgs);
 
-            Constructor<?>[] pageConsts = pageClass.getDeclaredConstructors();
             int pageSize = raf.readInt();
 
             byte[] pageData = new byte[pageSize];
@@ -275,7 +274,7 @@ public class LogFile {
             pageArgs[0] = pid;
             pageArgs[1] = pageData;
 
-            newPage = (Page)pageConsts[0].newInstance(pageArgs);
+            newPage = (Page)pageConstructor(pageClass).newInstance(pageArgs);
 
             //            Debug.log("READ PAGE OF TYPE " + pageClassName + ", table = " + newPage.getId().getTableId() + ", page = " + newPage.getId().pageno());
         } catch (ClassNotFoundException e){
@@ -295,6 +294,20 @@ public class LogFile {
 
     }
 
+    /** Find the Page(PageId id, byte[] data) constructor of a page class.
+        Pages may declare other constructors, so don't rely on declaration order.
+    */
+    private Constructor<?> pageConstructor(Class<?> pageClass) throws IOException {
+        for (Constructor<?> c : pageClass.getDeclaredConstructors()) {
+            Class<?>[] params = c.getParameterTypes();
+            if (params.length == 2 && PageId.class.isAssignableFrom(params[0])
+                    && params[1] == byte[].class) {
+                return c;
+            }
+        }
+        throw new IOException("no (PageId, byte[]) constructor in " + pageClass.getName());
+    }
+
     /** Write a BEGIN record for the specified transaction
         @param tid The transaction that is beginning
 
@@ -23,6 +23,10 @@ public class LogicalJoinNode {
     /** The join predicate */
     public Predicate.Op p;
 
+    /** True if the optimizer chose to join by looking up the t2 tuples that match each t1 tuple in
+     *  an index on f2 (see {@link IndexNestedLoopJoin}) */
+    public boolean indexJoin;
+
     public LogicalJoinNode() {
     }
 
@@ -6,6 +6,8 @@ import java.util.Iterator;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.HashSet;
 
 /**
  * LogicalPlan represents a logical query plan that has been through
@@ -271,6 +273,96 @@ public class LogicalPlan {
         throw new ParsingException("Unknown predicate " + s);
     }
 
+    /** Collects the qualified names (alias.field) of all the fields the plan uses: in the
+     *  select list, filters, joins, aggregate, GROUP BY and ORDER BY.
+     *  @return the names, or null if the plan uses every field (SELECT *)
+     */
+    private Set<String> requiredFieldNames() {
+        Set<String> names = new HashSet<String>();
+        for (LogicalSelectListNode si : selectList) {
+            if (si.fname.endsWith(".*"))
+                return null;
+            names.add(si.fname);
+        }
+        for (LogicalFilterNode lf : filters)
+            names.add(lf.fieldQuantifiedName);
+        for (LogicalJoinNode lj : joins) {
+            names.add(lj.f1QuantifiedName);
+            names.add(lj.f2QuantifiedName);
+        }
+        if (hasAgg) {
+            names.add(aggField);
+            if (groupByField != null)
+                names.add(groupByField);
+        }
+        if (hasOrderBy)
+            names.add(oByField);
+        return names;
+    }
+
+    /** @return the indexes of the fields of a scan with the given alias and TupleDesc that
+     *  are among the required names, or null if all fields are required
+     */
+    private static Set<Integer> requiredFields(String alias, TupleDesc td, Set<String> required) {
+        if (required == null)
+            return null;
+        Set<Integer> fields = new HashSet<Integer>();
+        for (int i = 0; i < td.numFields(); i++) {
+            if (required.contains(td.getFieldName(i)))
+                fields.add(i);
+        }
+        return fields;
+    }
+
+    /** @return the constant of a filter on a field of the given type */
+    private static Field filterConstant(Type ftyp, String c) {
+        if (ftyp == Type.INT_TYPE)
+            return new IntField(new Integer(c).intValue());
+        else
+            return new StringField(c, Type.STRING_LEN);
+    }
+
+    /** Looks for a filter on the given table that an index of the table can evaluate more cheaply
+     *  than a scan of the whole table, according to {@link TableStats#estimateIndexScanCost}.
+     *  @param td the TupleDesc of a scan of the table
+     *  @param s the statistics of the table, or null if there are none
+     *  @return a scan of the index for the cheapest such filter, or null if there is none. The
+     *    filter still has to be applied on top of it
+     */
+    private IndexScan chooseIndexScan(TransactionId t, LogicalScanNode table, TupleDesc td, TableStats s) {
+        if (s == null)
+            return null;
+        IndexScan best = null;
+        double bestCost = s.estimateScanCost();
+        for (LogicalFilterNode lf : filters) {
+            if (!lf.tableAlias.equals(table.alias))
+                continue;
+            int field;
+            try {
+                field = td.fieldNameToIndex(lf.fieldQuantifiedName);
+            } catch (NoSuchElementException e) {
+                continue;
+            }
+            Field f;
+            try {
+                f = filterConstant(td.getFieldType(field), lf.c);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            double selectivity = s.estimateSelectivity(field, lf.p, f);
+            for (IndexFile index : Database.getCatalog().getIndexes(table.t)) {
+                if (index.getKeyField() != field || !index.supports(lf.p))
+                    continue;
+                double cost = s.estimateIndexScanCost(index, selectivity);
+                if (cost < bestCost) {
+                    best = new IndexScan(t, index, new IndexPredicate(lf.p, f), table.alias);
+                    bestCost = cost;
+                }
+            }
+        }
+        return best;
+    }
+
     /** Convert this LogicalPlan into a physicalPlan represented by a {@link DbIterator}.  Attempts to
      *   find the optimal plan by using {@link JoinOptimizer#orderJoins} to order the joins in the plan.
      *  @param t The transaction that the returned DbIterator will run as a part of
@@ -289,6 +381,7 @@ public class LogicalPlan {
         HashMap<String,String> equivMap = new HashMap<String,String>();
         HashMap<String,Double> filterSelectivities = new HashMap<String, Double>();
         HashMap<String,TableStats> statsMap = new HashMap<String,TableStats>();
+        Set<String> required = requiredFieldNames();
 
         while (tableIt.hasNext()) {
             LogicalScanNode table = tableIt.next();
@@ -299,8 +392,12 @@ public class LogicalPlan {
                 throw new ParsingException("Unknown table " + table.t);
             }
             
-            subplanMap.put(table.alias,ss);
             String baseTableName = Database.getCatalog().getTableName(table.t);
+            IndexScan is = chooseIndexScan(t, table, ss.getTupleDesc(), baseTableStats.get(baseTableName));
+            if (is != null)
+                ss = is;
+            ss.setRequiredFields(requiredFields(table.alias, ss.getTupleDesc(), required));
+            subplanMap.put(table.alias,ss);
             statsMap.put(baseTableName, baseTableStats.get(baseTableName));
             filterSelectivities.put(table.alias, 1.0);
 
@@ -323,10 +420,7 @@ public class LogicalPlan {
             } catch (java.util.NoSuchElementException e) {
                 throw new ParsingException("Unknown field in filter expression " + lf.fieldQuantifiedName);
             }
-            if (ftyp == Type.INT_TYPE)
-                f = new IntField(new Integer(lf.c).intValue());
-            else
-                f = new StringField(lf.c, Type.STRING_LEN);
+            f = filterConstant(ftyp, lf.c);
 
             Predicate p = null;
             try {
@@ -0,0 +1,51 @@
+package simpledb;
+
+/**
+ * LruPolicy evicts the page used least recently: every admission and every
+ * hit stamps the page with {@link System#nanoTime}. Hits write only their own
+ * page's entry, so concurrent hits don't contend, at the cost of an order
+ * that is only approximate: uses within the timer's resolution of each other
+ * may get equal stamps. Eviction scans every page for the oldest stamp, which
+ * makes it O(n); {@link ClockPolicy} is the cheaper default.
+ */
+public class LruPolicy implements ReplacementPolicy {
+    /**
+     * sentinel of the circular list of all entries
+     */
+    private final Entry entries = new Entry(null);
+    private int size;
+
+    public Entry admit(PageId pid) {
+        Entry e = new Entry(pid);
+        e.stamp = System.nanoTime();
+        e.linkBefore(entries);
+        size++;
+        return e;
+    }
+
+    public void hit(Entry e) {
+        e.stamp = System.nanoTime();
+    }
+
+    public void remove(Entry e) {
+        e.unlink();
+        size--;
+    }
+
+    public Entry evict(java.util.function.Predicate<PageId> evictable) {
+        Entry victim = null;
+        for (Entry e = entries.next; e != entries; e = e.next) {
+            if ((victim == null || e.stamp < victim.stamp) && evictable.test(e.pid)) {
+                victim = e;
+            }
+        }
+        if (victim != null) {
+            remove(victim);
+        }
+        return victim;
+    }
+
+    public int size() {
+        return size;
+    }
+}
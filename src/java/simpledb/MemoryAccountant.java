@@ -0,0 +1,168 @@
+package simpledb;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MemoryAccountant keeps track of the heap a {@link BufferPool}'s cached
+ * pages take up, and of the budget they must stay under. Each page is charged
+ * an estimate of its footprint when it enters the pool, re-estimated when it
+ * is written out or reloaded, and credited back when it leaves.
+ * <p>
+ * The estimate of a HeapPage counts its serialized bytes, its before image
+ * once it differs from them, and every used slot decoded into a Tuple of
+ * Fields, with strings at their maximum length: a page that is scanned
+ * once holds all of that. A page that is still a view of a {@link PageArena}
+ * frame keeps neither bytes nor tuples on the heap. Object sizes are those of
+ * a 64-bit JVM with compressed references. Other pages are charged
+ * {@link #OTHER_PAGE_FACTOR} times their page size.
+ * <p>
+ * A page modified in the pool grows without being re-estimated until it is
+ * written out, so the pool can run over its budget by what its dirty pages
+ * have grown.
+ */
+public class MemoryAccountant {
+    /**
+     * Multiple of its page size charged for a page that isn't a HeapPage.
+     */
+    static final int OTHER_PAGE_FACTOR = 3;
+
+    private static final int HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final int BUFFER = 48;
+    private static final int PAGE_OBJECT = 96;
+
+    private final long budget;
+    private final AtomicLong used = new AtomicLong();
+    private final AtomicLong peak = new AtomicLong();
+    private final AtomicInteger pages = new AtomicInteger();
+
+    /**
+     * @param budget the bytes the pages of the pool must stay under, or
+     *               Long.MAX_VALUE to only keep track of them
+     */
+    public MemoryAccountant(long budget) {
+        if (budget < 1) {
+            throw new IllegalArgumentException("bad budget " + budget);
+        }
+        this.budget = budget;
+    }
+
+    /**
+     * @return the bytes the pages of the pool must stay under
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return the estimated bytes the pages in the pool take up
+     */
+    public long getUsedBytes() {
+        return used.get();
+    }
+
+    /**
+     * @return the most bytes the pages in the pool took up at once
+     */
+    public long getPeakBytes() {
+        return peak.get();
+    }
+
+    /**
+     * @return the number of pages charged
+     */
+    public int getPages() {
+        return pages.get();
+    }
+
+    /**
+     * @return true if a page of the given footprint fits in the budget
+     * besides the pages charged
+     */
+    boolean fits(long bytes) {
+        return used.get() + bytes <= budget;
+    }
+
+    /**
+     * @return about how many pages fit in the budget, going by the average
+     * footprint of the pages charged, or by the page size while there are none
+     */
+    long pagesInBudget() {
+        int n = pages.get();
+        long average = n == 0 ? BufferPool.PAGE_SIZE : Math.max(1, used.get() / n);
+        return budget / average;
+    }
+
+    /**
+     * Charges a page that enters the pool.
+     */
+    void charge(long bytes) {
+        pages.incrementAndGet();
+        adjust(bytes);
+    }
+
+    /**
+     * Credits back a page that leaves the pool.
+     */
+    void credit(long bytes) {
+        pages.decrementAndGet();
+        adjust(-bytes);
+    }
+
+    /**
+     * Adds the change in footprint of a page still in the pool.
+     */
+    void adjust(long delta) {
+        long now = used.addAndGet(delta);
+        peak.accumulateAndGet(now, Math::max);
+    }
+
+    /**
+     * @return an estimate of the bytes of heap the given page takes up
+     */
+    public static long estimate(Page page) {
+        if (!(page instanceof HeapPage)) {
+            return (long) OTHER_PAGE_FACTOR * Database.getCatalog().getPageSize(page.getId().getTableId());
+        }
+        HeapPage hp = (HeapPage) page;
+        long bytes = PAGE_OBJECT + array(8L * hp.usedSlots.length) + BUFFER;
+        boolean view = hp.framed && hp.shared;
+        if (!view) {
+            bytes += array(hp.pageSize);
+            int used = hp.numSlots - hp.numEmptySlots;
+            bytes += array((long) REFERENCE * hp.numSlots) + used * tupleBytes(hp.td);
+        }
+        if (hp.oldData != null || (!hp.shared && !hp.framed && hp.oldDataBuffer != null)) {
+            bytes += array(hp.pageSize);
+        }
+        return bytes;
+    }
+
+    /**
+     * @return an estimate of the bytes of a Tuple of the given TupleDesc
+     * decoded from a page, with its Fields and RecordId
+     */
+    static long tupleBytes(TupleDesc td) {
+        // Tuple, its ArrayList and backing array, RecordId
+        long bytes = align(HEADER + 2 * REFERENCE) + align(HEADER + 2 * 4 + REFERENCE)
+                + array((long) REFERENCE * td.numFields()) + align(HEADER + REFERENCE + 4);
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.STRING_TYPE) {
+                // StringField, String, its bytes
+                bytes += align(HEADER + REFERENCE + 4) + align(HEADER + REFERENCE + 8) + array(Type.STRING_LEN);
+            } else {
+                bytes += align(HEADER + 4);
+            }
+        }
+        return bytes;
+    }
+
+    private static long array(long bytes) {
+        return align(HEADER + bytes);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
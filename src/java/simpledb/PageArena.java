@@ -0,0 +1,128 @@
+package simpledb;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PageArena is a fixed set of page frames outside of the Java heap, which a
+ * {@link BufferPool} reads HeapFile pages into instead of allocating a byte[]
+ * per page. The frames are carved out of a few direct ByteBuffer slabs that
+ * are allocated up front, so a large pool adds next to nothing for the
+ * garbage collector to trace or copy.
+ * <p>
+ * A page read into a frame decodes its fields straight out of the frame and
+ * doesn't keep the tuples it decodes (see {@link HeapPage#getField}), until
+ * it is first modified and copies itself to the heap. When the pool drops the
+ * page, it detaches the page from the frame and gives the frame back here.
+ * Free frames are handed out oldest first, so a frame that was just given
+ * back is reused as late as possible.
+ * <p>
+ * When every frame is taken, e.g. while many threads miss at once, pages are
+ * read onto the heap as usual; {@link #getExhausted} counts those reads.
+ */
+public class PageArena {
+    /**
+     * Most bytes per direct ByteBuffer slab.
+     */
+    static final int SLAB_SIZE = 64 * 1024 * 1024;
+
+    private final int frameSize;
+    private final int frames;
+    private final ArrayDeque<ByteBuffer> free;
+    private final LongAdder exhausted = new LongAdder();
+
+    /**
+     * Allocates an arena of frames of the given size.
+     *
+     * @param frames    the number of frames
+     * @param frameSize bytes per frame, the largest page size it can hold
+     */
+    public PageArena(int frames, int frameSize) {
+        if (frames < 1 || frameSize < 1 || frameSize > SLAB_SIZE) {
+            throw new IllegalArgumentException("bad arena of " + frames + " frames of " + frameSize + " bytes");
+        }
+        this.frameSize = frameSize;
+        this.frames = frames;
+        free = new ArrayDeque<>(frames);
+        int perSlab = SLAB_SIZE / frameSize;
+        for (int left = frames; left > 0; left -= perSlab) {
+            int n = Math.min(left, perSlab);
+            ByteBuffer slab = ByteBuffer.allocateDirect(n * frameSize);
+            for (int i = 0; i < n; i++) {
+                slab.limit((i + 1) * frameSize).position(i * frameSize);
+                free.add(slab.slice());
+            }
+        }
+    }
+
+    /**
+     * @return bytes per frame
+     */
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    /**
+     * @return the number of frames of this arena
+     */
+    public int getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return the bytes of direct memory this arena holds
+     */
+    public long getCapacity() {
+        return (long) frames * frameSize;
+    }
+
+    /**
+     * @return the number of frames that hold no page
+     */
+    public synchronized int getFreeFrames() {
+        return free.size();
+    }
+
+    /**
+     * @return the number of times a frame was asked for while none was free
+     */
+    public long getExhausted() {
+        return exhausted.sum();
+    }
+
+    /**
+     * Takes the free frame that was given back the longest ago.
+     *
+     * @return the frame, cleared, or null if every frame is taken
+     */
+    synchronized ByteBuffer allocate() {
+        ByteBuffer frame = free.poll();
+        if (frame == null) {
+            exhausted.increment();
+        }
+        return frame;
+    }
+
+    /**
+     * Gives back a frame that no page refers to anymore.
+     */
+    synchronized void release(ByteBuffer frame) {
+        frame.clear();
+        free.add(frame);
+    }
+
+    /**
+     * @return the milliseconds this JVM has spent in garbage collection, over
+     * all of its collectors, e.g. to compare pools with and without an arena
+     */
+    public static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+}
@@ -0,0 +1,225 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+/**
+ * PageChecksums holds a CRC32C checksum of every page of a HeapFile, so that
+ * pages that were torn or otherwise damaged on disk are detected when they are
+ * read back instead of being parsed as garbage.
+ * <p>
+ * The checksums live in a side file next to the table file (the table file
+ * name with ".crc" appended), two longs per page: the checksum of the page on
+ * disk, and the checksum of the data a write of the page is putting there.
+ * The low 32 bits of each hold a CRC32C and bit 32 is set if there is a
+ * checksum at all: pages that were never written through HeapFile.writePage,
+ * e.g. those of files built by HeapFileEncoder or fresh empty pages, have
+ * none and are not verified. A write records the new checksum as pending
+ * before it writes the page, and makes it the page's checksum after; a page
+ * matching either is accepted, so a write that was cut short by a crash
+ * leaves the page readable, whether it holds the old data or the new. The
+ * whole side file is cached in memory and written through on every update.
+ * <p>
+ * The side file always has an entry for every page of the table. One of
+ * another length was left over from another version of the table and is
+ * dropped when it is loaded.
+ *
+ * @see HeapFile#readCheckedPage
+ */
+public class PageChecksums {
+    private static final int ENTRY_SIZE = 16;
+    private static final long PRESENT = 1L << 32;
+
+    private final File file;
+    private FileChannel channel;
+    /**
+     * the checksum of each page, followed by its pending one
+     */
+    private long[] entries;
+
+    private final AtomicLong verifiedPages = new AtomicLong();
+    private final AtomicLong verifyNanos = new AtomicLong();
+
+    /**
+     * Creates the checksums stored in the given side file. Nothing is read
+     * until {@link #load} is called.
+     */
+    public PageChecksums(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the side file holding the checksums of the given table file
+     */
+    public static File sideFile(File tableFile) {
+        return new File(tableFile.getPath() + ".crc");
+    }
+
+    /**
+     * @return the CRC32C of the remaining bytes of the buffer, which is left
+     * unchanged
+     */
+    public static int checksum(ByteBuffer data) {
+        CRC32C crc = new CRC32C();
+        crc.update(data.duplicate());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Checks a page read from disk against its stored checksum.
+     *
+     * @param pageNo the number of the page
+     * @param data   the page's bytes, from position to limit
+     * @throws DbException if the page has a checksum and it doesn't match
+     */
+    public void verify(int pageNo, ByteBuffer data) throws DbException, IOException {
+        long start = System.nanoTime();
+        long entry;
+        long pending;
+        synchronized (this) {
+            entry = 2 * pageNo < entries.length ? entries[2 * pageNo] : 0;
+            pending = 2 * pageNo < entries.length ? entries[2 * pageNo + 1] : 0;
+        }
+        if (entry == 0 && pending == 0) {
+            return;
+        }
+        int actual = checksum(data);
+        verifyNanos.addAndGet(System.nanoTime() - start);
+        verifiedPages.incrementAndGet();
+        if ((entry == 0 || actual != (int) entry) && (pending == 0 || actual != (int) pending)) {
+            throw new DbException(String.format("checksum mismatch on page %d of %s: expected %08x, found %08x",
+                    pageNo, file, (int) (entry == 0 ? pending : entry), actual));
+        }
+    }
+
+    /**
+     * Records the checksum of the data a page is about to be overwritten
+     * with. Until {@link #endWrite} is called, the page is accepted with
+     * either its old data or the new.
+     */
+    public synchronized void beginWrite(int pageNo, byte[] data) throws IOException {
+        if (pageNo >= pages()) {
+            extend(pageNo + 1);
+        }
+        entries[2 * pageNo + 1] = PRESENT | (checksum(ByteBuffer.wrap(data)) & 0xffffffffL);
+        writeEntry(pageNo);
+    }
+
+    /**
+     * Makes the checksum recorded by {@link #beginWrite} the page's, once
+     * the page is on disk.
+     */
+    public synchronized void endWrite(int pageNo) throws IOException {
+        entries[2 * pageNo] = entries[2 * pageNo + 1];
+        entries[2 * pageNo + 1] = 0;
+        writeEntry(pageNo);
+    }
+
+    /**
+     * Adds pages without a checksum, after the table grew to the given
+     * number of pages.
+     */
+    public synchronized void extend(int pages) throws IOException {
+        if (pages > pages()) {
+            entries = Arrays.copyOf(entries, 2 * pages);
+            writeEntry(pages - 1);
+        }
+    }
+
+    /**
+     * Drops the checksums of the pages at and after the given page, after the
+     * table was truncated to that many pages.
+     */
+    public synchronized void truncate(int pages) throws IOException {
+        if (pages < pages()) {
+            entries = Arrays.copyOf(entries, 2 * pages);
+        }
+        getChannel().truncate((long) pages * ENTRY_SIZE);
+    }
+
+    /**
+     * @return the number of pages verified since this was loaded
+     */
+    public long getVerifiedPages() {
+        return verifiedPages.get();
+    }
+
+    /**
+     * @return the total time spent verifying pages, in nanoseconds
+     */
+    public long getVerifyNanos() {
+        return verifyNanos.get();
+    }
+
+    /**
+     * Closes the side file. It is reopened if a checksum is read or written
+     * again.
+     */
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+    }
+
+    /**
+     * Reads the checksums from the side file. If it is missing, or doesn't
+     * have an entry for every page of the table, it is replaced by one where
+     * no page has a checksum.
+     *
+     * @param pages the number of pages of the table
+     * @return false if the side file was missing or had the wrong length
+     */
+    public synchronized boolean load(int pages) throws IOException {
+        entries = new long[2 * pages];
+        FileChannel fc = getChannel();
+        if (fc.size() != (long) pages * ENTRY_SIZE) {
+            fc.truncate(0);
+            if (pages > 0) {
+                writeEntry(pages - 1);
+            }
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(pages * ENTRY_SIZE);
+        while (buffer.hasRemaining()) {
+            if (fc.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        buffer.asLongBuffer().get(entries);
+        return true;
+    }
+
+    private int pages() {
+        return entries.length / 2;
+    }
+
+    private void writeEntry(int pageNo) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(ENTRY_SIZE);
+        buffer.putLong(entries[2 * pageNo]).putLong(entries[2 * pageNo + 1]);
+        buffer.flip();
+        FileChannel fc = getChannel();
+        while (buffer.hasRemaining()) {
+            fc.write(buffer, (long) pageNo * ENTRY_SIZE + buffer.position());
+        }
+    }
+
+    private FileChannel getChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = new RandomAccessFile(file, "rw").getChannel();
+        }
+        return channel;
+    }
+}
@@ -0,0 +1,249 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ParallelSeqScan is a sequential scan that reads a HeapFile on several
+ * threads at once. It returns the same tuples as {@link SeqScan}, in no
+ * particular order.
+ * <p>
+ * The page range [0, numPages()) is split into morsels of
+ * {@link #MORSEL_PAGES} pages. Workers from a pool shared by all parallel
+ * scans take the next unread morsel until none is left, get its pages that
+ * the table's zone map doesn't rule out from the buffer pool as the scan's
+ * transaction, test the pushed down predicates
+ * against them and put the matching tuples of each page on a bounded queue.
+ * next() takes tuples off that queue, so the workers stall once they are
+ * {@link #QUEUE_PAGES} pages ahead of the consumer.
+ * <p>
+ * The workers lock pages like the calling thread would, and those locks are
+ * released when the transaction completes. close() waits for the workers to
+ * stop, so that no page is got for the transaction after the scan is closed.
+ * Tables that aren't HeapFiles are scanned on the calling thread.
+ */
+public class ParallelSeqScan extends SeqScan {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Number of consecutive pages a worker reads at a time.
+     */
+    static final int MORSEL_PAGES = 8;
+    /**
+     * Number of pages of tuples the queue holds before the workers wait.
+     */
+    static final int QUEUE_PAGES = 64;
+
+    private static final ExecutorService WORKERS = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "simpledb-scan-worker");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Put on the queue by each worker when it is done.
+     */
+    private static final List<Tuple> END = Collections.emptyList();
+
+    private final int parallelism;
+
+    private boolean parallel;
+    private BlockingQueue<List<Tuple>> queue;
+    private List<Future<?>> workers;
+    private volatile boolean cancelled;
+    private volatile Exception failure;
+    private Iterator<Tuple> batch;
+    private int running;
+
+    /**
+     * Creates a parallel scan over the specified table as a part of the
+     * specified transaction.
+     *
+     * @param tid         The transaction this scan is running as a part of.
+     * @param tableid     the table to scan.
+     * @param tableAlias  the alias of this table (see {@link SeqScan})
+     * @param parallelism the number of worker threads to read the table with
+     */
+    public ParallelSeqScan(TransactionId tid, int tableid, String tableAlias, int parallelism) {
+        super(tid, tableid, tableAlias);
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Creates a parallel scan with a worker per available processor.
+     */
+    public ParallelSeqScan(TransactionId tid, int tableid, String tableAlias) {
+        this(tid, tableid, tableAlias, Runtime.getRuntime().availableProcessors());
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        DbFile dbFile = Database.getCatalog().getDbFile(getTableId());
+        parallel = dbFile instanceof HeapFile;
+        if (!parallel) {
+            super.open();
+            return;
+        }
+        HeapFile heapFile = (HeapFile) dbFile;
+        boolean mapped = isMemoryMapped() || heapFile.isMemoryMapped();
+        int numPages = heapFile.numPages();
+        List<Predicate> predicates = new ArrayList<>(getPredicates());
+        AtomicInteger nextPage = new AtomicInteger();
+
+        queue = new ArrayBlockingQueue<>(QUEUE_PAGES + parallelism);
+        workers = new ArrayList<>();
+        cancelled = false;
+        failure = null;
+        batch = null;
+        running = Math.max(1, Math.min(parallelism, (numPages + MORSEL_PAGES - 1) / MORSEL_PAGES));
+        for (int i = 0; i < running; i++) {
+            workers.add(WORKERS.submit(() -> scan(heapFile, numPages, mapped, predicates, nextPage)));
+        }
+    }
+
+    /**
+     * Body of a worker: reads morsels until there are none left, the scan is
+     * closed or a page can't be got.
+     */
+    private void scan(HeapFile heapFile, int numPages, boolean mapped, List<Predicate> predicates,
+                      AtomicInteger nextPage) {
+        try {
+            int start;
+            while (!cancelled && (start = nextPage.getAndAdd(MORSEL_PAGES)) < numPages) {
+                int end = Math.min(start + MORSEL_PAGES, numPages);
+                for (int pageNo = start; pageNo < end && !cancelled; pageNo++) {
+                    if (!predicates.isEmpty() && !heapFile.mayMatch(pageNo, predicates)) {
+                        continue;
+                    }
+                    HeapPage page = (HeapPage) Database.getBufferPool().getPage(getTransactionId(),
+                            new HeapPageId(heapFile.getId(), pageNo), Permissions.READ_ONLY, mapped);
+                    List<Tuple> tuples = new ArrayList<>();
+                    Iterator<Tuple> it = page.iterator(predicates);
+                    while (it.hasNext()) {
+                        tuples.add(it.next());
+                    }
+                    if (!tuples.isEmpty()) {
+                        put(tuples);
+                    }
+                }
+            }
+        } catch (DbException | TransactionAbortedException | RuntimeException e) {
+            failure = e;
+            cancelled = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void put(List<Tuple> tuples) throws InterruptedException {
+        while (!queue.offer(tuples, 10, TimeUnit.MILLISECONDS)) {
+            if (cancelled && tuples != END) {
+                return;
+            }
+        }
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DbException {
+        if (!parallel) {
+            return super.hasNext();
+        }
+        while (batch == null || !batch.hasNext()) {
+            if (running == 0) {
+                rethrowFailure();
+                return false;
+            }
+            List<Tuple> tuples;
+            try {
+                tuples = queue.take();
+            } catch (InterruptedException e) {
+                throw new DbException("interrupted while waiting for scan workers");
+            }
+            if (tuples == END) {
+                running--;
+            } else {
+                batch = tuples.iterator();
+            }
+        }
+        return true;
+    }
+
+    private void rethrowFailure() throws TransactionAbortedException, DbException {
+        Exception e = failure;
+        if (e instanceof TransactionAbortedException) {
+            throw (TransactionAbortedException) e;
+        } else if (e instanceof DbException) {
+            throw (DbException) e;
+        } else if (e != null) {
+            throw (RuntimeException) e;
+        }
+    }
+
+    public Tuple next() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        if (!parallel) {
+            return super.next();
+        }
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return batch.next();
+    }
+
+    public void close() {
+        if (!parallel) {
+            super.close();
+            return;
+        }
+        if (workers == null) {
+            return;
+        }
+        cancelled = true;
+        for (Future<?> worker : workers) {
+            while (true) {
+                queue.clear();
+                try {
+                    worker.get(10, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    // a worker may be blocked on a full queue; drain it again
+                } catch (InterruptedException | ExecutionException e) {
+                    break;
+                }
+            }
+        }
+        workers = null;
+        queue = null;
+        batch = null;
+    }
+
+    public void rewind() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        close();
+        open();
+    }
+}
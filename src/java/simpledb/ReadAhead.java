@@ -0,0 +1,161 @@
+package simpledb;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ReadAhead prefetches pages of tables that are being read sequentially, so
+ * that a scan finds its next pages in the buffer pool instead of stalling on a
+ * read for each of them.
+ * <p>
+ * The buffer pool reports every page a transaction gets, except through a
+ * {@link BufferRing}: scans too large for the pool aren't read ahead. Once a table has
+ * been read at {@link #SEQUENTIAL_RUN} consecutive pages in a row, the next
+ * pages, up to the configured distance ahead of the last one read, are read
+ * on a small pool of background threads and installed in the buffer pool.
+ * Installing a page takes no locks: a transaction locks it as usual when it
+ * gets the page. A prefetched page is dropped rather than installed if the
+ * page may have changed on disk while it was being read (see
+ * {@link BufferPool#installPrefetched}).
+ * <p>
+ * Only tables with HeapPageIds (HeapFile and SlottedHeapFile) are read ahead.
+ *
+ * @see BufferPool#setReadAhead
+ */
+public class ReadAhead {
+    /**
+     * Number of consecutive pages read in a row that makes a table's access
+     * pattern sequential.
+     */
+    static final int SEQUENTIAL_RUN = 3;
+    private static final int THREADS = 2;
+
+    private final BufferPool pool;
+    private final int distance;
+    private final ExecutorService executor;
+    private final Map<Integer, Stream> streams = new ConcurrentHashMap<>();
+    private final Set<PageId> pending = ConcurrentHashMap.newKeySet();
+    private final Set<PageId> unused = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong prefetched = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * Where the last reads of a table were.
+     */
+    private static class Stream {
+        int lastPage = -1;
+        int run = 0;
+        /**
+         * the page after the last one prefetched
+         */
+        int next = 0;
+    }
+
+    /**
+     * @param pool     the buffer pool to install pages into
+     * @param distance how many pages ahead of the last page read to prefetch
+     */
+    public ReadAhead(BufferPool pool, int distance) {
+        this.pool = pool;
+        this.distance = distance;
+        this.executor = Executors.newFixedThreadPool(THREADS, r -> {
+            Thread t = new Thread(r, "simpledb-read-ahead");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Records that a transaction got the given page, and prefetches the
+     * pages after it if its table is being read sequentially.
+     */
+    public void accessed(PageId pid) {
+        if (unused.remove(pid)) {
+            hits.incrementAndGet();
+        }
+        if (!(pid instanceof HeapPageId)) {
+            return;
+        }
+        int tableId = pid.getTableId();
+        int pageNo = pid.pageNumber();
+        int from;
+        int to;
+        Stream stream = streams.computeIfAbsent(tableId, k -> new Stream());
+        synchronized (stream) {
+            if (pageNo == stream.lastPage) {
+                return;
+            }
+            stream.run = pageNo == stream.lastPage + 1 ? stream.run + 1 : 1;
+            stream.lastPage = pageNo;
+            if (stream.run < SEQUENTIAL_RUN) {
+                stream.next = pageNo + 1;
+                return;
+            }
+            from = Math.max(stream.next, pageNo + 1);
+            to = pageNo + distance;
+            stream.next = Math.max(stream.next, to + 1);
+        }
+        int numPages;
+        try {
+            numPages = Database.getCatalog().getDbFile(tableId).numPages();
+        } catch (RuntimeException e) {
+            return;
+        }
+        for (int i = from; i <= to && i < numPages; i++) {
+            HeapPageId next = new HeapPageId(tableId, i);
+            if (pending.add(next)) {
+                try {
+                    executor.execute(() -> fetch(next));
+                } catch (RejectedExecutionException e) {
+                    pending.remove(next);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void fetch(PageId pid) {
+        try {
+            long epoch = pool.writeEpoch();
+            if (pool.isCached(pid)) {
+                return;
+            }
+            Page page = Database.getCatalog().getDbFile(pid.getTableId()).readPage(pid);
+            if (page != null && pool.installPrefetched(page, epoch)) {
+                prefetched.incrementAndGet();
+                unused.add(pid);
+            }
+        } catch (RuntimeException e) {
+            //a prefetch is only a hint; the transaction reads the page itself
+        } finally {
+            pending.remove(pid);
+        }
+    }
+
+    /**
+     * @return the number of pages installed in the buffer pool ahead of use
+     */
+    public long getPrefetchedPages() {
+        return prefetched.get();
+    }
+
+    /**
+     * @return the number of prefetched pages that a transaction then got
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Stops the background threads. Prefetches already running finish.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
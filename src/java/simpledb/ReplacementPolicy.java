@@ -0,0 +1,104 @@
+package simpledb;
+
+/**
+ * ReplacementPolicy decides which page a full {@link BufferPool} evicts.
+ * <p>
+ * The policy keeps an {@link Entry} for every cached page. The pool stores
+ * it with the page, so that a hit is reported with {@link #hit} without any
+ * lookup. hit() is called concurrently by any number of threads without a
+ * lock, and must only set fields of the entry; it must not allocate or move
+ * the entry between lists. {@link #admit}, {@link #remove} and {@link #evict}
+ * are called by one thread at a time, under the pool's eviction lock, and may
+ * reorganize the policy's lists.
+ *
+ * @see BufferPool#BufferPool(int, ReplacementPolicy)
+ * @see Database#resetBufferPool(int, ReplacementPolicy)
+ */
+public interface ReplacementPolicy {
+
+    /**
+     * The policy's bookkeeping for one cached page. The fields are shared by
+     * the policies in this package, each using the ones it needs: links for
+     * intrusive lists, and the state hits update.
+     */
+    class Entry {
+        final PageId pid;
+        Entry prev;
+        Entry next;
+        /**
+         * set by hits, cleared by CLOCK sweeps
+         */
+        volatile boolean referenced;
+        /**
+         * time of the last use, for LRU
+         */
+        volatile long stamp;
+        /**
+         * the list the entry is on, for policies with several
+         */
+        int queue;
+
+        Entry(PageId pid) {
+            this.pid = pid;
+            prev = this;
+            next = this;
+        }
+
+        public PageId getPageId() {
+            return pid;
+        }
+
+        /**
+         * Links this entry into a circular list, right before the given entry.
+         */
+        void linkBefore(Entry e) {
+            prev = e.prev;
+            next = e;
+            e.prev.next = this;
+            e.prev = this;
+        }
+
+        /**
+         * Takes this entry out of its circular list.
+         */
+        void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = this;
+            next = this;
+        }
+    }
+
+    /**
+     * Starts tracking a page that was just added to the pool.
+     *
+     * @return the entry to pass to the other methods for this page
+     */
+    Entry admit(PageId pid);
+
+    /**
+     * Records a use of a cached page.
+     */
+    void hit(Entry e);
+
+    /**
+     * Stops tracking a page that left the pool other than through
+     * {@link #evict}, e.g. because it was discarded.
+     */
+    void remove(Entry e);
+
+    /**
+     * Picks a page to evict among those the pool lets go of, and stops
+     * tracking it.
+     *
+     * @param evictable tells whether a page may be evicted, e.g. because it
+     *                  is clean
+     * @return the entry of the page to evict, or null if no page may be
+     */
+    Entry evict(java.util.function.Predicate<PageId> evictable);
+
+    /**
+     * @return the number of pages tracked
+     */
+    int size();
+}
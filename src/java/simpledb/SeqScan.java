@@ -15,6 +15,9 @@ public class SeqScan implements DbIterator {
     private int tableId;
     private String tableAlias;
     private DbFileIterator iterator;
+    private boolean memoryMapped = false;
+    private List<Predicate> predicates = new ArrayList<>();
+    private Set<Integer> requiredFields;
     /**
      * Creates a sequential scan over the specified table as a part of the
      * specified transaction.
@@ -79,10 +82,70 @@ public class SeqScan implements DbIterator {
         this(tid, tableid, Database.getCatalog().getTableName(tableid));
     }
 
+    /**
+     * Makes this scan read pages through the table file's memory mapping, even
+     * if the table itself isn't set up that way. Takes effect on the next open().
+     *
+     * @see HeapFile#setMemoryMapped
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    /**
+     * Restricts this scan to tuples that satisfy p, which refers to fields by
+     * their index in this scan's TupleDesc. Rows are tested before any Tuple is
+     * built for them. Used by {@link Filter} to push its predicate down.
+     * Takes effect on the next open().
+     */
+    public void addPredicate(Predicate p) {
+        for (Predicate q : predicates) {
+            if (q == p) {
+                return;
+            }
+        }
+        predicates.add(p);
+    }
+
+    /**
+     * Tells the scan which fields its consumers use, by index in this scan's
+     * TupleDesc. Tables stored by column (see {@link ColumnFile}) then read
+     * only those columns and leave the other fields of the returned tuples
+     * null. Other tables ignore this. Takes effect on the next open().
+     *
+     * @param fields the fields to read, or null for all of them
+     */
+    public void setRequiredFields(Set<Integer> fields) {
+        this.requiredFields = fields;
+    }
+
+    TransactionId getTransactionId() {
+        return tid;
+    }
+
+    int getTableId() {
+        return tableId;
+    }
+
+    List<Predicate> getPredicates() {
+        return predicates;
+    }
+
+    boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
     public void open() throws DbException, TransactionAbortedException {
         // some code goes here
-        HeapFile heapFile = (HeapFile)Database.getCatalog().getDbFile(tableId);
-        iterator = heapFile.iterator(tid);
+        DbFile dbFile = Database.getCatalog().getDbFile(tableId);
+        if (dbFile instanceof HeapFile) {
+            HeapFile heapFile = (HeapFile) dbFile;
+            iterator = heapFile.iterator(tid, memoryMapped || heapFile.isMemoryMapped(), predicates);
+        } else if (dbFile instanceof ColumnFile) {
+            iterator = ((ColumnFile) dbFile).iterator(tid, requiredFields);
+        } else {
+            iterator = dbFile.iterator(tid);
+        }
         iterator.open();
     }
 
@@ -8,7 +8,7 @@ public class SimpleDb {
         // convert a file
         if(args[0].equals("convert")) {
         try {
-            if (args.length<3 || args.length>5){
+            if (args.length<3 || args.length>7){
                 System.err.println("Unexpected number of arguments to convert ");
                 return;
             }
@@ -40,12 +40,16 @@ public class SimpleDb {
                                 return;
                             }
                 }
-                if (args.length==5)
+                if (args.length>=5)
                     fieldSeparator=args[4].charAt(0);
             }
+            // an optional sixth argument is the page size, for tables declared with one in the schema
+            int pageSize = args.length >= 6 ? Integer.parseInt(args[5]) : BufferPool.PAGE_SIZE;
+            // and an optional seventh the index of the field to cluster the table on
+            int clusterField = args.length == 7 ? Integer.parseInt(args[6]) : -1;
 
             HeapFileEncoder.convert(sourceTxtFile,targetDatFile,
-                        BufferPool.PAGE_SIZE,numOfAttributes,ts,fieldSeparator);
+                        pageSize,numOfAttributes,ts,fieldSeparator,clusterField);
 
         } catch (IOException e) {
                 throw new RuntimeException(e);
@@ -53,7 +57,9 @@ public class SimpleDb {
         } else if (args[0].equals("print")) {
             File tableFile = new File(args[1]);
             int columns = Integer.parseInt(args[2]);
-            DbFile table = Utility.openHeapFile(columns, tableFile);
+            // an optional third argument is the page size the table was converted with
+            int pageSize = args.length > 3 ? Integer.parseInt(args[3]) : BufferPool.PAGE_SIZE;
+            DbFile table = Utility.openHeapFile(columns, tableFile, pageSize);
             TransactionId tid = new TransactionId();
             DbFileIterator it = table.iterator(tid);
             
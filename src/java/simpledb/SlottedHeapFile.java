@@ -0,0 +1,281 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * SlottedHeapFile is a DbFile that, like HeapFile, stores a collection of
+ * tuples in no particular order, but on SlottedHeapPages, which store strings
+ * with their actual length rather than padded to STRING_LEN. Tables whose
+ * strings are mostly short fit several times more rows per page this way.
+ * <p>
+ * Pages with room for one more tuple of any length are tracked in a
+ * FreeSpaceMap, like for HeapFile.
+ *
+ * @see SlottedHeapPage
+ * @see HeapFile
+ */
+public class SlottedHeapFile implements DbFile {
+    private static final long serialVersionUID = 1L;
+
+    private final File file;
+    private final TupleDesc tupleDesc;
+    private final int pageSize;
+    private transient FileChannel channel;
+    private transient FreeSpaceMap freeSpaceMap;
+
+    /**
+     * Constructs a slotted heap file backed by the specified file, with pages
+     * of {@link BufferPool#PAGE_SIZE} bytes.
+     */
+    public SlottedHeapFile(File f, TupleDesc td) {
+        this(f, td, BufferPool.PAGE_SIZE);
+    }
+
+    /**
+     * Constructs a slotted heap file backed by the specified file, with pages
+     * of the given size.
+     *
+     * @throws IllegalArgumentException if pageSize is larger than 64 KB, or too
+     *                                  small to hold a tuple of td
+     */
+    public SlottedHeapFile(File f, TupleDesc td, int pageSize) {
+        if (pageSize > 1 << 16 || pageSize < SlottedHeapPage.HEADER_SIZE
+                + SlottedHeapPage.SLOT_SIZE + SlottedHeapPage.maxRecordSize(td)) {
+            throw new IllegalArgumentException("unsupported page size " + pageSize);
+        }
+        file = f;
+        tupleDesc = td;
+        this.pageSize = pageSize;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getId() {
+        return file.getAbsolutePath().hashCode();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return tupleDesc;
+    }
+
+    @Override
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    private synchronized FileChannel getChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = new RandomAccessFile(file, "rw").getChannel();
+        }
+        return channel;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (freeSpaceMap != null) {
+            freeSpaceMap.close();
+            freeSpaceMap = null;
+        }
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+    }
+
+    /**
+     * Returns the number of pages in this file.
+     */
+    public int numPages() {
+        return (int) (file.length() / pageSize);
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        if (!(pid instanceof HeapPageId)) {
+            return null;
+        }
+        try {
+            long offset = (long) pid.pageNumber() * pageSize;
+            ByteBuffer buffer = ByteBuffer.allocate(pageSize);
+            FileChannel fc = getChannel();
+            //a short read past the end of file leaves the rest of the page zeroed
+            while (buffer.hasRemaining()) {
+                if (fc.read(buffer, offset + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            return new SlottedHeapPage((HeapPageId) pid, buffer.array());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        long offset = (long) page.getId().pageNumber() * pageSize;
+        ByteBuffer buffer = ByteBuffer.wrap(page.getPageData());
+        FileChannel fc = getChannel();
+        while (buffer.hasRemaining()) {
+            fc.write(buffer, offset + buffer.position());
+        }
+        if (page instanceof SlottedHeapPage) {
+            getFreeSpaceMap().persist(page.getId().pageNumber(), hasRoom((SlottedHeapPage) page));
+        }
+    }
+
+    /**
+     * @return true if the page has room for any tuple of this file
+     */
+    private boolean hasRoom(SlottedHeapPage page) {
+        return page.hasRoomFor(SlottedHeapPage.maxRecordSize(tupleDesc));
+    }
+
+    private synchronized FreeSpaceMap getFreeSpaceMap() throws IOException {
+        if (freeSpaceMap == null) {
+            FreeSpaceMap fsm = new FreeSpaceMap(FreeSpaceMap.sideFile(file));
+            int pages = numPages();
+            if (!fsm.load(pages)) {
+                BitSet hasFree = new BitSet(pages);
+                for (int i = 0; i < pages; i++) {
+                    hasFree.set(i, hasRoom((SlottedHeapPage) readPage(new HeapPageId(getId(), i))));
+                }
+                fsm.reset(hasFree, pages);
+            }
+            freeSpaceMap = fsm;
+        }
+        return freeSpaceMap;
+    }
+
+    /**
+     * Grows the file by one empty page, which the free space map marks full
+     * until the caller has inserted into it.
+     *
+     * @return the number of the new page
+     */
+    private synchronized int allocatePage() throws IOException {
+        FreeSpaceMap fsm = getFreeSpaceMap();
+        int pageNo = numPages();
+        getChannel().write(ByteBuffer.wrap(new byte[1]), (long) (pageNo + 1) * pageSize - 1);
+        fsm.setFree(pageNo, false);
+        return pageNo;
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        BufferPool bufferPool = Database.getBufferPool();
+        FreeSpaceMap fsm = getFreeSpaceMap();
+        int recordLength = SlottedHeapPage.encode(tupleDesc, t).length;
+        HeapPageId pageId = null;
+
+        int numPages = numPages();
+        for (int i = fsm.nextFreePage(0); i >= 0 && i < numPages; i = fsm.nextFreePage(i + 1)) {
+            HeapPageId pid = new HeapPageId(getId(), i);
+            boolean held = bufferPool.holdsLock(tid, pid);
+            SlottedHeapPage page = (SlottedHeapPage) bufferPool.getPage(tid, pid, Permissions.READ_ONLY);
+            if (page.hasRoomFor(recordLength)) {
+                pageId = pid;
+                break;
+            }
+            //stale hint. we only looked at this page, so don't keep it locked
+            fsm.setFree(i, false);
+            if (!held) {
+                bufferPool.releasePage(tid, pid);
+            }
+        }
+        if (pageId == null) {
+            pageId = new HeapPageId(getId(), allocatePage());
+        }
+        SlottedHeapPage page = (SlottedHeapPage) bufferPool.getPage(tid, pageId, Permissions.READ_WRITE);
+        page.markDirty(true, tid);
+        page.insertTuple(t);
+        fsm.setFree(pageId.pageNumber(), hasRoom(page));
+        ArrayList<Page> result = new ArrayList<>();
+        result.add(page);
+        return result;
+    }
+
+    // see DbFile.java for javadocs
+    public Page deleteTuple(TransactionId tid, Tuple t) throws DbException,
+            TransactionAbortedException {
+        BufferPool bufferPool = Database.getBufferPool();
+        SlottedHeapPage page = (SlottedHeapPage) bufferPool.getPage(tid, t.getRecordId().getPageId(), Permissions.READ_WRITE);
+        page.markDirty(true, tid);
+        page.deleteTuple(t);
+        try {
+            getFreeSpaceMap().setFree(page.getId().pageNumber(), hasRoom(page));
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new DbException("cannot load free space map of " + file);
+        }
+        return page;
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return new SlottedHeapFileIterator(this, tid);
+    }
+
+    static class SlottedHeapFileIterator implements DbFileIterator {
+        private final SlottedHeapFile file;
+        private final TransactionId tid;
+        private int pageIndex = 0;
+        private boolean opened = false;
+        private Iterator<Tuple> iterator;
+
+        SlottedHeapFileIterator(SlottedHeapFile file, TransactionId tid) {
+            this.file = file;
+            this.tid = tid;
+        }
+
+        @Override
+        public void open() throws DbException, TransactionAbortedException {
+            pageIndex = 0;
+            iterator = null;
+            opened = true;
+        }
+
+        @Override
+        public boolean hasNext() throws DbException, TransactionAbortedException {
+            if (!opened) {
+                return false;
+            }
+            while ((iterator == null || !iterator.hasNext()) && pageIndex < file.numPages()) {
+                PageId pid = new HeapPageId(file.getId(), pageIndex++);
+                SlottedHeapPage page = (SlottedHeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+                iterator = page.iterator();
+            }
+            return iterator != null && iterator.hasNext();
+        }
+
+        @Override
+        public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException("no more tuples");
+            }
+            return iterator.next();
+        }
+
+        @Override
+        public void rewind() throws DbException, TransactionAbortedException {
+            close();
+            open();
+        }
+
+        @Override
+        public void close() {
+            opened = false;
+        }
+    }
+}
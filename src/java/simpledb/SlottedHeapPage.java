@@ -0,0 +1,366 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * SlottedHeapPage stores the tuples of a SlottedHeapFile as variable-length
+ * records, so short strings take only as many bytes as they have instead of
+ * the STRING_LEN + 4 bytes they take on a HeapPage.
+ * <p>
+ * The format of a page is:
+ * <ul>
+ * <li>an int holding the number of entries in the slot directory,</li>
+ * <li>an int holding the offset of the start of the record area,</li>
+ * <li>the slot directory: for each slot, the unsigned short offset and the
+ * unsigned short length of its record. A length of 0 marks an empty slot,</li>
+ * <li>free space,</li>
+ * <li>the records, which grow down from the end of the page.</li>
+ * </ul>
+ * A record holds the fields of a tuple in order. A string is stored as an
+ * unsigned short byte count followed by its UTF-8 bytes; other types are
+ * stored as they are on a HeapPage. A page of zeros is a valid empty page.
+ * <p>
+ * Slots keep their number for as long as their tuple lives, so RecordIds stay
+ * valid when the page compacts its records to reclaim the space of deleted
+ * ones.
+ *
+ * @see SlottedHeapFile
+ */
+public class SlottedHeapPage implements Page {
+    static final int HEADER_SIZE = 8;
+    static final int SLOT_SIZE = 4;
+
+    final HeapPageId pid;
+    final TupleDesc td;
+    final int pageSize;
+    final byte[] data;
+    final ByteBuffer bb;
+    int numSlots;
+    /** offset of the lowest record; pageSize when there are no records */
+    int recordStart;
+    /** bytes taken by the records of used slots */
+    int liveBytes;
+
+    byte[] oldData;
+    TransactionId dirtier;
+
+    /**
+     * Create a page from a set of bytes of data read from disk. The bytes are
+     * copied, so the array may be reused by the caller.
+     */
+    public SlottedHeapPage(HeapPageId id, byte[] data) throws IOException {
+        this.pid = id;
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.pageSize = Database.getCatalog().getPageSize(id.getTableId());
+        if (pageSize > 1 << 16) {
+            throw new IOException("slotted pages can't be larger than 64 KB");
+        }
+        this.data = Arrays.copyOf(data, pageSize);
+        this.bb = ByteBuffer.wrap(this.data);
+        numSlots = bb.getInt(0);
+        recordStart = bb.getInt(4);
+        if (recordStart == 0) {
+            recordStart = pageSize;
+        }
+        if (numSlots < 0 || HEADER_SIZE + numSlots * SLOT_SIZE > recordStart || recordStart > pageSize) {
+            throw new IOException("corrupt slotted page " + id.pageNumber());
+        }
+        for (int i = 0; i < numSlots; i++) {
+            liveBytes += recordLength(i);
+        }
+        setBeforeImage();
+    }
+
+    /**
+     * @return the size in bytes of the largest record a tuple of td can take
+     */
+    public static int maxRecordSize(TupleDesc td) {
+        int size = 0;
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.STRING_TYPE) {
+                // a char takes at most 3 bytes in UTF-8
+                size += 2 + 3 * Type.STRING_LEN;
+            } else {
+                size += td.getFieldType(i).getLen();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Static method to generate a byte array corresponding to an empty page.
+     */
+    public static byte[] createEmptyPageData(int pageSize) {
+        return new byte[pageSize];
+    }
+
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    private int recordOffset(int slot) {
+        return bb.getShort(HEADER_SIZE + slot * SLOT_SIZE) & 0xffff;
+    }
+
+    private int recordLength(int slot) {
+        return bb.getShort(HEADER_SIZE + slot * SLOT_SIZE + 2) & 0xffff;
+    }
+
+    private void setSlot(int slot, int offset, int length) {
+        bb.putShort(HEADER_SIZE + slot * SLOT_SIZE, (short) offset);
+        bb.putShort(HEADER_SIZE + slot * SLOT_SIZE + 2, (short) length);
+    }
+
+    private void writeHeader() {
+        bb.putInt(0, numSlots);
+        bb.putInt(4, recordStart);
+    }
+
+    /**
+     * @return true if the given slot holds a tuple
+     */
+    public boolean isSlotUsed(int slot) {
+        return slot >= 0 && slot < numSlots && recordLength(slot) > 0;
+    }
+
+    /**
+     * @return the number of tuples on this page
+     */
+    public int getNumTuples() {
+        int count = 0;
+        for (int i = 0; i < numSlots; i++) {
+            if (recordLength(i) > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of free bytes on this page, counting the space of
+     * deleted records that compaction would reclaim
+     */
+    public int getFreeSpace() {
+        return pageSize - HEADER_SIZE - numSlots * SLOT_SIZE - liveBytes;
+    }
+
+    private int firstEmptySlot() {
+        for (int i = 0; i < numSlots; i++) {
+            if (recordLength(i) == 0) {
+                return i;
+            }
+        }
+        return numSlots;
+    }
+
+    /**
+     * @return true if a record of the given length can be inserted into this
+     * page
+     */
+    public boolean hasRoomFor(int recordLength) {
+        int slotCost = firstEmptySlot() < numSlots ? 0 : SLOT_SIZE;
+        return getFreeSpace() >= recordLength + slotCost;
+    }
+
+    /**
+     * Serializes a tuple into a record.
+     *
+     * @throws DbException if the tuple doesn't match this page's TupleDesc
+     */
+    static byte[] encode(TupleDesc td, Tuple t) throws DbException {
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("tuple desc not match: " + t);
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            for (int i = 0; i < td.numFields(); i++) {
+                Field f = t.getField(i);
+                if (td.getFieldType(i) == Type.STRING_TYPE) {
+                    byte[] bytes = ((StringField) f).getValue().getBytes(StandardCharsets.UTF_8);
+                    dos.writeShort(bytes.length);
+                    dos.write(bytes);
+                } else {
+                    f.serialize(dos);
+                }
+            }
+            dos.flush();
+        } catch (IOException e) {
+            // this really shouldn't happen
+            e.printStackTrace();
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Decodes the tuple in a used slot.
+     */
+    private Tuple decode(int slot) {
+        int offset = recordOffset(slot);
+        Tuple t = new Tuple(td);
+        t.setRecordId(new RecordId(pid, slot));
+        try {
+            for (int i = 0; i < td.numFields(); i++) {
+                Type type = td.getFieldType(i);
+                if (type == Type.STRING_TYPE) {
+                    int len = bb.getShort(offset) & 0xffff;
+                    String s = new String(data, offset + 2, len, StandardCharsets.UTF_8);
+                    t.setField(i, new StringField(s, Type.STRING_LEN));
+                    offset += 2 + len;
+                } else {
+                    t.setField(i, type.parse(bb, offset));
+                    offset += type.getLen();
+                }
+            }
+        } catch (java.text.ParseException e) {
+            e.printStackTrace();
+            throw new NoSuchElementException("parsing error!");
+        }
+        return t;
+    }
+
+    /**
+     * Moves all records to the end of the page, so the free space is one
+     * contiguous run again.
+     */
+    private void compact() {
+        byte[] records = new byte[liveBytes];
+        int[] offsets = new int[numSlots];
+        int pos = 0;
+        for (int i = 0; i < numSlots; i++) {
+            int len = recordLength(i);
+            if (len > 0) {
+                System.arraycopy(data, recordOffset(i), records, pos, len);
+                offsets[i] = pos;
+                pos += len;
+            }
+        }
+        recordStart = pageSize - liveBytes;
+        System.arraycopy(records, 0, data, recordStart, liveBytes);
+        Arrays.fill(data, HEADER_SIZE + numSlots * SLOT_SIZE, recordStart, (byte) 0);
+        for (int i = 0; i < numSlots; i++) {
+            if (recordLength(i) > 0) {
+                setSlot(i, recordStart + offsets[i], recordLength(i));
+            }
+        }
+        writeHeader();
+    }
+
+    /**
+     * Adds the specified tuple to the page;  the tuple should be updated to reflect
+     * that it is now stored on this page.
+     *
+     * @throws DbException if the page doesn't have room for the tuple or
+     *                     tupledesc is mismatch.
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        byte[] record = encode(td, t);
+        if (!hasRoomFor(record.length)) {
+            throw new DbException("tuple cannot be inserted");
+        }
+        int slot = firstEmptySlot();
+        int directoryEnd = HEADER_SIZE + Math.max(numSlots, slot + 1) * SLOT_SIZE;
+        if (recordStart - record.length < directoryEnd) {
+            compact();
+        }
+        if (slot == numSlots) {
+            numSlots++;
+        }
+        recordStart -= record.length;
+        System.arraycopy(record, 0, data, recordStart, record.length);
+        setSlot(slot, recordStart, record.length);
+        liveBytes += record.length;
+        writeHeader();
+        t.setRecordId(new RecordId(pid, slot));
+    }
+
+    /**
+     * Delete the specified tuple from the page;  the tuple should be updated to reflect
+     * that it is no longer stored on any page.
+     *
+     * @throws DbException if this tuple is not on this page, or tuple slot is
+     *                     already empty.
+     */
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId()) || !isSlotUsed(rid.tupleno())) {
+            throw new DbException("tuple not found:" + t);
+        }
+        int slot = rid.tupleno();
+        if (!Arrays.equals(encode(td, t), Arrays.copyOfRange(data, recordOffset(slot),
+                recordOffset(slot) + recordLength(slot)))) {
+            throw new DbException("tuple not match: param:" + t + " target:" + decode(slot));
+        }
+        int len = recordLength(slot);
+        if (recordOffset(slot) == recordStart) {
+            recordStart += len;
+        }
+        Arrays.fill(data, recordOffset(slot), recordOffset(slot) + len, (byte) 0);
+        setSlot(slot, 0, 0);
+        liveBytes -= len;
+        while (numSlots > 0 && recordLength(numSlots - 1) == 0) {
+            numSlots--;
+        }
+        if (liveBytes == 0) {
+            recordStart = pageSize;
+        }
+        writeHeader();
+        t.setRecordId(null);
+    }
+
+    public byte[] getPageData() {
+        return data.clone();
+    }
+
+    public SlottedHeapPage getBeforeImage() {
+        try {
+            return new SlottedHeapPage(pid, oldData);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        oldData = getPageData();
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtier = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtier;
+    }
+
+    /**
+     * @return an iterator over all tuples on this page (calling remove on this
+     * iterator throws an UnsupportedOperationException)
+     */
+    public Iterator<Tuple> iterator() {
+        return new Iterator<Tuple>() {
+            int slot = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (slot < numSlots && recordLength(slot) == 0) {
+                    slot++;
+                }
+                return slot < numSlots;
+            }
+
+            @Override
+            public Tuple next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return decode(slot++);
+            }
+        };
+    }
+}
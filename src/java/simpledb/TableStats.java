@@ -110,8 +110,7 @@ public class TableStats {
         Map<Integer, List<Integer>> tmpMinMax = new HashMap<>();
         Map<Integer, List<Integer>> tmpIntValue = new HashMap<>();
         TransactionId tid = new TransactionId();
-        HeapFile heapFile = (HeapFile) dbFile;
-        DbFileIterator dbFileIterator = heapFile.iterator(tid);
+        DbFileIterator dbFileIterator = dbFile.iterator(tid);
         try {
             dbFileIterator.open();
             while (dbFileIterator.hasNext()) {
@@ -174,8 +173,21 @@ public class TableStats {
     public double estimateScanCost() {
         // some code goes here
         DbFile dbFile = Database.getCatalog().getDbFile(tableId);
-        HeapFile heapFile = (HeapFile) dbFile;
-        return heapFile.numPages() * ioCostPerPage;
+        return dbFile.numPages() * ioCostPerPage;
+    }
+
+    /**
+     * Estimates the cost of reading the tuples that satisfy a predicate with
+     * the given selectivity through an index: the pages of the index read to
+     * find the first entry, plus one page per matching tuple, as the tuples
+     * of a key range are scattered over the table.
+     *
+     * @param index       an index of the table
+     * @param selectivity the selectivity of the predicate on the index's key
+     * @return The estimated cost of the index lookup.
+     */
+    public double estimateIndexScanCost(IndexFile index, double selectivity) {
+        return (index.estimateProbePages() + selectivity * totalTuples()) * ioCostPerPage;
     }
 
     /**
@@ -202,7 +214,22 @@ public class TableStats {
      */
     public double avgSelectivity(int field, Predicate.Op op) {
         // some code goes here
-        return 1.0;
+        Object histogram = hash.get(field);
+        if (histogram == null) {
+            return 1.0;
+        }
+        double equals = histogram instanceof IntHistogram ? ((IntHistogram) histogram).avgSelectivity()
+                : ((StringHistogram) histogram).avgSelectivity();
+        switch (op) {
+            case EQUALS:
+            case LIKE:
+                return equals;
+            case NOT_EQUALS:
+                return 1.0 - equals;
+            default:
+                // a range bounded by a random value of the field holds half of it
+                return 0.5;
+        }
     }
 
     /**
@@ -2,9 +2,9 @@ package simpledb;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -33,7 +33,11 @@ public class TransactionId implements Serializable {
         return (int) myid;
     }
 
-    private Set<PageId> pageIds = new HashSet<>();
+    /**
+     * Pages got by this transaction. Concurrent, since the workers of a
+     * {@link ParallelSeqScan} get pages for the same transaction.
+     */
+    private volatile Set<PageId> pageIds = ConcurrentHashMap.newKeySet();
 
     public void addPageId(PageId pageId) {
         pageIds.add(pageId);
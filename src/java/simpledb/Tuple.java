@@ -65,11 +65,10 @@ public class Tuple implements Serializable {
      */
     public void setField(int i, Field f) {
         // some code goes here
-        if (list.size() == i) {
-            list.add(f);
-        } else {
-            list.set(i, f);
+        while (list.size() <= i) {
+            list.add(null);
         }
+        list.set(i, f);
     }
 
     /**
@@ -78,7 +77,7 @@ public class Tuple implements Serializable {
      */
     public Field getField(int i) {
         // some code goes here
-        return list.get(i);
+        return i < list.size() ? list.get(i) : null;
     }
 
     /**
@@ -96,7 +95,7 @@ public class Tuple implements Serializable {
         Iterator<Field> iterator = fields();
         while (iterator.hasNext()) {
             Field f = iterator.next();
-            builder.append(f.toString()).append(" ");
+            builder.append(String.valueOf(f)).append(" ");
         }
         if (builder.length() > 1) {
             builder.setCharAt(builder.length() - 1, '\n');
@@ -8,6 +8,7 @@ import java.util.*;
  */
 public class TupleDesc implements Serializable {
     private ArrayList<TDItem> arrayList = new ArrayList<>();
+    private transient int[] fieldOffsets;
 
     /**
      * A help class to facilitate organizing the information of each field
@@ -154,6 +155,30 @@ public class TupleDesc implements Serializable {
         return result;
     }
 
+    /**
+     * Gets the byte offset of the ith field within a serialized tuple of this
+     * TupleDesc. Fields are laid out back to back in field order, so this is
+     * the sum of the sizes of the fields before it.
+     *
+     * @param i The index of the field. It must be a valid index.
+     * @return the offset of the ith field from the start of the tuple
+     * @throws NoSuchElementException if i is not a valid field reference.
+     */
+    public int getFieldOffset(int i) throws NoSuchElementException {
+        if (i >= numFields()) {
+            throw new NoSuchElementException("requesting index " + i);
+        }
+        int[] offsets = fieldOffsets;
+        if (offsets == null) {
+            offsets = new int[numFields()];
+            for (int j = 1; j < offsets.length; j++) {
+                offsets[j] = offsets[j - 1] + arrayList.get(j - 1).fieldType.getLen();
+            }
+            fieldOffsets = offsets;
+        }
+        return offsets[i];
+    }
+
     /**
      * Merge two TupleDescs into one, with td1.numFields + td2.numFields fields,
      * with the first td1.numFields coming from td1 and the remaining from td2.
@@ -0,0 +1,94 @@
+package simpledb;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * TwoQueuePolicy is the 2Q policy of Johnson and Shasha, which keeps pages
+ * that are read only once, e.g. by a large sequential scan, from pushing the
+ * frequently used ones out of the pool.
+ * <p>
+ * A page read for the first time goes on a FIFO queue, A1in, where hits
+ * don't count: references that follow each other closely are likely part of
+ * the same scan or transaction. Pages leave A1in in order, and their ids are
+ * remembered on a ghost queue, A1out, holding no pages. A page read again
+ * while its id is on A1out has proven it is reused, and goes to the main
+ * queue Am, which is managed by CLOCK. The pool evicts from A1in while it
+ * holds more than a quarter of the pages, and from Am otherwise; A1out
+ * remembers as many ids as half the pages.
+ */
+public class TwoQueuePolicy implements ReplacementPolicy {
+    private static final int A1IN = 1;
+    private static final int AM = 2;
+
+    /**
+     * sentinel of the A1in FIFO, oldest page first
+     */
+    private final Entry a1in = new Entry(null);
+    private int a1inSize;
+    private final LinkedHashSet<PageId> a1out = new LinkedHashSet<>();
+    private final ClockPolicy am = new ClockPolicy();
+
+    public Entry admit(PageId pid) {
+        Entry e = new Entry(pid);
+        if (a1out.remove(pid)) {
+            e.queue = AM;
+            am.add(e);
+        } else {
+            e.queue = A1IN;
+            e.linkBefore(a1in);
+            a1inSize++;
+        }
+        return e;
+    }
+
+    public void hit(Entry e) {
+        if (e.queue == AM) {
+            am.hit(e);
+        }
+    }
+
+    public void remove(Entry e) {
+        if (e.queue == AM) {
+            am.remove(e);
+        } else {
+            e.unlink();
+            a1inSize--;
+        }
+    }
+
+    public Entry evict(java.util.function.Predicate<PageId> evictable) {
+        Entry victim = null;
+        if (a1inSize > Math.max(1, size() / 4)) {
+            victim = evictA1in(evictable);
+        }
+        if (victim == null) {
+            victim = am.evict(evictable);
+        }
+        if (victim == null) {
+            victim = evictA1in(evictable);
+        }
+        return victim;
+    }
+
+    private Entry evictA1in(java.util.function.Predicate<PageId> evictable) {
+        for (Entry e = a1in.next; e != a1in; e = e.next) {
+            if (evictable.test(e.pid)) {
+                remove(e);
+                a1out.add(e.pid);
+                int ghosts = Math.max(1, (size() + 1) / 2);
+                Iterator<PageId> oldest = a1out.iterator();
+                while (a1out.size() > ghosts) {
+                    oldest.next();
+                    oldest.remove();
+                }
+                return e;
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return a1inSize + am.size();
+    }
+}
@@ -2,6 +2,7 @@ package simpledb;
 
 import java.text.ParseException;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Class representing a type in SimpleDB.
@@ -24,6 +25,15 @@ public enum Type implements Serializable {
             }
         }
 
+        @Override
+        public Field parse(ByteBuffer bb, int offset) throws ParseException {
+            try {
+                return new IntField(bb.getInt(offset));
+            } catch (IndexOutOfBoundsException e) {
+                throw new ParseException("couldn't parse", offset);
+            }
+        }
+
     }, STRING_TYPE() {
         @Override
         public int getLen() {
@@ -42,6 +52,23 @@ public enum Type implements Serializable {
                 throw new ParseException("couldn't parse", 0);
             }
         }
+
+        @Override
+        public Field parse(ByteBuffer bb, int offset) throws ParseException {
+            try {
+                int strLen = bb.getInt(offset);
+                if (strLen < 0 || strLen > STRING_LEN) {
+                    throw new ParseException("bad string length " + strLen, offset);
+                }
+                byte bs[] = new byte[strLen];
+                for (int i = 0; i < strLen; i++) {
+                    bs[i] = bb.get(offset + 4 + i);
+                }
+                return new StringField(new String(bs), STRING_LEN);
+            } catch (IndexOutOfBoundsException e) {
+                throw new ParseException("couldn't parse", offset);
+            }
+        }
     };
     
     public static final int STRING_LEN = 128;
@@ -60,4 +87,15 @@ public enum Type implements Serializable {
    */
     public abstract Field parse(DataInputStream dis) throws ParseException;
 
+  /**
+   * @return a Field object of the same type as this object that has contents
+   *   read from the specified buffer at an absolute offset. The buffer's
+   *   position is neither used nor changed, so threads can share a buffer.
+   * @param bb The buffer to read from
+   * @param offset The index of the field's first byte in bb
+   * @throws ParseException if the data in the buffer is not of the
+   *   appropriate type.
+   */
+    public abstract Field parse(ByteBuffer bb, int offset) throws ParseException;
+
 }
@@ -137,6 +137,20 @@ public class Utility {
         return hf;
     }
     
+    /** Opens a HeapFile with pages of the given size and adds it to the catalog.
+     *
+     * @param cols number of columns in the table.
+     * @param f location of the file storing the table.
+     * @param pageSize bytes per page of the file.
+     * @return the opened table.
+     */
+    public static HeapFile openHeapFile(int cols, File f, int pageSize) {
+        TupleDesc td = getTupleDesc(cols);
+        HeapFile hf = new HeapFile(f, td, pageSize);
+        Database.getCatalog().addTable(hf, UUID.randomUUID().toString());
+        return hf;
+    }
+
     public static HeapFile openHeapFile(int cols, String colPrefix, File f) {
         // create the HeapFile and add it to the catalog
     	TupleDesc td = getTupleDesc(cols, colPrefix);
@@ -0,0 +1,52 @@
+package simpledb;
+
+/**
+ * VacuumReport describes what a run of {@link HeapFile#vacuum} did to a
+ * table.
+ */
+public class VacuumReport {
+    private final int pagesBefore;
+    private final int pagesAfter;
+    private final int tuplesMoved;
+    private final long bytesReclaimed;
+
+    public VacuumReport(int pagesBefore, int pagesAfter, int tuplesMoved, long bytesReclaimed) {
+        this.pagesBefore = pagesBefore;
+        this.pagesAfter = pagesAfter;
+        this.tuplesMoved = tuplesMoved;
+        this.bytesReclaimed = bytesReclaimed;
+    }
+
+    /**
+     * @return the number of pages of the table before the vacuum
+     */
+    public int getPagesBefore() {
+        return pagesBefore;
+    }
+
+    /**
+     * @return the number of pages of the table after the vacuum
+     */
+    public int getPagesAfter() {
+        return pagesAfter;
+    }
+
+    /**
+     * @return the number of tuples moved to another page
+     */
+    public int getTuplesMoved() {
+        return tuplesMoved;
+    }
+
+    /**
+     * @return the number of bytes the table file shrank by
+     */
+    public long getBytesReclaimed() {
+        return bytesReclaimed;
+    }
+
+    public String toString() {
+        return "vacuum: " + pagesBefore + " -> " + pagesAfter + " pages, " + tuplesMoved
+                + " tuples moved, " + bytesReclaimed + " bytes reclaimed";
+    }
+}
@@ -0,0 +1,380 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ZoneMap holds the smallest and largest value of every INT_TYPE column on
+ * each page of a HeapFile, so that scans can skip the pages that can't hold a
+ * tuple satisfying their predicates without getting them from the buffer
+ * pool. Every HeapFile keeps one; it pays off on tables whose rows are more
+ * or less ordered by the filtered column, e.g. clustered ones (see
+ * {@link HeapFile#setClusterField}) or ones keyed by an increasing id.
+ * <p>
+ * The map lives in a side file next to the table file (the table file name
+ * with ".zone" appended). The side file starts with an int holding the number
+ * of INT_TYPE columns k and an int holding the number of pages of the table
+ * the map covers, followed by one entry per page: an int with flags and
+ * the minimum and maximum of each of the k columns, in field order. A page
+ * whose PRESENT flag is clear has no summary, and is never skipped; an empty
+ * page has minima above their maxima. Heap pages can't store null fields, so
+ * there is nothing else to record. The whole side file is cached in memory.
+ * <p>
+ * HeapFileEncoder writes the side file along with the table. After that, a
+ * page's summary is recomputed from the page whenever {@link HeapFile#writePage}
+ * writes it, before the page itself goes to disk, so the side file never
+ * misses a value that is on disk. In between, tuples inserted into the page
+ * in the buffer pool widen its summary in memory (see
+ * {@link HeapFile#insertTuple}), and deletes leave it as it is. Summaries may
+ * therefore cover values no longer on the page, e.g. after an insert that was
+ * rolled back, but never miss one. The page count in the header is raised
+ * after the entries of new pages are written and cut along with the table, so
+ * a side file whose count doesn't match the table's was left over from
+ * another table, or by a crash, and is not trusted. A table whose side file
+ * is missing or not trusted starts without summaries, and its pages get
+ * theirs as they are written.
+ *
+ * @see HeapFile#mayMatch
+ */
+public class ZoneMap {
+    private static final int HEADER_SIZE = 8;
+    private static final int PRESENT = 1;
+
+    private final File file;
+    /**
+     * the position of each field among the INT_TYPE columns, or -1
+     */
+    private final int[] positions;
+    private final int columns;
+    private FileChannel channel;
+    private int[][] entries = new int[0][];
+    /**
+     * the number of pages of the table the map covers, as in the header
+     */
+    private int pages;
+
+    private final AtomicLong skippedPages = new AtomicLong();
+
+    /**
+     * Creates a zone map stored in the given side file, for a table with the
+     * given field types. Nothing is read until {@link #load} is called.
+     */
+    public ZoneMap(File file, Type[] types) {
+        this.file = file;
+        positions = new int[types.length];
+        int k = 0;
+        for (int i = 0; i < types.length; i++) {
+            positions[i] = types[i] == Type.INT_TYPE ? k++ : -1;
+        }
+        columns = k;
+    }
+
+    /**
+     * @return the side file holding the zone map of the given table file
+     */
+    public static File sideFile(File tableFile) {
+        return new File(tableFile.getPath() + ".zone");
+    }
+
+    /**
+     * @return the types of the fields of a TupleDesc
+     */
+    static Type[] types(TupleDesc td) {
+        Type[] types = new Type[td.numFields()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = td.getFieldType(i);
+        }
+        return types;
+    }
+
+    /**
+     * @return the summary of a page without tuples
+     */
+    int[] emptySummary() {
+        int[] summary = new int[1 + 2 * columns];
+        summary[0] = PRESENT;
+        for (int i = 0; i < columns; i++) {
+            summary[1 + 2 * i] = Integer.MAX_VALUE;
+            summary[2 + 2 * i] = Integer.MIN_VALUE;
+        }
+        return summary;
+    }
+
+    /**
+     * Widens a summary to cover the given value of a field.
+     *
+     * @param field the index of the field in the table's TupleDesc; fields that
+     *              aren't INT_TYPE are ignored
+     */
+    void include(int[] summary, int field, int value) {
+        int k = positions[field];
+        if (k < 0 || (summary[0] & PRESENT) == 0) {
+            return;
+        }
+        summary[1 + 2 * k] = Math.min(summary[1 + 2 * k], value);
+        summary[2 + 2 * k] = Math.max(summary[2 + 2 * k], value);
+    }
+
+    private void include(int[] summary, Tuple t) {
+        for (int i = 0; i < positions.length; i++) {
+            Field f = t.getField(i);
+            if (f instanceof IntField) {
+                include(summary, i, ((IntField) f).getValue());
+            }
+        }
+    }
+
+    /**
+     * @return the summary of a page holding the given tuples
+     */
+    int[] summarize(Iterator<Tuple> tuples) {
+        int[] summary = emptySummary();
+        while (tuples.hasNext()) {
+            include(summary, tuples.next());
+        }
+        return summary;
+    }
+
+    /**
+     * Reads the map from its side file.
+     *
+     * @param pages the number of pages of the table
+     * @return false if the side file is missing, was written for a table
+     * with a different number of INT_TYPE columns or covers a different
+     * number of pages, in which case the caller should start the map over
+     * with {@link #reset}
+     */
+    public synchronized boolean load(int pages) throws IOException {
+        entries = new int[0][];
+        this.pages = 0;
+        if (!file.exists()) {
+            return false;
+        }
+        FileChannel fc = getChannel();
+        //entries missing from the end of the file read back as zeros, i.e. without a summary
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + pages * entrySize());
+        while (buffer.hasRemaining()) {
+            if (fc.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        if (buffer.position() < HEADER_SIZE) {
+            return false;
+        }
+        buffer.clear();
+        if (buffer.getInt() != columns || buffer.getInt() != pages) {
+            return false;
+        }
+        IntBuffer ints = buffer.asIntBuffer();
+        entries = new int[pages][];
+        for (int i = 0; i < pages; i++) {
+            entries[i] = new int[1 + 2 * columns];
+            ints.get(entries[i]);
+        }
+        this.pages = pages;
+        return true;
+    }
+
+    /**
+     * Replaces the whole map, on disk too.
+     *
+     * @param summaries the summary of every page of the table, in page order
+     */
+    public synchronized void reset(List<int[]> summaries) throws IOException {
+        entries = summaries.toArray(new int[0][]);
+        pages = entries.length;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + entries.length * entrySize());
+        buffer.putInt(columns);
+        buffer.putInt(pages);
+        for (int[] entry : entries) {
+            for (int v : entry) {
+                buffer.putInt(v);
+            }
+        }
+        buffer.flip();
+        FileChannel fc = getChannel();
+        fc.truncate(0);
+        while (buffer.hasRemaining()) {
+            fc.write(buffer, buffer.position());
+        }
+    }
+
+    /**
+     * Writes a summary built with {@link #summarize} to a new side file, for a
+     * table file that is being written outside of any HeapFile.
+     */
+    static void write(File tableFile, Type[] types, List<int[]> summaries) throws IOException {
+        ZoneMap map = new ZoneMap(sideFile(tableFile), types);
+        try {
+            map.reset(summaries);
+        } finally {
+            map.close();
+        }
+    }
+
+    /**
+     * Sets the summary of a page, on disk too.
+     */
+    public synchronized void set(int pageNo, int[] summary) throws IOException {
+        if (pageNo >= entries.length) {
+            int old = entries.length;
+            entries = Arrays.copyOf(entries, Math.max(pageNo + 1, old * 2));
+            for (int i = old; i < entries.length; i++) {
+                entries[i] = new int[1 + 2 * columns];
+            }
+        }
+        entries[pageNo] = summary.clone();
+        writeEntry(pageNo);
+        if (pageNo >= pages) {
+            pages = pageNo + 1;
+            writeHeader();
+        }
+    }
+
+    /**
+     * Widens the summary of a page to cover a tuple that was added to it. The
+     * change is only made in memory; the page's summary is written out with
+     * {@link #set} when the page itself is. Pages without a summary keep
+     * having none.
+     */
+    public synchronized void widen(int pageNo, Tuple t) {
+        if (pageNo >= entries.length || (entries[pageNo][0] & PRESENT) == 0) {
+            return;
+        }
+        int[] entry = entries[pageNo].clone();
+        include(entry, t);
+        entries[pageNo] = entry;
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+        buffer.putInt(columns);
+        buffer.putInt(pages);
+        buffer.flip();
+        FileChannel fc = getChannel();
+        while (buffer.hasRemaining()) {
+            fc.write(buffer, buffer.position());
+        }
+    }
+
+    private void writeEntry(int pageNo) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(entrySize());
+        for (int v : entries[pageNo]) {
+            buffer.putInt(v);
+        }
+        buffer.flip();
+        FileChannel fc = getChannel();
+        long offset = HEADER_SIZE + (long) pageNo * entrySize();
+        while (buffer.hasRemaining()) {
+            fc.write(buffer, offset + buffer.position());
+        }
+    }
+
+    /**
+     * @return false if the summary of the page shows that none of its tuples
+     * satisfies all of the predicates, e.g. because the page is empty
+     */
+    public boolean mayMatch(int pageNo, List<Predicate> predicates) {
+        int[] entry;
+        synchronized (this) {
+            if (pageNo >= entries.length || (entries[pageNo][0] & PRESENT) == 0) {
+                return true;
+            }
+            entry = entries[pageNo];
+        }
+        boolean empty = columns > 0 && entry[1] > entry[2];
+        boolean match = !empty;
+        for (int i = 0; match && i < predicates.size(); i++) {
+            Predicate p = predicates.get(i);
+            int field = p.getField();
+            if (field < 0 || field >= positions.length || positions[field] < 0
+                    || !(p.getOperand() instanceof IntField)) {
+                continue;
+            }
+            int k = positions[field];
+            match = overlaps(p.getOp(), ((IntField) p.getOperand()).getValue(), entry[1 + 2 * k], entry[2 + 2 * k]);
+        }
+        if (!match) {
+            skippedPages.incrementAndGet();
+        }
+        return match;
+    }
+
+    /**
+     * @return true if some value in [min, max] satisfies <code>value op c</code>
+     */
+    private static boolean overlaps(Predicate.Op op, int c, int min, int max) {
+        switch (op) {
+            case EQUALS:
+                return min <= c && c <= max;
+            case GREATER_THAN:
+                return max > c;
+            case GREATER_THAN_OR_EQ:
+                return max >= c;
+            case LESS_THAN:
+                return min < c;
+            case LESS_THAN_OR_EQ:
+                return min <= c;
+            case NOT_EQUALS:
+                return min != c || max != c;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Drops the summaries of the pages at and after the given page, after the
+     * table was truncated to that many pages.
+     */
+    public synchronized void truncate(int pages) throws IOException {
+        if (pages < this.pages) {
+            this.pages = pages;
+            writeHeader();
+        }
+        if (pages < entries.length) {
+            entries = Arrays.copyOf(entries, pages);
+            getChannel().truncate(HEADER_SIZE + (long) pages * entrySize());
+        }
+    }
+
+    /**
+     * @return the number of pages scans skipped since this was loaded
+     */
+    public long getSkippedPages() {
+        return skippedPages.get();
+    }
+
+    /**
+     * Closes the side file. It is reopened if the map is written again.
+     */
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+    }
+
+    private int entrySize() {
+        return 4 * (1 + 2 * columns);
+    }
+
+    private FileChannel getChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = new RandomAccessFile(file, "rw").getChannel();
+        }
+        return channel;
+    }
+}
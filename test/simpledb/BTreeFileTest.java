@@ -0,0 +1,190 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BTreeFileTest extends IndexFileTestBase<BTreeFile> {
+    private static final int ROWS = 3000;
+    /**
+     * small pages, so the tree has a few levels
+     */
+    private static final int INDEX_PAGE_SIZE = 128;
+
+    public BTreeFileTest() {
+        super(ROWS, ".btree");
+    }
+
+    @Override
+    protected BTreeFile createIndex(File f, int tableId) {
+        return new BTreeFile(f, tableId, 0, INDEX_PAGE_SIZE);
+    }
+
+    /**
+     * Equality and range lookups find exactly the matching tuples.
+     */
+    @Test
+    public void lookups() throws Exception {
+        assertTrue(index.estimateProbePages() > 2);
+        int key = tuples.get(17).get(0);
+        for (Predicate.Op op : Predicate.Op.values()) {
+            matchLookup(op, key);
+        }
+        matchLookup(Predicate.Op.EQUALS, -1);
+        matchLookup(Predicate.Op.GREATER_THAN, MAX_VALUE);
+        matchLookup(Predicate.Op.LESS_THAN, 0);
+    }
+
+    /**
+     * A full iteration returns the tuples in key order.
+     */
+    @Test
+    public void iteratorIsSorted() throws Exception {
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = index.iterator(tid);
+        it.open();
+        int count = 0;
+        int last = Integer.MIN_VALUE;
+        while (it.hasNext()) {
+            int key = ((IntField) it.next().getField(0)).getValue();
+            assertTrue(key >= last);
+            last = key;
+            count++;
+        }
+        it.close();
+        assertEquals(ROWS, count);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * An equality lookup reads a root-to-leaf path, not the whole index.
+     */
+    @Test
+    public void pointLookupReadsFewPages() throws Exception {
+        Database.resetBufferPool(500);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = index.indexIterator(tid, new IndexPredicate(Predicate.Op.EQUALS, new IntField(-5)));
+        it.open();
+        assertFalse(it.hasNext());
+        it.close();
+        int locked = 0;
+        for (int i = 0; i < index.numPages(); i++) {
+            if (Database.getBufferPool().holdsLock(tid, new BTreePageId(index.getId(), i)))
+                locked++;
+        }
+        assertTrue(locked <= index.estimateProbePages() + 1);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Inserts and deletes through the buffer pool keep the index up to date,
+     * and an abort rolls the index back with the table.
+     */
+    @Test
+    public void maintainedByBufferPool() throws Exception {
+        insertRows(200, 500);
+        matchLookup(Predicate.Op.EQUALS, 500);
+        matchLookup(Predicate.Op.GREATER_THAN_OR_EQ, 400);
+
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = index.indexIterator(tid, new IndexPredicate(Predicate.Op.LESS_THAN, new IntField(100)));
+        it.open();
+        ArrayList<Tuple> doomed = new ArrayList<Tuple>();
+        while (it.hasNext())
+            doomed.add(it.next());
+        it.close();
+        for (Tuple t : doomed)
+            Database.getBufferPool().deleteTuple(tid, t);
+        Database.getBufferPool().transactionComplete(tid, false);
+        matchLookup(Predicate.Op.LESS_THAN, 100);
+
+        // the aborted deletes cleared the RecordIds of the tuples; look them up again
+        tid = new TransactionId();
+        it = index.indexIterator(tid, new IndexPredicate(Predicate.Op.LESS_THAN, new IntField(100)));
+        it.open();
+        doomed.clear();
+        while (it.hasNext())
+            doomed.add(it.next());
+        it.close();
+        for (Tuple t : doomed)
+            Database.getBufferPool().deleteTuple(tid, t);
+        Database.getBufferPool().transactionComplete(tid);
+        tuples.removeIf(row -> row.get(0) < 100);
+        matchLookup(Predicate.Op.LESS_THAN, 150);
+        SystemTestUtil.matchTuples(index, tuples);
+    }
+
+    /**
+     * Vacuuming the table moves the entries of the tuples it moves.
+     */
+    @Test
+    public void vacuum() throws Exception {
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        ArrayList<Tuple> doomed = new ArrayList<Tuple>();
+        for (int i = 0; it.hasNext(); i++) {
+            Tuple t = it.next();
+            if (i < ROWS / 2)
+                doomed.add(t);
+        }
+        it.close();
+        for (Tuple t : doomed)
+            Database.getBufferPool().deleteTuple(tid, t);
+        Database.getBufferPool().transactionComplete(tid);
+        for (Tuple t : doomed)
+            tuples.remove(SystemTestUtil.tupleToList(t));
+
+        VacuumReport report = hf.vacuum();
+        assertTrue(report.getTuplesMoved() > 0);
+        SystemTestUtil.matchTuples(index, tuples);
+    }
+
+    /**
+     * The planner reads a selective filter's tuples through the index, and
+     * scans the table for one that matches most of it.
+     */
+    @Test
+    public void plannerChoosesIndex() throws Exception {
+        String name = Database.getCatalog().getTableName(hf.getId());
+        Map<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put(name, new TableStats(hf.getId(), 1000));
+
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(hf.getId(), "t");
+        lp.addFilter("t.c0", Predicate.Op.EQUALS, "42");
+        lp.addProjectField("t.c1", null);
+        TransactionId tid = new TransactionId();
+        DbIterator plan = lp.physicalPlan(tid, stats, false);
+        assertTrue(findScan(plan) instanceof IndexScan);
+        plan.open();
+        int count = 0;
+        while (plan.hasNext()) {
+            plan.next();
+            count++;
+        }
+        plan.close();
+        assertEquals(expected(Predicate.Op.EQUALS, 42).size(), count);
+
+        lp = new LogicalPlan();
+        lp.addScan(hf.getId(), "t");
+        lp.addFilter("t.c0", Predicate.Op.GREATER_THAN, "10");
+        lp.addProjectField("t.c1", null);
+        assertFalse(findScan(lp.physicalPlan(tid, stats, false)) instanceof IndexScan);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BTreeFileTest.class);
+    }
+}
@@ -0,0 +1,112 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Multi-threaded benchmark of the BufferPool lookup path. Each thread runs
+ * read-only transactions that get random pages of a single-int table, and the
+ * benchmark reports getPage calls per second, the pool's hit rate and the time
+ * spent in garbage collection, and the heap its pages take up, first on one
+ * thread and then on all of them.
+ * <p>
+ * usage: BufferPoolBenchmark [threads, default 32] [pool pages, default 1000]
+ * [table pages, default 800] [seconds per run, default 5] [lru|clock|2q, default clock]
+ * [heap|arena, default heap]
+ * <p>
+ * With a table smaller than the pool every call after the warm-up is a hit, so
+ * the numbers measure contention on the pool itself; make the table larger
+ * than the pool to include evictions.
+ */
+public class BufferPoolBenchmark {
+    /**
+     * pages each transaction gets before it completes
+     */
+    private static final int PAGES_PER_TRANSACTION = 100;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int poolPages = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int tablePages = args.length > 2 ? Integer.parseInt(args[2]) : 800;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        String policy = args.length > 4 ? args[4] : "clock";
+        boolean offHeap = args.length > 5 && args[5].equals("arena");
+
+        File f = File.createTempFile("poolbench", ".dat");
+        HeapFile.deleteOnExit(f);
+        HeapFileIoBenchmark.writeTable(f, tablePages);
+        HeapFile hf = Utility.openHeapFile(1, f);
+
+        for (int n : new int[]{1, threads}) {
+            BufferPool bp = Database.resetBufferPool(poolPages, policy(policy),
+                    offHeap ? BufferPool.newArena(poolPages) : null);
+            // warm up the pool and the JIT
+            run(bp, hf, n, 1);
+            long hits = bp.getHits();
+            long misses = bp.getMisses();
+            long gc = PageArena.gcMillis();
+            long calls = run(bp, hf, n, seconds);
+            long total = bp.getHits() - hits + bp.getMisses() - misses;
+            System.out.printf("%2d threads: %,12d getPage/s, hit rate %.3f, gc %,d ms%n", n, calls / seconds,
+                    (double) (bp.getHits() - hits) / Math.max(total, 1), PageArena.gcMillis() - gc);
+            System.out.printf("    pages: %,d cached, %,d KB of heap estimated, %,d KB at peak%n",
+                    bp.getAccountant().getPages(), bp.getAccountant().getUsedBytes() / 1024,
+                    bp.getAccountant().getPeakBytes() / 1024);
+            if (bp.getArena() != null) {
+                PageArena arena = bp.getArena();
+                System.out.printf("    arena: %,d frames of %,d bytes, %,d free, %,d reads found none free%n",
+                        arena.getFrames(), arena.getFrameSize(), arena.getFreeFrames(), arena.getExhausted());
+            }
+        }
+        hf.close();
+    }
+
+    private static ReplacementPolicy policy(String name) {
+        if (name.equals("lru"))
+            return new LruPolicy();
+        if (name.equals("2q"))
+            return new TwoQueuePolicy();
+        return new ClockPolicy();
+    }
+
+    /**
+     * Runs the workload on the given number of threads for a while.
+     *
+     * @return the number of getPage calls made
+     */
+    private static long run(final BufferPool bp, final HeapFile hf, int threads, int seconds)
+            throws InterruptedException {
+        final long deadline = System.nanoTime() + seconds * 1000000000L;
+        final AtomicLong calls = new AtomicLong();
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            workers.add(new Thread(() -> {
+                Random r = new Random(seed);
+                long count = 0;
+                try {
+                    while (System.nanoTime() < deadline) {
+                        TransactionId tid = new TransactionId();
+                        for (int i = 0; i < PAGES_PER_TRANSACTION; i++) {
+                            bp.getPage(tid, new HeapPageId(hf.getId(), r.nextInt(hf.numPages())),
+                                    Permissions.READ_ONLY);
+                        }
+                        bp.transactionComplete(tid);
+                        count += PAGES_PER_TRANSACTION;
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                calls.addAndGet(count);
+            }));
+        }
+        for (Thread t : workers)
+            t.start();
+        for (Thread t : workers)
+            t.join();
+        return calls.get();
+    }
+}
@@ -0,0 +1,388 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferPoolTest extends SimpleDbTestBase {
+    private static final int PAGES = 80;
+
+    private HeapFile hf;
+
+    @Before
+    public void setUp() throws Exception {
+        Database.reset();
+        int tuplesPerPage = BufferPool.PAGE_SIZE * 8 / (Type.INT_TYPE.getLen() * 8 + 1);
+        hf = SystemTestUtil.createRandomHeapFile(1, tuplesPerPage * PAGES, null, null);
+        assertEquals(PAGES, hf.numPages());
+    }
+
+    private HeapPageId pid(int pageNo) {
+        return new HeapPageId(hf.getId(), pageNo);
+    }
+
+    /**
+     * The first read of a page misses and later ones hit.
+     */
+    @Test
+    public void hitsAndMisses() throws Exception {
+        BufferPool bp = Database.resetBufferPool(PAGES);
+        TransactionId tid = new TransactionId();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < PAGES; i++)
+                bp.getPage(tid, pid(i), Permissions.READ_ONLY);
+        }
+        assertEquals(PAGES, bp.getMisses());
+        assertEquals(2 * PAGES, bp.getHits());
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * A full pool evicts the page that was used least recently.
+     */
+    @Test
+    public void evictsLeastRecentlyUsed() throws Exception {
+        BufferPool bp = Database.resetBufferPool(3, new LruPolicy());
+        TransactionId tid = new TransactionId();
+        bp.getPage(tid, pid(0), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(1), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(2), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(0), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(3), Permissions.READ_ONLY);
+        assertTrue(bp.isCached(pid(0)));
+        assertFalse(bp.isCached(pid(1)));
+        assertTrue(bp.isCached(pid(2)));
+        assertTrue(bp.isCached(pid(3)));
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * LRU tells apart pages that were all used since the last miss.
+     */
+    @Test
+    public void lruOrdersHitsBetweenMisses() throws Exception {
+        BufferPool bp = Database.resetBufferPool(3, new LruPolicy());
+        TransactionId tid = new TransactionId();
+        bp.getPage(tid, pid(0), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(1), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(2), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(1), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(0), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(3), Permissions.READ_ONLY);
+        assertFalse(bp.isCached(pid(2)));
+        bp.getPage(tid, pid(4), Permissions.READ_ONLY);
+        assertFalse(bp.isCached(pid(1)));
+        assertTrue(bp.isCached(pid(0)));
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * CLOCK passes over a page that was used since the hand last saw it.
+     */
+    @Test
+    public void clockGivesSecondChance() throws Exception {
+        BufferPool bp = Database.resetBufferPool(3, new ClockPolicy());
+        TransactionId tid = new TransactionId();
+        bp.getPage(tid, pid(0), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(1), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(2), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(0), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(3), Permissions.READ_ONLY);
+        assertTrue(bp.isCached(pid(0)));
+        assertFalse(bp.isCached(pid(1)));
+        bp.getPage(tid, pid(4), Permissions.READ_ONLY);
+        assertFalse(bp.isCached(pid(2)));
+        assertEquals(3, bp.getPolicy().size());
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * Reads hot pages a few times in between reads of other pages, then scans
+     * the rest of the table once.
+     *
+     * @return the number of hot pages still cached after the scan
+     */
+    private int hotPagesAfterScan(BufferPool bp) throws Exception {
+        TransactionId tid = new TransactionId();
+        int hot = 5;
+        int next = hot;
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < hot; i++)
+                bp.getPage(tid, pid(i), Permissions.READ_ONLY);
+            for (int i = 0; i < 10; i++)
+                bp.getPage(tid, pid(next++), Permissions.READ_ONLY);
+        }
+        while (next < PAGES)
+            bp.getPage(tid, pid(next++), Permissions.READ_ONLY);
+        bp.transactionComplete(tid);
+        int cached = 0;
+        for (int i = 0; i < hot; i++) {
+            if (bp.isCached(pid(i)))
+                cached++;
+        }
+        return cached;
+    }
+
+    /**
+     * A scan flushes the hot pages out of an LRU pool, but not out of a 2Q
+     * one.
+     */
+    @Test
+    public void twoQueueResistsScans() throws Exception {
+        assertEquals(0, hotPagesAfterScan(Database.resetBufferPool(20, new LruPolicy())));
+        assertEquals(5, hotPagesAfterScan(Database.resetBufferPool(20, new TwoQueuePolicy())));
+    }
+
+    /**
+     * A scan of a table larger than the pool reads through a ring, and leaves
+     * the pages other transactions use in the pool.
+     */
+    @Test
+    public void largeScanUsesRing() throws Exception {
+        BufferPool bp = Database.resetBufferPool(PAGES / 4);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 5; i++)
+            bp.getPage(tid, pid(i), Permissions.READ_ONLY);
+        long misses = bp.getMisses();
+
+        TransactionId scanner = new TransactionId();
+        DbFileIterator it = hf.iterator(scanner);
+        it.open();
+        int tuples = 0;
+        while (it.hasNext()) {
+            it.next();
+            tuples++;
+        }
+        assertEquals(PAGES * (BufferPool.PAGE_SIZE * 8 / (Type.INT_TYPE.getLen() * 8 + 1)), tuples);
+        // pages of the table that were already cached were hits
+        assertEquals(PAGES - 5, bp.getMisses() - misses);
+        int cached = 0;
+        for (int i = 5; i < PAGES; i++) {
+            if (bp.isCached(pid(i)))
+                cached++;
+        }
+        assertTrue(cached <= bp.newRing().size());
+        it.close();
+        for (int i = 0; i < 5; i++)
+            assertTrue(bp.isCached(pid(i)));
+        for (int i = 5; i < PAGES; i++)
+            assertFalse(bp.isCached(pid(i)));
+        bp.transactionComplete(scanner);
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * A page of a ring that another transaction gets stays in the pool when
+     * the ring is released.
+     */
+    @Test
+    public void ringPagePromotedOnSharedUse() throws Exception {
+        BufferPool bp = Database.resetBufferPool(PAGES / 4);
+        BufferRing ring = bp.newRing();
+        TransactionId scanner = new TransactionId();
+        for (int i = 0; i < ring.size(); i++)
+            bp.getPage(scanner, pid(i), Permissions.READ_ONLY, false, ring);
+        TransactionId other = new TransactionId();
+        bp.getPage(other, pid(0), Permissions.READ_ONLY);
+        // wraps around the ring
+        bp.getPage(scanner, pid(ring.size()), Permissions.READ_ONLY, false, ring);
+        assertTrue(bp.isCached(pid(0)));
+        assertTrue(bp.isCached(pid(ring.size())));
+        bp.releaseRing(ring);
+        assertTrue(bp.isCached(pid(0)));
+        for (int i = 1; i <= ring.size(); i++)
+            assertFalse(bp.isCached(pid(i)));
+        assertEquals(1, bp.getPolicy().size());
+        bp.transactionComplete(scanner);
+        bp.transactionComplete(other);
+    }
+
+    /**
+     * The tuples of a page, as read onto the heap.
+     */
+    private List<String> tuples(int pageNo) {
+        List<String> tuples = new ArrayList<String>();
+        Iterator<Tuple> it = ((HeapPage) hf.readPage(pid(pageNo))).iterator();
+        while (it.hasNext())
+            tuples.add(it.next().toString());
+        return tuples;
+    }
+
+    private List<String> tuples(HeapPage page) {
+        List<String> tuples = new ArrayList<String>();
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext())
+            tuples.add(it.next().toString());
+        return tuples;
+    }
+
+    /**
+     * Pages read into arena frames hold the same tuples as pages read onto
+     * the heap, and still do once they are evicted and their frames reused.
+     */
+    @Test
+    public void arenaFramesReused() throws Exception {
+        PageArena arena = BufferPool.newArena(PAGES / 4);
+        BufferPool bp = Database.resetBufferPool(PAGES / 4, new LruPolicy(), arena);
+        TransactionId tid = new TransactionId();
+        HeapPage first = (HeapPage) bp.getPage(tid, pid(0), Permissions.READ_ONLY);
+        assertTrue(first.framed);
+        for (int i = 1; i < PAGES; i++) {
+            HeapPage page = (HeapPage) bp.getPage(tid, pid(i), Permissions.READ_ONLY);
+            assertEquals(tuples(i), tuples(page));
+        }
+        assertFalse(bp.isCached(pid(0)));
+        assertFalse(first.framed);
+        assertEquals(tuples(0), tuples(first));
+        assertEquals(arena.getFrames() - PAGES / 4, arena.getFreeFrames());
+        assertEquals(0, arena.getExhausted());
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * A page modified in its arena frame copies itself onto the heap, and the
+     * change is written out and read back into a frame.
+     */
+    @Test
+    public void arenaPageModified() throws Exception {
+        BufferPool bp = Database.resetBufferPool(PAGES / 4, new LruPolicy(), BufferPool.newArena(PAGES / 4));
+        TransactionId tid = new TransactionId();
+        HeapPage page = (HeapPage) bp.getPage(tid, pid(0), Permissions.READ_WRITE);
+        Tuple t = page.iterator().next();
+        bp.deleteTuple(tid, t);
+        assertFalse(page.shared);
+        assertEquals(page.getNumEmptySlots() - 1, page.getBeforeImage().getNumEmptySlots());
+        bp.transactionComplete(tid);
+        bp.discardPage(pid(0));
+        assertFalse(page.framed);
+
+        tid = new TransactionId();
+        page = (HeapPage) bp.getPage(tid, pid(0), Permissions.READ_ONLY);
+        assertTrue(page.framed);
+        assertEquals(1, page.getNumEmptySlots());
+        assertEquals(tuples(0), tuples(page));
+        bp.transactionComplete(tid);
+    }
+
+    private int cachedPages(BufferPool bp) {
+        int cached = 0;
+        for (int i = 0; i < PAGES; i++) {
+            if (bp.isCached(pid(i)))
+                cached++;
+        }
+        return cached;
+    }
+
+    /**
+     * A pool with a byte budget evicts pages to stay under it, and credits
+     * back the pages it drops.
+     */
+    @Test
+    public void budgetBoundsFootprint() throws Exception {
+        long pageBytes = MemoryAccountant.estimate(hf.readPage(pid(0)));
+        assertTrue(pageBytes > 2 * BufferPool.PAGE_SIZE);
+        BufferPool bp = Database.resetBufferPool(Integer.MAX_VALUE, new LruPolicy(), 10 * pageBytes);
+        MemoryAccountant accountant = bp.getAccountant();
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < PAGES; i++)
+            bp.getPage(tid, pid(i), Permissions.READ_ONLY);
+        assertEquals(10, cachedPages(bp));
+        assertEquals(10, accountant.getPages());
+        assertEquals(10, bp.getNumPages());
+        assertEquals(10 * pageBytes, accountant.getUsedBytes());
+        assertEquals(10 * pageBytes, accountant.getPeakBytes());
+        bp.transactionComplete(tid);
+        for (int i = 0; i < PAGES; i++)
+            bp.discardPage(pid(i));
+        assertEquals(0, accountant.getPages());
+        assertEquals(0, accountant.getUsedBytes());
+    }
+
+    /**
+     * Pages that are views of arena frames are charged far less, so more of
+     * them fit in the same budget.
+     */
+    @Test
+    public void budgetFitsMoreArenaPages() throws Exception {
+        long pageBytes = MemoryAccountant.estimate(hf.readPage(pid(0)));
+        BufferPool bp = new BufferPool(Integer.MAX_VALUE, new LruPolicy(), BufferPool.newArena(PAGES),
+                10 * pageBytes);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < PAGES; i++)
+            bp.getPage(tid, pid(i), Permissions.READ_ONLY);
+        assertTrue(cachedPages(bp) > 20);
+        assertTrue(bp.getAccountant().getUsedBytes() <= 10 * pageBytes);
+        bp.transactionComplete(tid);
+    }
+
+    private void readConcurrently(int poolPages, ReplacementPolicy policy) throws Exception {
+        readConcurrently(poolPages, policy, null);
+    }
+
+    private void readConcurrently(int poolPages, ReplacementPolicy policy, PageArena arena) throws Exception {
+        final BufferPool bp = Database.resetBufferPool(poolPages, policy, arena);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            final long seed = t;
+            threads.add(new Thread(() -> {
+                Random r = new Random(seed);
+                try {
+                    for (int i = 0; i < 2000; i++) {
+                        TransactionId tid = new TransactionId();
+                        HeapPageId pid = pid(r.nextInt(PAGES));
+                        assertEquals(pid, bp.getPage(tid, pid, Permissions.READ_ONLY).getId());
+                        bp.transactionComplete(tid);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        for (Thread t : threads)
+            t.start();
+        for (Thread t : threads)
+            t.join();
+        if (failure.get() != null)
+            throw new AssertionError(failure.get());
+        assertEquals(8 * 2000, bp.getHits() + bp.getMisses());
+        int cached = cachedPages(bp);
+        assertTrue(cached <= poolPages);
+        assertEquals(cached, policy.size());
+        assertEquals(cached, bp.getAccountant().getPages());
+        if (arena != null)
+            assertEquals(arena.getFrames() - cached, arena.getFreeFrames());
+    }
+
+    /**
+     * Threads reading pages at once, with and without evictions, get the
+     * right pages and never overfill the pool, whatever the policy, and
+     * give back the arena frames of the pages they evict.
+     */
+    @Test
+    public void concurrentReads() throws Exception {
+        for (int poolPages : new int[]{PAGES, PAGES / 4}) {
+            readConcurrently(poolPages, new LruPolicy());
+            readConcurrently(poolPages, new ClockPolicy());
+            readConcurrently(poolPages, new TwoQueuePolicy());
+            readConcurrently(poolPages, new LruPolicy(), BufferPool.newArena(poolPages));
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolTest.class);
+    }
+}
@@ -0,0 +1,171 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class ColumnFileTest extends SimpleDbTestBase {
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[]{Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE},
+            new String[]{"id", "name", "score"});
+
+    /** Counts the pages read from disk, per column. */
+    private static class CountingColumnFile extends ColumnFile {
+        private static final long serialVersionUID = 1L;
+        final int[] reads = new int[TD.numFields()];
+
+        CountingColumnFile(File f) {
+            super(f, TD);
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            reads[((ColumnPageId) pid).getColumn()]++;
+            return super.readPage(pid);
+        }
+    }
+
+    private CountingColumnFile file;
+    private TransactionId tid;
+
+    @Before public void createFile() throws Exception {
+        File f = File.createTempFile("columnar", ".dat");
+        f.delete();
+        f.deleteOnExit();
+        for (int i = 0; i < TD.numFields(); i++)
+            new File(f.getPath() + "." + i).deleteOnExit();
+        FreeSpaceMap.sideFile(new File(f.getPath() + ".0")).deleteOnExit();
+        file = new CountingColumnFile(f);
+        Database.getCatalog().addTable(file, "columnar");
+        tid = new TransactionId();
+    }
+
+    private static Tuple tuple(int id) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(id));
+        t.setField(1, new StringField("name " + id, Type.STRING_LEN));
+        t.setField(2, new IntField(id * 10));
+        return t;
+    }
+
+    private List<Tuple> scan(TransactionId tid, Set<Integer> columns) throws Exception {
+        List<Tuple> result = new ArrayList<Tuple>();
+        DbFileIterator it = file.iterator(tid, columns);
+        it.open();
+        while (it.hasNext())
+            result.add(it.next());
+        it.close();
+        return result;
+    }
+
+    private void insert(int count) throws Exception {
+        for (int i = 0; i < count; ++i)
+            Database.getBufferPool().insertTuple(tid, file.getId(), tuple(i));
+        Database.getBufferPool().transactionComplete(tid);
+        tid = new TransactionId();
+    }
+
+    /**
+     * Inserted rows come back whole from a scan of all columns.
+     */
+    @Test public void insertAndScan() throws Exception {
+        insert(200);
+        int nameRows = file.rowsPerPage(1);
+        assertEquals(2 + (200 + nameRows - 1) / nameRows, file.numPages());
+
+        List<Tuple> tuples = scan(tid, null);
+        assertEquals(200, tuples.size());
+        for (int i = 0; i < 200; ++i) {
+            Tuple t = tuples.get(i);
+            assertEquals(new IntField(i), t.getField(0));
+            assertEquals("name " + i, ((StringField) t.getField(1)).getValue());
+            assertEquals(new IntField(i * 10), t.getField(2));
+        }
+    }
+
+    /**
+     * A scan of some columns reads only their pages and leaves the other
+     * fields null.
+     */
+    @Test public void scanReadsOnlyRequiredColumns() throws Exception {
+        insert(200);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        int[] before = file.reads.clone();
+
+        List<Tuple> tuples = scan(tid, Collections.singleton(2));
+        assertEquals(200, tuples.size());
+        for (int i = 0; i < 200; ++i) {
+            assertNull(tuples.get(i).getField(0));
+            assertNull(tuples.get(i).getField(1));
+            assertEquals(new IntField(i * 10), tuples.get(i).getField(2));
+        }
+        assertEquals(before[0], file.reads[0]);
+        assertEquals(before[1], file.reads[1]);
+        assertEquals(before[2] + file.numPages(2), file.reads[2]);
+    }
+
+    /**
+     * SeqScan passes its required fields down to the file.
+     */
+    @Test public void seqScanRequiredFields() throws Exception {
+        insert(10);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        int[] before = file.reads.clone();
+
+        SeqScan ss = new SeqScan(tid, file.getId(), "c");
+        ss.setRequiredFields(Collections.singleton(0));
+        ss.open();
+        int count = 0;
+        while (ss.hasNext()) {
+            Tuple t = ss.next();
+            assertEquals(new IntField(count++), t.getField(0));
+            assertNull(t.getField(1));
+        }
+        ss.close();
+        assertEquals(10, count);
+        assertEquals(before[1], file.reads[1]);
+        assertEquals(before[2], file.reads[2]);
+    }
+
+    /**
+     * Deleting tuples read without all their columns clears the whole row,
+     * and aborting restores it.
+     */
+    @Test public void deleteAndAbort() throws Exception {
+        insert(10);
+
+        for (Tuple t : scan(tid, Collections.singleton(0)))
+            Database.getBufferPool().deleteTuple(tid, t);
+        assertEquals(0, scan(tid, null).size());
+        Database.getBufferPool().transactionComplete(tid, false);
+
+        tid = new TransactionId();
+        assertEquals(10, scan(tid, null).size());
+        for (Tuple t : scan(tid, null).subList(0, 5))
+            Database.getBufferPool().deleteTuple(tid, t);
+        Database.getBufferPool().transactionComplete(tid);
+
+        // freed rows are reused before the file grows
+        tid = new TransactionId();
+        int pages = file.numPages(0);
+        insert(5);
+        assertEquals(pages, file.numPages(0));
+        assertEquals(10, scan(tid, null).size());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ColumnFileTest.class);
+    }
+}
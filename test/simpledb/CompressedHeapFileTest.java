@@ -0,0 +1,140 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class CompressedHeapFileTest extends SimpleDbTestBase {
+    private File plain;
+    private File packed;
+    private ArrayList<ArrayList<Integer>> tuples;
+
+    @Before
+    public void createFiles() throws Exception {
+        tuples = new ArrayList<ArrayList<Integer>>();
+        plain = SystemTestUtil.createRandomHeapFileUnopened(2, 1500, 1000, null, tuples);
+        packed = File.createTempFile("packed", ".dat");
+        HeapFile.deleteOnExit(packed);
+        HeapFileEncoder.compress(plain, packed, BufferPool.PAGE_SIZE);
+    }
+
+    private HeapFile open() {
+        HeapFile hf = new HeapFile(packed, Utility.getTupleDesc(2), BufferPool.PAGE_SIZE, true);
+        Database.getCatalog().addTable(hf, UUID.randomUUID().toString());
+        return hf;
+    }
+
+    /**
+     * Pages come back exactly as written. Empty pages take no space, and a
+     * page that outgrows its block moves to a new one.
+     */
+    @Test
+    public void storeRoundTrip() throws Exception {
+        CompressedPageStore store = new CompressedPageStore(packed, BufferPool.PAGE_SIZE);
+        int pages = store.numPages();
+        assertEquals(plain.length() / BufferPool.PAGE_SIZE, pages);
+        long length = packed.length();
+
+        store.extend(2);
+        assertEquals(pages + 2, store.numPages());
+        assertArrayEquals(new byte[BufferPool.PAGE_SIZE], store.read(pages + 1));
+        assertEquals(length, packed.length());
+
+        byte[] page = new byte[BufferPool.PAGE_SIZE];
+        page[0] = 1;
+        store.write(pages, page);
+        assertArrayEquals(page, store.read(pages));
+        long grown = packed.length();
+        assertTrue(grown > length);
+
+        // random bytes don't compress; the page is stored as is
+        new java.util.Random(0).nextBytes(page);
+        store.write(pages, page);
+        assertArrayEquals(page, store.read(pages));
+        assertTrue(packed.length() >= grown + BufferPool.PAGE_SIZE);
+        store.close();
+
+        store = new CompressedPageStore(packed, BufferPool.PAGE_SIZE);
+        assertArrayEquals(page, store.read(pages));
+        assertArrayEquals(new byte[BufferPool.PAGE_SIZE], store.read(pages + 1));
+        store.close();
+    }
+
+    /**
+     * A compressed HeapFile scans like the plain file it was built from,
+     * while taking less space on disk.
+     */
+    @Test
+    public void scan() throws Exception {
+        HeapFile hf = open();
+        assertTrue(hf.isCompressed());
+        assertEquals(plain.length() / BufferPool.PAGE_SIZE, hf.numPages());
+        assertTrue(packed.length() + CompressedPageStore.indexFile(packed).length() < plain.length() * 3 / 4);
+        SystemTestUtil.matchTuples(hf, tuples);
+    }
+
+    /**
+     * Inserts and deletes go through the buffer pool as for any HeapFile, and
+     * survive a reopen.
+     */
+    @Test
+    public void insertAndDelete() throws Exception {
+        HeapFile hf = open();
+        int pages = hf.numPages();
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 1000; ++i) {
+            Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[]{i, -i}));
+            ArrayList<Integer> row = new ArrayList<Integer>();
+            row.add(i);
+            row.add(-i);
+            tuples.add(row);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        assertTrue(hf.numPages() > pages);
+
+        tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        Tuple victim = it.next();
+        it.close();
+        Database.getBufferPool().deleteTuple(tid, victim);
+        Database.getBufferPool().transactionComplete(tid);
+        tuples.remove(SystemTestUtil.tupleToList(victim));
+
+        Database.getCatalog().clear();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(open(), tuples);
+    }
+
+    /**
+     * Compressing into a path that held another table drops that table's
+     * side files, so the new table doesn't pick them up.
+     */
+    @Test
+    public void compressDropsStaleSideFiles() throws Exception {
+        for (File f : HeapFile.sideFiles(packed)) {
+            java.nio.file.Files.write(f.toPath(), new byte[]{1, 2, 3});
+        }
+        HeapFileEncoder.compress(plain, packed, BufferPool.PAGE_SIZE);
+        for (File f : HeapFile.sideFiles(packed)) {
+            if (!f.equals(CompressedPageStore.indexFile(packed)))
+                assertFalse(f.exists());
+        }
+        SystemTestUtil.matchTuples(open(), tuples);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(CompressedHeapFileTest.class);
+    }
+}
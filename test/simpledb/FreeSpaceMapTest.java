@@ -0,0 +1,89 @@
+package simpledb;
+
+import java.io.File;
+import java.util.BitSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class FreeSpaceMapTest extends SimpleDbTestBase {
+    private File file;
+
+    @Before
+    public void createFile() throws Exception {
+        file = File.createTempFile("fsm", ".fsm");
+        file.delete();
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    /**
+     * A missing side file has to be rebuilt; a persisted one loads back.
+     */
+    @Test
+    public void persistAndLoad() throws Exception {
+        FreeSpaceMap fsm = new FreeSpaceMap(file);
+        assertFalse(fsm.load(3));
+
+        BitSet bits = new BitSet();
+        bits.set(1);
+        fsm.reset(bits, 3);
+        fsm.persist(9, true);
+        fsm.persist(1, false);
+        fsm.close();
+
+        FreeSpaceMap other = new FreeSpaceMap(file);
+        assertFalse(other.load(3));
+        assertTrue(other.load(10));
+        assertEquals(9, other.nextFreePage(0));
+        assertEquals(-1, other.nextFreePage(10));
+        other.close();
+    }
+
+    /**
+     * Inserts skip pages that the map says are full, and deletes make pages
+     * eligible again.
+     */
+    @Test
+    public void insertUsesFreePage() throws Exception {
+        // two full pages of 504 tuples, and a third one with room
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504 * 2 + 10, null, null);
+        file = FreeSpaceMap.sideFile(hf.getFile());
+        TransactionId tid = new TransactionId();
+
+        hf.insertTuple(tid, Utility.getHeapTuple(1, 2));
+        Tuple t = Utility.getHeapTuple(2, 2);
+        hf.insertTuple(tid, t);
+        assertEquals(2, t.getRecordId().getPageId().pageNumber());
+        assertFalse(Database.getBufferPool().holdsLock(tid, new HeapPageId(hf.getId(), 0)));
+        Database.getBufferPool().transactionComplete(tid);
+        assertTrue(file.exists());
+
+        tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        Tuple first = it.next();
+        it.close();
+        hf.deleteTuple(tid, first);
+        Tuple u = Utility.getHeapTuple(3, 2);
+        hf.insertTuple(tid, u);
+        assertEquals(0, u.getRecordId().getPageId().pageNumber());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FreeSpaceMapTest.class);
+    }
+}
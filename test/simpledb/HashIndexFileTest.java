@@ -0,0 +1,165 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+import simpledb.systemtest.SystemTestUtil;
+
+public class HashIndexFileTest extends IndexFileTestBase<HashIndexFile> {
+    private static final int ROWS = 200;
+    /**
+     * small pages, so that inserts split buckets and double the directory
+     */
+    private static final int INDEX_PAGE_SIZE = 512;
+
+    public HashIndexFileTest() {
+        super(ROWS, ".hash");
+    }
+
+    @Override
+    protected HashIndexFile createIndex(File f, int tableId) {
+        return new HashIndexFile(f, tableId, 0, INDEX_PAGE_SIZE);
+    }
+
+    /**
+     * Equality lookups find exactly the matching tuples; other operations
+     * aren't supported.
+     */
+    @Test
+    public void lookups() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            matchLookup(Predicate.Op.EQUALS, tuples.get(i).get(0));
+        }
+        matchLookup(Predicate.Op.EQUALS, -1);
+        assertTrue(index.supports(Predicate.Op.EQUALS));
+        assertFalse(index.supports(Predicate.Op.LESS_THAN));
+        try {
+            index.indexIterator(new TransactionId(), new IndexPredicate(Predicate.Op.LESS_THAN, new IntField(1)));
+            fail("expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        SystemTestUtil.matchTuples(index, tuples);
+    }
+
+    /**
+     * An equality lookup reads the directory and one bucket.
+     */
+    @Test
+    public void probeReadsTwoPages() throws Exception {
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = index.indexIterator(tid, new IndexPredicate(Predicate.Op.EQUALS, new IntField(-5)));
+        it.open();
+        assertFalse(it.hasNext());
+        it.close();
+        int locked = 0;
+        for (int i = 0; i < index.numPages(); i++) {
+            if (Database.getBufferPool().holdsLock(tid, new HashPageId(index.getId(), i)))
+                locked++;
+        }
+        assertTrue(locked <= index.estimateProbePages());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private int globalDepth() throws Exception {
+        TransactionId tid = new TransactionId();
+        HashPage directory = (HashPage) Database.getBufferPool().getPage(tid,
+                new HashPageId(index.getId(), 0), Permissions.READ_ONLY);
+        int depth = directory.depth;
+        Database.getBufferPool().transactionComplete(tid);
+        return depth;
+    }
+
+    /**
+     * Inserts through the buffer pool split buckets and grow the directory,
+     * and many duplicates of one key go to overflow pages.
+     */
+    @Test
+    public void insertsSplitBuckets() throws Exception {
+        int depth = globalDepth();
+        insertRows(1000, -1);
+        assertTrue(globalDepth() > depth);
+        insertRows(200, 7);
+        SystemTestUtil.matchTuples(index, tuples);
+        matchLookup(Predicate.Op.EQUALS, 7);
+        matchLookup(Predicate.Op.EQUALS, MAX_VALUE + 500);
+        matchLookup(Predicate.Op.EQUALS, tuples.get(3).get(0));
+    }
+
+    /**
+     * Deletes through the buffer pool remove entries, and an abort rolls the
+     * index back with the table.
+     */
+    @Test
+    public void deletes() throws Exception {
+        insertRows(100, 42);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = index.indexIterator(tid, new IndexPredicate(Predicate.Op.EQUALS, new IntField(42)));
+        it.open();
+        ArrayList<Tuple> doomed = new ArrayList<Tuple>();
+        while (it.hasNext())
+            doomed.add(it.next());
+        it.close();
+        assertEquals(expected(Predicate.Op.EQUALS, 42).size(), doomed.size());
+        for (Tuple t : doomed)
+            Database.getBufferPool().deleteTuple(tid, t);
+        Database.getBufferPool().transactionComplete(tid, false);
+        matchLookup(Predicate.Op.EQUALS, 42);
+
+        // the aborted deletes cleared the RecordIds of the tuples; look them up again
+        tid = new TransactionId();
+        it = index.indexIterator(tid, new IndexPredicate(Predicate.Op.EQUALS, new IntField(42)));
+        it.open();
+        doomed.clear();
+        while (it.hasNext())
+            doomed.add(it.next());
+        it.close();
+        for (Tuple t : doomed)
+            Database.getBufferPool().deleteTuple(tid, t);
+        Database.getBufferPool().transactionComplete(tid);
+        tuples.removeIf(row -> row.get(0) == 42);
+        matchLookup(Predicate.Op.EQUALS, 42);
+        SystemTestUtil.matchTuples(index, tuples);
+    }
+
+    /**
+     * The planner probes the hash index for an equality filter, and can't
+     * use it for a range filter.
+     */
+    @Test
+    public void plannerChoosesIndex() throws Exception {
+        insertRows(1000, -1);
+        String name = Database.getCatalog().getTableName(hf.getId());
+        Map<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put(name, new TableStats(hf.getId(), 1000));
+
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(hf.getId(), "t");
+        lp.addFilter("t.c0", Predicate.Op.EQUALS, "1042");
+        lp.addProjectField("t.c1", null);
+        TransactionId tid = new TransactionId();
+        DbIterator plan = lp.physicalPlan(tid, stats, false);
+        assertTrue(findScan(plan) instanceof IndexScan);
+        assertSame(index, ((IndexScan) findScan(plan)).getIndex());
+
+        lp = new LogicalPlan();
+        lp.addScan(hf.getId(), "t");
+        lp.addFilter("t.c0", Predicate.Op.LESS_THAN, "5");
+        lp.addProjectField("t.c1", null);
+        assertFalse(findScan(lp.physicalPlan(tid, stats, false)) instanceof IndexScan);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HashIndexFileTest.class);
+    }
+}
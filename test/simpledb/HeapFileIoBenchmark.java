@@ -0,0 +1,105 @@
+package simpledb;
+
+import java.io.*;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Micro-benchmark comparing the per-call RandomAccessFile page read path with
+ * HeapFile's long-lived FileChannel path on a full scan of a single-int table.
+ * <p>
+ * usage: HeapFileIoBenchmark [table size in MB, default 1024] [table file] [raf|channel|both]
+ * <p>
+ * The JVM can't drop the OS page cache by itself. For cold numbers run
+ * {@code sync; echo 3 > /proc/sys/vm/drop_caches} before starting, and pass
+ * "raf" or "channel" as the third argument to run only one of the two scans.
+ * A table written to a temporary file is deleted on exit; pass a table file to
+ * keep it between runs.
+ */
+public class HeapFileIoBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long megabytes = args.length > 0 ? Long.parseLong(args[0]) : 1024;
+        File f;
+        if (args.length > 1) {
+            f = new File(args[1]);
+        } else {
+            f = File.createTempFile("iobench", ".dat");
+            HeapFile.deleteOnExit(f);
+        }
+        int numPages = (int) (megabytes * 1024 * 1024 / BufferPool.PAGE_SIZE);
+        if (f.length() != (long) numPages * BufferPool.PAGE_SIZE) {
+            System.out.println("writing " + numPages + " pages to " + f);
+            writeTable(f, numPages);
+        }
+
+        String which = args.length > 2 ? args[2] : "both";
+        HeapFile hf = Utility.openHeapFile(1, f);
+        if (!which.equals("channel")) {
+            System.out.println("per-call RandomAccessFile: " + scanRandomAccessFile(hf) + " ms");
+        }
+        if (!which.equals("raf")) {
+            System.out.println("shared FileChannel:        " + scanChannel(hf) + " ms");
+        }
+        hf.close();
+    }
+
+    static void writeTable(File f, int numPages) throws IOException {
+        int numSlots = BufferPool.PAGE_SIZE * 8 / (Type.INT_TYPE.getLen() * 8 + 1);
+        int headerSize = (numSlots + 7) / 8;
+        byte[] page = new byte[BufferPool.PAGE_SIZE];
+        for (int i = 0; i < numSlots; i++) {
+            page[i / 8] |= 1 << (i % 8);
+        }
+        Random r = new Random();
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(f), 1 << 20)) {
+            for (int p = 0; p < numPages; p++) {
+                for (int i = headerSize; i < headerSize + numSlots * 4; i++) {
+                    page[i] = (byte) r.nextInt();
+                }
+                os.write(page);
+            }
+        }
+    }
+
+    /**
+     * the old HeapFile.readPage: open, seek, read and close for every page.
+     */
+    private static long scanRandomAccessFile(HeapFile hf) throws IOException {
+        long start = System.currentTimeMillis();
+        long tuples = 0;
+        for (int i = 0; i < hf.numPages(); i++) {
+            byte[] buffer = new byte[BufferPool.PAGE_SIZE];
+            try (RandomAccessFile raf = new RandomAccessFile(hf.getFile(), "r")) {
+                raf.seek((long) i * BufferPool.PAGE_SIZE);
+                raf.read(buffer);
+            }
+            tuples += countTuples(new HeapPage(new HeapPageId(hf.getId(), i), buffer));
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        System.out.println("  (" + tuples + " tuples)");
+        return elapsed;
+    }
+
+    private static long scanChannel(HeapFile hf) {
+        long start = System.currentTimeMillis();
+        long tuples = 0;
+        for (int i = 0; i < hf.numPages(); i++) {
+            HeapPage page = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), i));
+            tuples += countTuples(page);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        System.out.println("  (" + tuples + " tuples)");
+        return elapsed;
+    }
+
+    private static int countTuples(HeapPage page) {
+        int count = 0;
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        return count;
+    }
+}
@@ -4,6 +4,8 @@ import simpledb.systemtest.SimpleDbTestBase;
 import simpledb.systemtest.SystemTestUtil;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -77,6 +79,81 @@ public class HeapFileReadTest extends SimpleDbTestBase {
         assertFalse(page.isSlotUsed(20));
     }
 
+    /**
+     * A thread interrupted while reading closes the file's channel, and the
+     * threads reading along with it carry on on a reopened one.
+     */
+    @Test
+    public void readPageSurvivesInterrupts() throws Exception {
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread interrupted = new Thread(() -> {
+            while (!done.get()) {
+                Thread.currentThread().interrupt();
+                try {
+                    hf.readPage(pid);
+                } catch (RuntimeException e) {
+                    // expected: this thread's read was interrupted
+                }
+                Thread.interrupted();
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        List<Thread> readers = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            readers.add(new Thread(() -> {
+                try {
+                    for (int j = 0; j < 5000; j++)
+                        assertEquals(484, ((HeapPage) hf.readPage(pid)).getNumEmptySlots());
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }));
+        }
+        interrupted.start();
+        for (Thread t : readers)
+            t.start();
+        for (Thread t : readers)
+            t.join();
+        done.set(true);
+        interrupted.join();
+        assertNull(failure.get());
+    }
+
+    /**
+     * Unit test for HeapFile.readPage() through the file's memory mapping
+     */
+    @Test
+    public void readPageMapped() throws Exception {
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        HeapPage page = (HeapPage) hf.readPage(pid, true);
+
+        assertEquals(484, page.getNumEmptySlots());
+        assertArrayEquals(((HeapPage) hf.readPage(pid, false)).getPageData(), page.getPageData());
+        assertArrayEquals(page.getPageData(), page.getBeforeImage().getPageData());
+    }
+
+    @Test
+    public void testIteratorMapped() throws Exception {
+        HeapFile twoPageFile = SystemTestUtil.createRandomHeapFile(2, 520,
+                null, null);
+
+        DbFileIterator it = twoPageFile.iterator(tid, true);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            assertNotNull(it.next());
+            count += 1;
+        }
+        assertEquals(520, count);
+        it.close();
+    }
+
     @Test
     public void testIteratorBasic() throws Exception {
         HeapFile smallFile = SystemTestUtil.createRandomHeapFile(2, 3, null,
@@ -1,5 +1,10 @@
 package simpledb;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -43,6 +48,162 @@ public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
         assertEquals(3, empty.numPages());
     }
 
+    /**
+     * Unit test for HeapFile.appendTuples()
+     */
+    @Test public void appendTuples() throws Exception {
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < 504 * 3 + 1; ++i) {
+            tuples.add(Utility.getHeapTuple(i, 2));
+        }
+        int before = empty.numPages();
+        assertEquals(tuples.size(), empty.appendTuples(tid, tuples.iterator()));
+        // the file grows by just the pages the tuples fill
+        assertEquals(before + 4, empty.numPages());
+        assertEquals(before + 3, tuples.get(504 * 3).getRecordId().getPageId().pageNumber());
+        assertTrue(Database.getBufferPool().holdsLock(tid, new HeapPageId(empty.getId(), before)));
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        assertEquals(tuples.size(), countTuples(empty, tid));
+        // inserts skip the full pages that were appended
+        for (int i = 0; i < 504 + 2; ++i) {
+            Tuple t = Utility.getHeapTuple(i, 2);
+            empty.insertTuple(tid, t);
+            int pageNo = t.getRecordId().getPageId().pageNumber();
+            assertTrue(pageNo < before || pageNo >= before + 3);
+        }
+    }
+
+    /**
+     * Aborting a transaction empties the pages it appended.
+     */
+    @Test public void appendTuplesAbort() throws Exception {
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < 1000; ++i) {
+            tuples.add(Utility.getHeapTuple(i, 2));
+        }
+        empty.appendTuples(tid, tuples.iterator());
+        assertEquals(tuples.size(), countTuples(empty, tid));
+        Database.getBufferPool().transactionComplete(tid, false);
+
+        tid = new TransactionId();
+        assertEquals(0, countTuples(empty, tid));
+    }
+
+    /**
+     * Appended pages reach the file before the transaction commits, unlike
+     * the pages dirtied in the buffer pool (see HeapFile.appendTuples).
+     */
+    @Test public void appendTuplesWrittenBeforeCommit() throws Exception {
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < 10; ++i) {
+            tuples.add(Utility.getHeapTuple(i, 2));
+        }
+        empty.appendTuples(tid, tuples.iterator());
+        HeapPageId pid = (HeapPageId) tuples.get(0).getRecordId().getPageId();
+        HeapPage onDisk = (HeapPage) empty.readPage(pid);
+        assertEquals(empty.slotsPerPage() - tuples.size(), onDisk.getNumEmptySlots());
+
+        Database.getBufferPool().transactionComplete(tid, false);
+        tid = new TransactionId();
+        onDisk = (HeapPage) empty.readPage(pid);
+        assertEquals(empty.slotsPerPage(), onDisk.getNumEmptySlots());
+    }
+
+    /**
+     * Unit test for HeapFile.vacuum(): tuples left after mass deletes are
+     * packed into the first pages and the rest of the file is cut off.
+     */
+    @Test public void vacuum() throws Exception {
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < 504 * 10; ++i) {
+            tuples.add(Utility.getHeapTuple(i, 2));
+        }
+        empty.appendTuples(tid, tuples.iterator());
+        Database.getBufferPool().transactionComplete(tid);
+
+        // keep 3 pages worth of tuples, spread over all 10 pages
+        tid = new TransactionId();
+        Set<Integer> kept = new HashSet<Integer>();
+        for (int i = 0; i < tuples.size(); ++i) {
+            if (i % 10 < 7) {
+                Database.getBufferPool().deleteTuple(tid, tuples.get(i));
+            } else {
+                kept.add(i);
+            }
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        // a small pool makes the vacuum commit in several batches
+        Database.resetBufferPool(8);
+        int pages = empty.numPages();
+        VacuumReport report = empty.vacuum();
+        assertEquals(pages, report.getPagesBefore());
+        assertEquals(3, report.getPagesAfter());
+        assertEquals(3, empty.numPages());
+        assertEquals((long) (pages - 3) * BufferPool.PAGE_SIZE, report.getBytesReclaimed());
+        assertTrue(report.getTuplesMoved() > 0);
+
+        tid = new TransactionId();
+        DbFileIterator it = empty.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            assertTrue(kept.remove(((IntField) it.next().getField(0)).getValue()));
+        }
+        it.close();
+        assertTrue(kept.isEmpty());
+
+        // the truncated file takes inserts as usual
+        Tuple t = Utility.getHeapTuple(1, 2);
+        empty.insertTuple(tid, t);
+        assertEquals(3, t.getRecordId().getPageId().pageNumber());
+    }
+
+    /**
+     * Vacuum looks at pages it has nothing to move into under a shared lock
+     * and lets go of them, so a reader of the full head of the table doesn't
+     * hold it up.
+     */
+    @Test public void vacuumOnlyLocksPagesItChanges() throws Exception {
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < 504 * 10; ++i) {
+            tuples.add(Utility.getHeapTuple(i, 2));
+        }
+        empty.appendTuples(tid, tuples.iterator());
+        Database.getBufferPool().transactionComplete(tid);
+
+        // the two pages after the empty first one stay full
+        tid = new TransactionId();
+        for (int i = 504 * 2; i < tuples.size(); ++i) {
+            if (i % 10 < 7) {
+                Database.getBufferPool().deleteTuple(tid, tuples.get(i));
+            }
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        TransactionId reader = new TransactionId();
+        Database.getBufferPool().getPage(reader, new HeapPageId(empty.getId(), 1), Permissions.READ_ONLY);
+        Database.getBufferPool().getPage(reader, new HeapPageId(empty.getId(), 2), Permissions.READ_ONLY);
+        VacuumReport report = empty.vacuum();
+        assertTrue(report.getTuplesMoved() > 0);
+        assertTrue(report.getPagesAfter() < report.getPagesBefore());
+        assertTrue(Database.getBufferPool().holdsLock(reader, new HeapPageId(empty.getId(), 1)));
+        Database.getBufferPool().transactionComplete(reader);
+    }
+
+    private static int countTuples(HeapFile f, TransactionId tid) throws Exception {
+        DbFileIterator it = f.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        return count;
+    }
+
     /**
      * JUnit suite target
      */
@@ -56,7 +56,7 @@ public class HeapPageReadTest extends SimpleDbTestBase {
         // Convert it to a HeapFile and read in the bytes
         try {
             File temp = File.createTempFile("table", ".dat");
-            temp.deleteOnExit();
+            HeapFile.deleteOnExit(temp);
             HeapFileEncoder.convert(table, temp, BufferPool.PAGE_SIZE, 2);
             EXAMPLE_DATA = TestUtil.readFileBytes(temp.getAbsolutePath());
         } catch (IOException e) {
@@ -99,6 +99,39 @@ public class HeapPageReadTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for HeapPage.getField()
+     */
+    @Test public void getField() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        for (int row = 0; row < EXAMPLE_VALUES.length; row++) {
+            assertEquals(EXAMPLE_VALUES[row][1], ((IntField) page.getField(row, 1)).getValue());
+            assertEquals(EXAMPLE_VALUES[row][0], ((IntField) page.getField(row, 0)).getValue());
+        }
+    }
+
+    /**
+     * Unit test for HeapPage.iterator(List)
+     */
+    @Test public void testPredicateIterator() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        Predicate p = new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(30000));
+        Iterator<Tuple> it = page.iterator(Arrays.asList(p));
+
+        int matches = 0;
+        for (int[] tuple : EXAMPLE_VALUES) {
+            if (tuple[0] > 30000) {
+                assertTrue(it.hasNext());
+                Tuple tup = it.next();
+                assertEquals(tuple[0], ((IntField) tup.getField(0)).getValue());
+                assertEquals(tuple[1], ((IntField) tup.getField(1)).getValue());
+                matches++;
+            }
+        }
+        assertFalse(it.hasNext());
+        assertEquals(9, matches);
+    }
+
     /**
      * Unit test for HeapPage.getNumEmptySlots()
      */
@@ -1,9 +1,11 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 
@@ -85,6 +87,56 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for HeapPage.getPageData() after insertions and deletions
+     */
+    @Test public void getPageDataAfterUpdates() throws Exception {
+        byte[] original = HeapPageReadTest.EXAMPLE_DATA.clone();
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        Tuple addition = Utility.getHeapTuple(7, 2);
+        page.insertTuple(addition);
+        Tuple first = page.iterator().next();
+        page.deleteTuple(first);
+
+        // the array the page was built from is left alone
+        assertTrue(Arrays.equals(original, HeapPageReadTest.EXAMPLE_DATA));
+        assertTrue(Arrays.equals(original, page.getBeforeImage().getPageData()));
+
+        HeapPage copy = new HeapPage(pid, page.getPageData());
+        assertEquals(page.getNumEmptySlots(), copy.getNumEmptySlots());
+        assertFalse(copy.isSlotUsed(0));
+        int slot = addition.getRecordId().tupleno();
+        assertEquals(addition.getField(0), copy.getField(slot, 0));
+        assertEquals(addition.getField(1), copy.getField(slot, 1));
+        assertTrue(Arrays.equals(page.getPageData(), copy.getPageData()));
+    }
+
+    /**
+     * Unit test for HeapPage.insertTuple() reusing the first free slot, past
+     * the first header word
+     */
+    @Test public void insertFillsFirstFreeSlot() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        int free = page.getNumEmptySlots();
+        for (int i = 0; i < free; ++i)
+            page.insertTuple(Utility.getHeapTuple(i, 2));
+
+        Iterator<Tuple> it = page.iterator();
+        Tuple victim = null;
+        for (int i = 0; i <= 70; ++i)
+            victim = it.next();
+        assertEquals(70, victim.getRecordId().tupleno());
+        page.deleteTuple(victim);
+        assertFalse(page.isSlotUsed(70));
+        assertEquals(1, page.getNumEmptySlots());
+
+        Tuple addition = Utility.getHeapTuple(1, 2);
+        page.insertTuple(addition);
+        assertEquals(70, addition.getRecordId().tupleno());
+        assertEquals(0, page.getNumEmptySlots());
+        assertEquals(0, new HeapPage(pid, page.getPageData()).getNumEmptySlots());
+    }
+
     /**
      * Unit test for HeapPage.deleteTuple() with false tuples
      */
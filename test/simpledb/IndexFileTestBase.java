@@ -0,0 +1,97 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import org.junit.Before;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Fixture of the index file tests: a random table of ints with an index of
+ * type I over its first column, built before each test, and the lookups
+ * checked against the table's rows.
+ */
+public abstract class IndexFileTestBase<I extends IndexFile> extends SimpleDbTestBase {
+    protected static final int COLUMNS = 10;
+    protected static final int MAX_VALUE = 1000;
+
+    private final int rows;
+    private final String suffix;
+
+    protected HeapFile hf;
+    protected I index;
+    protected ArrayList<ArrayList<Integer>> tuples;
+
+    /**
+     * @param rows   the rows of the table
+     * @param suffix the suffix of the index file
+     */
+    protected IndexFileTestBase(int rows, String suffix) {
+        this.rows = rows;
+        this.suffix = suffix;
+    }
+
+    /**
+     * @return an empty index over the first column of the given table
+     */
+    protected abstract I createIndex(File f, int tableId);
+
+    @Before
+    public void setUp() throws Exception {
+        Database.reset();
+        tuples = new ArrayList<ArrayList<Integer>>();
+        hf = SystemTestUtil.createRandomHeapFile(COLUMNS, rows, MAX_VALUE, null, tuples, "c");
+        File f = File.createTempFile("index", suffix);
+        f.deleteOnExit();
+        index = createIndex(f, hf.getId());
+        Database.getCatalog().addIndex(index);
+        TransactionId tid = new TransactionId();
+        index.build(tid);
+        Database.getBufferPool().transactionComplete(tid);
+        Database.resetBufferPool(500);
+    }
+
+    protected ArrayList<ArrayList<Integer>> expected(Predicate.Op op, int value) {
+        ArrayList<ArrayList<Integer>> result = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> t : tuples) {
+            if (new IntField(t.get(0)).compare(op, new IntField(value)))
+                result.add(t);
+        }
+        return result;
+    }
+
+    protected void matchLookup(Predicate.Op op, int value) throws Exception {
+        TransactionId tid = new TransactionId();
+        IndexScan scan = new IndexScan(tid, index, new IndexPredicate(op, new IntField(value)), "t");
+        SystemTestUtil.matchTuples(scan, expected(op, value));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Inserts rows through the buffer pool and commits them.
+     *
+     * @param key the key of the rows, or -1 for distinct keys above MAX_VALUE
+     */
+    protected void insertRows(int count, int key) throws Exception {
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < count; i++) {
+            Tuple t = new Tuple(hf.getTupleDesc());
+            ArrayList<Integer> row = new ArrayList<Integer>();
+            for (int j = 0; j < COLUMNS; j++) {
+                row.add(j == 0 ? (key < 0 ? MAX_VALUE + i : key) : i);
+                t.setField(j, new IntField(row.get(j)));
+            }
+            Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+            tuples.add(row);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    protected static SeqScan findScan(DbIterator it) {
+        while (!(it instanceof SeqScan))
+            it = ((Operator) it).getChildren()[0];
+        return (SeqScan) it;
+    }
+}
@@ -0,0 +1,200 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class IndexNestedLoopJoinTest extends SimpleDbTestBase {
+    private static final int COLUMNS = 10;
+    private static final int ROWS = 3000;
+    private static final int MAX_VALUE = 1000;
+
+    private HeapFile inner;
+    private BTreeFile btree;
+    private HashIndexFile hash;
+
+    @Before
+    public void setUp() throws Exception {
+        Database.reset();
+        inner = SystemTestUtil.createRandomHeapFile(COLUMNS, ROWS, MAX_VALUE, null, null, "c");
+        File f = File.createTempFile("index", ".btree");
+        f.deleteOnExit();
+        btree = new BTreeFile(f, inner.getId(), 1, 256);
+        Database.getCatalog().addIndex(btree);
+        f = File.createTempFile("index", ".hash");
+        f.deleteOnExit();
+        hash = new HashIndexFile(f, inner.getId(), 1, 512);
+        Database.getCatalog().addIndex(hash);
+        TransactionId tid = new TransactionId();
+        btree.build(tid);
+        hash.build(tid);
+        Database.getBufferPool().transactionComplete(tid);
+        Database.resetBufferPool(500);
+    }
+
+    private static DbIterator outer() {
+        return TestUtil.createTupleList(2, new int[]{
+                5, 1,
+                17, 2,
+                500, 3,
+                5, 4,
+                -1, 5});
+    }
+
+    private static ArrayList<ArrayList<Integer>> collect(DbIterator it) throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        it.open();
+        while (it.hasNext())
+            tuples.add(SystemTestUtil.tupleToList(it.next()));
+        it.close();
+        return tuples;
+    }
+
+    private void matchJoin(Predicate.Op op, IndexFile index, boolean filtered) throws Exception {
+        TransactionId tid = new TransactionId();
+        JoinPredicate p = new JoinPredicate(0, op, 1);
+        Predicate filter = new Predicate(2, Predicate.Op.GREATER_THAN, new IntField(MAX_VALUE / 2));
+        DbIterator scan = new SeqScan(tid, inner.getId(), "t");
+        if (filtered)
+            scan = new Filter(filter, scan);
+        ArrayList<ArrayList<Integer>> expected = collect(new Join(p, outer(), scan));
+
+        scan = new SeqScan(tid, inner.getId(), "t");
+        if (filtered)
+            scan = new Filter(filter, scan);
+        IndexNestedLoopJoin join = new IndexNestedLoopJoin(p, outer(), scan, index);
+        assertEquals(new Join(p, outer(), scan).getTupleDesc(), join.getTupleDesc());
+        SystemTestUtil.matchTuples(join, expected);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * The join returns the same tuples as Join, through either kind of index
+     * and with filters on the inner side.
+     */
+    @Test
+    public void matchesJoin() throws Exception {
+        matchJoin(Predicate.Op.EQUALS, hash, false);
+        matchJoin(Predicate.Op.EQUALS, btree, false);
+        matchJoin(Predicate.Op.EQUALS, hash, true);
+        matchJoin(Predicate.Op.LESS_THAN, btree, false);
+        matchJoin(Predicate.Op.GREATER_THAN_OR_EQ, btree, true);
+    }
+
+    /**
+     * Rewinding starts the probes over.
+     */
+    @Test
+    public void rewind() throws Exception {
+        TransactionId tid = new TransactionId();
+        IndexNestedLoopJoin join = new IndexNestedLoopJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 1),
+                outer(), new SeqScan(tid, inner.getId(), "t"), hash);
+        ArrayList<ArrayList<Integer>> first = collect(join);
+        join.open();
+        while (join.hasNext())
+            join.next();
+        join.rewind();
+        ArrayList<ArrayList<Integer>> second = new ArrayList<ArrayList<Integer>>();
+        while (join.hasNext())
+            second.add(SystemTestUtil.tupleToList(join.next()));
+        join.close();
+        assertEquals(first, second);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Only the inner pages holding matches are read, not the whole table.
+     */
+    @Test
+    public void readsOnlyMatchingPages() throws Exception {
+        TransactionId tid = new TransactionId();
+        IndexNestedLoopJoin join = new IndexNestedLoopJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 1),
+                outer(), new SeqScan(tid, inner.getId(), "t"), hash);
+        int matches = collect(join).size();
+        int locked = 0;
+        for (int i = 0; i < inner.numPages(); i++) {
+            if (Database.getBufferPool().holdsLock(tid, new HeapPageId(inner.getId(), i)))
+                locked++;
+        }
+        assertTrue(locked <= matches);
+        assertTrue(locked < inner.numPages());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * The index must match the inner side of the join.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsWrongField() throws Exception {
+        new IndexNestedLoopJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 2), outer(),
+                new SeqScan(new TransactionId(), inner.getId(), "t"), hash);
+    }
+
+    private static boolean hasIndexJoin(DbIterator it) {
+        if (it instanceof IndexNestedLoopJoin)
+            return true;
+        if (!(it instanceof Operator))
+            return false;
+        for (DbIterator child : ((Operator) it).getChildren()) {
+            if (hasIndexJoin(child))
+                return true;
+        }
+        return false;
+    }
+
+    private DbIterator plan(HeapFile outerTable, String outerFilter) throws Exception {
+        Map<String, TableStats> stats = new HashMap<String, TableStats>();
+        for (HeapFile table : new HeapFile[]{outerTable, inner}) {
+            stats.put(Database.getCatalog().getTableName(table.getId()), new TableStats(table.getId(), 1000));
+        }
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(outerTable.getId(), "o");
+        lp.addScan(inner.getId(), "t");
+        lp.addJoin("o.c0", "t.c1", Predicate.Op.EQUALS);
+        if (outerFilter != null)
+            lp.addFilter("o.c1", Predicate.Op.EQUALS, outerFilter);
+        lp.addProjectField("t.c2", null);
+        return lp.physicalPlan(new TransactionId(), stats, false);
+    }
+
+    /**
+     * The optimizer probes the index when few outer tuples reach the join,
+     * and hashes both sides when many do.
+     */
+    @Test
+    public void optimizerChoosesIndexJoin() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile small = SystemTestUtil.createRandomHeapFile(2, 2000, MAX_VALUE, null, tuples, "c");
+        int key = tuples.get(0).get(1);
+
+        DbIterator plan = plan(small, Integer.toString(key));
+        assertTrue(hasIndexJoin(plan));
+        int count = collect(plan).size();
+        Database.resetBufferPool(500);
+        DbIterator full = plan(small, null);
+        assertFalse(hasIndexJoin(full));
+
+        // the same answer as without the index
+        Database.getCatalog().addTable(inner, Database.getCatalog().getTableName(inner.getId()));
+        assertTrue(Database.getCatalog().getIndexes(inner.getId()).isEmpty());
+        plan = plan(small, Integer.toString(key));
+        assertFalse(hasIndexJoin(plan));
+        assertEquals(count, collect(plan).size());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(IndexNestedLoopJoinTest.class);
+    }
+}
@@ -4,6 +4,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import junit.framework.JUnit4TestAdapter;
 
@@ -56,6 +57,32 @@ public class InsertTest extends TestUtil.CreateHeapFile {
     assertEquals(1, empty.numPages());
   }
 
+  /**
+   * Unit test for Insert.getNext() with a child large enough to be appended
+   * in bulk
+   */
+  @Test public void getNextBulk() throws Exception {
+    int rows = empty.slotsPerPage() * Insert.BULK_INSERT_PAGES + 10;
+    int[] values = new int[rows * 2];
+    for (int i = 0; i < values.length; ++i)
+      values[i] = i;
+    Insert op = new Insert(tid, TestUtil.createTupleList(2, values), empty.getId());
+    op.open();
+    assertTrue(TestUtil.compareTuples(Utility.getHeapTuple(rows, 1), op.next()));
+    assertFalse(op.hasNext());
+    op.close();
+
+    DbFileIterator it = empty.iterator(tid);
+    it.open();
+    int count = 0;
+    while (it.hasNext()) {
+      it.next();
+      count++;
+    }
+    it.close();
+    assertEquals(rows, count);
+  }
+
   /**
    * JUnit suite target
    */
@@ -26,7 +26,7 @@ public class JoinOptimizerTest extends SimpleDbTestBase {
 	 */
 	public static HeapFile createDuplicateHeapFile(ArrayList<ArrayList<Integer>> tuples, int columns, String colPrefix) throws IOException {
         File temp = File.createTempFile("table", ".dat");
-        temp.deleteOnExit();
+        HeapFile.deleteOnExit(temp);
         HeapFileEncoder.convert(tuples, temp, BufferPool.PAGE_SIZE, columns);
         return Utility.openHeapFile(columns, colPrefix, temp);
 	}
@@ -0,0 +1,159 @@
+package simpledb;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PageChecksumsTest extends SimpleDbTestBase {
+    private HeapFile hf;
+    private ArrayList<ArrayList<Integer>> tuples;
+
+    @Before
+    public void setUp() throws Exception {
+        tuples = new ArrayList<ArrayList<Integer>>();
+        hf = SystemTestUtil.createRandomHeapFile(2, 1000, null, tuples);
+    }
+
+    /**
+     * Writes every page of the table through the buffer pool, so they all get
+     * a checksum.
+     */
+    private void touchAllPages() throws Exception {
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < hf.numPages(); i++) {
+            HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,
+                    new HeapPageId(hf.getId(), i), Permissions.READ_WRITE);
+            page.markDirty(true, tid);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+    }
+
+    private void corrupt(int pageNo, int offset) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(hf.getFile(), "rw");
+        long pos = (long) pageNo * BufferPool.PAGE_SIZE + offset;
+        raf.seek(pos);
+        int b = raf.read();
+        raf.seek(pos);
+        raf.write(b ^ 0x10);
+        raf.close();
+    }
+
+    /**
+     * Written pages are verified when read back, through the channel and
+     * through the memory mapping.
+     */
+    @Test
+    public void verifiedOnRead() throws Exception {
+        // pages written by HeapFileEncoder have no checksum yet
+        SystemTestUtil.matchTuples(hf, tuples);
+        assertEquals(0, hf.getChecksums().getVerifiedPages());
+
+        touchAllPages();
+        SystemTestUtil.matchTuples(hf, tuples);
+        assertEquals(hf.numPages(), hf.getChecksums().getVerifiedPages());
+        assertTrue(hf.getChecksums().getVerifyNanos() > 0);
+
+        assertNotNull(hf.readCheckedPage(new HeapPageId(hf.getId(), 1), true));
+        assertEquals(hf.numPages() + 1, hf.getChecksums().getVerifiedPages());
+    }
+
+    /**
+     * A damaged page is reported by the buffer pool instead of being parsed.
+     */
+    @Test
+    public void mismatchFailsRead() throws Exception {
+        touchAllPages();
+        corrupt(1, 100);
+
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().getPage(tid, new HeapPageId(hf.getId(), 0), Permissions.READ_ONLY);
+        try {
+            Database.getBufferPool().getPage(tid, new HeapPageId(hf.getId(), 1), Permissions.READ_ONLY);
+            fail("expected DbException");
+        } catch (DbException e) {
+            assertTrue(e.getMessage().contains("checksum mismatch"));
+        }
+        try {
+            hf.readCheckedPage(new HeapPageId(hf.getId(), 1), true);
+            fail("expected DbException");
+        } catch (DbException e) {
+            // explicitly ignored
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * A write that was cut short leaves the page readable, whether it still
+     * holds the old data or already the new.
+     */
+    @Test
+    public void interruptedWriteAccepted() throws Exception {
+        touchAllPages();
+        HeapPageId pid = new HeapPageId(hf.getId(), 1);
+        HeapPage page = hf.readCheckedPage(pid, false);
+        page.deleteTuple(page.iterator().next());
+        byte[] data = page.getPageData();
+
+        PageChecksums checksums = hf.getChecksums();
+        checksums.beginWrite(1, data);
+        assertNotNull(hf.readCheckedPage(pid, false));
+        RandomAccessFile raf = new RandomAccessFile(hf.getFile(), "rw");
+        raf.seek(BufferPool.PAGE_SIZE);
+        raf.write(data);
+        raf.close();
+        assertNotNull(hf.readCheckedPage(pid, false));
+        corrupt(1, 100);
+        try {
+            hf.readCheckedPage(pid, false);
+            fail("expected DbException");
+        } catch (DbException e) {
+            assertTrue(e.getMessage().contains("checksum mismatch"));
+        }
+    }
+
+    /**
+     * Rebuilding a table at the same path drops the checksums of the old
+     * one, and a side file that doesn't cover the table's pages is ignored.
+     */
+    @Test
+    public void staleChecksumsDropped() throws Exception {
+        touchAllPages();
+        File file = hf.getFile();
+        Database.reset();
+        tuples.clear();
+        for (int i = 0; i < 1000; i++) {
+            ArrayList<Integer> row = new ArrayList<Integer>();
+            row.add(i);
+            row.add(-i);
+            tuples.add(row);
+        }
+        HeapFileEncoder.convert(tuples, file, BufferPool.PAGE_SIZE, 2);
+        hf = Utility.openHeapFile(2, file);
+        SystemTestUtil.matchTuples(hf, tuples);
+        touchAllPages();
+
+        Database.reset();
+        RandomAccessFile raf = new RandomAccessFile(PageChecksums.sideFile(file), "rw");
+        raf.setLength(raf.length() - 16);
+        raf.close();
+        hf = Utility.openHeapFile(2, file);
+        SystemTestUtil.matchTuples(hf, tuples);
+        assertEquals(0, hf.getChecksums().getVerifiedPages());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageChecksumsTest.class);
+    }
+}
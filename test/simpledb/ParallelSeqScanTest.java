@@ -0,0 +1,122 @@
+package simpledb;
+
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ParallelSeqScanTest extends SimpleDbTestBase {
+    private HeapFile hf;
+    private ArrayList<ArrayList<Integer>> tuples;
+
+    @Before
+    public void setUp() throws Exception {
+        tuples = new ArrayList<ArrayList<Integer>>();
+        hf = SystemTestUtil.createRandomHeapFile(2, 20000, 1000, null, tuples);
+    }
+
+    /**
+     * The workers together return every tuple of the table once.
+     */
+    @Test
+    public void matchesTable() throws Exception {
+        TransactionId tid = new TransactionId();
+        ParallelSeqScan scan = new ParallelSeqScan(tid, hf.getId(), "t", 4);
+        assertTrue(scan.getTupleDesc().getFieldName(0).startsWith("t."));
+        SystemTestUtil.matchTuples(scan, tuples);
+
+        // rewinding starts the workers over
+        SystemTestUtil.matchTuples(scan, tuples);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Pages are locked for the scan's transaction, as if it had read them
+     * itself.
+     */
+    @Test
+    public void locksPagesForTransaction() throws Exception {
+        TransactionId tid = new TransactionId();
+        ParallelSeqScan scan = new ParallelSeqScan(tid, hf.getId(), "t", 3);
+        scan.open();
+        while (scan.hasNext())
+            scan.next();
+        scan.close();
+        for (int i = 0; i < hf.numPages(); i++)
+            assertTrue(Database.getBufferPool().holdsLock(tid, new HeapPageId(hf.getId(), i)));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * A predicate pushed down by a Filter is tested by the workers.
+     */
+    @Test
+    public void filter() throws Exception {
+        int expected = 0;
+        for (ArrayList<Integer> t : tuples)
+            if (t.get(0) < 100)
+                expected++;
+
+        TransactionId tid = new TransactionId();
+        ParallelSeqScan scan = new ParallelSeqScan(tid, hf.getId(), "t", 4);
+        Filter f = new Filter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(100)), scan);
+        f.open();
+        int count = 0;
+        while (f.hasNext()) {
+            assertTrue(((IntField) f.next().getField(0)).getValue() < 100);
+            count++;
+        }
+        f.close();
+        assertEquals(expected, count);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * A worker that can't lock a page aborts the scan on the calling thread.
+     */
+    @Test
+    public void lockConflictAborts() throws Exception {
+        TransactionId writer = new TransactionId();
+        Database.getBufferPool().getPage(writer, new HeapPageId(hf.getId(), 3), Permissions.READ_WRITE);
+
+        TransactionId tid = new TransactionId();
+        ParallelSeqScan scan = new ParallelSeqScan(tid, hf.getId(), "t", 4);
+        scan.open();
+        try {
+            while (scan.hasNext())
+                scan.next();
+            fail("expected TransactionAbortedException");
+        } catch (TransactionAbortedException e) {
+            // explicitly ignored
+        }
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid, false);
+        Database.getBufferPool().transactionComplete(writer);
+    }
+
+    /**
+     * Closing the scan before the end stops the workers.
+     */
+    @Test
+    public void closeEarly() throws Exception {
+        TransactionId tid = new TransactionId();
+        ParallelSeqScan scan = new ParallelSeqScan(tid, hf.getId(), "t", 4);
+        scan.open();
+        assertTrue(scan.hasNext());
+        scan.next();
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ParallelSeqScanTest.class);
+    }
+}
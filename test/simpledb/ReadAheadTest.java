@@ -0,0 +1,161 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ReadAheadTest extends SimpleDbTestBase {
+    private static final int PAGES = 30;
+
+    /** Counts the pages read from disk. */
+    private static class CountingHeapFile extends HeapFile {
+        final AtomicInteger reads = new AtomicInteger();
+
+        CountingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            reads.incrementAndGet();
+            return super.readPage(pid);
+        }
+    }
+
+    private CountingHeapFile table;
+    private ArrayList<ArrayList<Integer>> tuples;
+
+    @Before
+    public void setUp() throws Exception {
+        tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(1, 992 * PAGES, 1000, null, tuples);
+        table = new CountingHeapFile(f, Utility.getTupleDesc(1));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+    }
+
+    @After
+    public void tearDown() {
+        Database.getBufferPool().setReadAhead(0);
+    }
+
+    private HeapPage get(TransactionId tid, int pageNo) throws Exception {
+        return (HeapPage) Database.getBufferPool().getPage(tid,
+                new HeapPageId(table.getId(), pageNo), Permissions.READ_ONLY);
+    }
+
+    /** Waits for the background reads to install at least the given number of pages. */
+    private static void awaitPrefetched(ReadAhead ra, long pages) throws InterruptedException {
+        for (int i = 0; i < 500 && ra.getPrefetchedPages() < pages; i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(ra.getPrefetchedPages() >= pages);
+    }
+
+    /**
+     * Read-ahead is off unless asked for.
+     */
+    @Test
+    public void offByDefault() throws Exception {
+        assertNull(Database.getBufferPool().getReadAhead());
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 5; i++)
+            get(tid, i);
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(5, table.reads.get());
+    }
+
+    /**
+     * After a few pages in a row, the next pages are read ahead. They are
+     * in the pool when the reader gets to them, and nobody holds a lock on
+     * them until then.
+     */
+    @Test
+    public void prefetchesSequentialReads() throws Exception {
+        Database.getBufferPool().setReadAhead(8);
+        ReadAhead ra = Database.getBufferPool().getReadAhead();
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < ReadAhead.SEQUENTIAL_RUN; i++)
+            get(tid, i);
+        awaitPrefetched(ra, 8);
+        int reads = table.reads.get();
+        assertEquals(ReadAhead.SEQUENTIAL_RUN + 8, reads);
+
+        // another transaction can lock a prefetched page exclusively at once
+        TransactionId other = new TransactionId();
+        assertFalse(Database.getBufferPool().holdsLock(tid, new HeapPageId(table.getId(), 5)));
+        Database.getBufferPool().getPage(other, new HeapPageId(table.getId(), 5), Permissions.READ_WRITE);
+        Database.getBufferPool().transactionComplete(other);
+
+        get(tid, ReadAhead.SEQUENTIAL_RUN);
+        assertEquals(reads, table.reads.get());
+        assertTrue(ra.getHits() >= 1);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * A scan with read-ahead on sees the same tuples, reading each page about
+     * once.
+     */
+    @Test
+    public void scan() throws Exception {
+        Database.getBufferPool().setReadAhead(4);
+        SystemTestUtil.matchTuples(table, tuples);
+        // a page read by the scan and by a prefetch at the same time is read twice
+        assertTrue(table.reads.get() < 2 * PAGES);
+    }
+
+    /**
+     * Pages got through a ring aren't read ahead, so a scan too large for the
+     * pool doesn't fill the pool with prefetched pages.
+     */
+    @Test
+    public void ringNotReadAhead() throws Exception {
+        BufferPool bp = Database.getBufferPool();
+        bp.setReadAhead(4);
+        BufferRing ring = bp.newRing();
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < PAGES; i++)
+            bp.getPage(tid, new HeapPageId(table.getId(), i), Permissions.READ_ONLY, false, ring);
+        bp.releaseRing(ring);
+        bp.transactionComplete(tid);
+        assertEquals(0, bp.getReadAhead().getPrefetchedPages());
+        assertEquals(PAGES, table.reads.get());
+    }
+
+    /**
+     * A read-ahead of a page that a bulk append was writing isn't installed
+     * once the append commits, as it may have read the page before it was
+     * written.
+     */
+    @Test
+    public void staleAppendedPageDropped() throws Exception {
+        BufferPool bp = Database.getBufferPool();
+        TransactionId tid = new TransactionId();
+        ArrayList<Tuple> added = new ArrayList<Tuple>();
+        for (int i = 0; i < 10; i++)
+            added.add(Utility.getHeapTuple(i, 1));
+        table.appendTuples(tid, added.iterator());
+        PageId pid = added.get(0).getRecordId().getPageId();
+        long epoch = bp.writeEpoch();
+        Page stale = new HeapPage((HeapPageId) pid, HeapPage.createEmptyPageData());
+        bp.transactionComplete(tid);
+        assertFalse(bp.installPrefetched(stale, epoch));
+        assertFalse(bp.isCached(pid));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReadAheadTest.class);
+    }
+}
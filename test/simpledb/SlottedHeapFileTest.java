@@ -0,0 +1,132 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class SlottedHeapFileTest extends SimpleDbTestBase {
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[]{Type.INT_TYPE, Type.STRING_TYPE}, new String[]{"id", "name"});
+
+    private SlottedHeapFile file;
+    private TransactionId tid;
+
+    @Before public void createFile() throws Exception {
+        File f = File.createTempFile("slotted", ".dat");
+        HeapFile.deleteOnExit(f);
+        file = new SlottedHeapFile(f, TD);
+        Database.getCatalog().addTable(file, "slotted");
+        tid = new TransactionId();
+    }
+
+    private static Tuple tuple(int id, String name) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(id));
+        t.setField(1, new StringField(name, Type.STRING_LEN));
+        return t;
+    }
+
+    private List<Tuple> scan(TransactionId tid) throws Exception {
+        List<Tuple> result = new ArrayList<Tuple>();
+        DbFileIterator it = file.iterator(tid);
+        it.open();
+        while (it.hasNext())
+            result.add(it.next());
+        it.close();
+        return result;
+    }
+
+    /**
+     * Short strings take only their own length, so a page holds many more
+     * rows than a HeapPage with 132 byte string slots.
+     */
+    @Test public void shortStringsPackDensely() throws Exception {
+        for (int i = 0; i < 1000; ++i)
+            Database.getBufferPool().insertTuple(tid, file.getId(), tuple(i, "author " + i));
+        Database.getBufferPool().transactionComplete(tid);
+
+        int heapSlots = BufferPool.PAGE_SIZE * 8 / (TD.getSize() * 8 + 1);
+        assertTrue(1000 / file.numPages() > 3 * heapSlots);
+
+        List<Tuple> tuples = scan(new TransactionId());
+        assertEquals(1000, tuples.size());
+        for (int i = 0; i < 1000; ++i) {
+            assertEquals(new IntField(i), tuples.get(i).getField(0));
+            assertEquals("author " + i, ((StringField) tuples.get(i).getField(1)).getValue());
+        }
+    }
+
+    /**
+     * Deleted records are reclaimed by compaction, and RecordIds of the
+     * remaining tuples stay valid.
+     */
+    @Test public void deleteAndCompact() throws Exception {
+        HeapPageId pid = new HeapPageId(file.getId(), 0);
+        SlottedHeapPage page = new SlottedHeapPage(pid, SlottedHeapPage.createEmptyPageData(BufferPool.PAGE_SIZE));
+        String longName = new String(new char[Type.STRING_LEN]).replace('\0', 'x');
+        List<Tuple> inserted = new ArrayList<Tuple>();
+        while (page.hasRoomFor(4 + 2 + longName.length())) {
+            Tuple t = tuple(inserted.size(), longName);
+            page.insertTuple(t);
+            inserted.add(t);
+        }
+        try {
+            page.insertTuple(tuple(-1, longName));
+            fail("page should be full; expected DbException");
+        } catch (DbException e) {
+            // explicitly ignored
+        }
+
+        // free every other record; the space is only usable after compaction
+        for (int i = 0; i < inserted.size(); i += 2)
+            page.deleteTuple(inserted.get(i));
+        Tuple extra = tuple(-2, longName + "y");
+        page.insertTuple(extra);
+        assertEquals(0, extra.getRecordId().tupleno());
+
+        SlottedHeapPage copy = new SlottedHeapPage(pid, page.getPageData());
+        Iterator<Tuple> it = copy.iterator();
+        Tuple first = it.next();
+        assertEquals(new IntField(-2), first.getField(0));
+        for (int i = 1; i < inserted.size(); i += 2) {
+            Tuple t = it.next();
+            assertEquals(i, t.getRecordId().tupleno());
+            assertEquals(new IntField(i), t.getField(0));
+        }
+        assertFalse(it.hasNext());
+        copy.deleteTuple(first);
+        assertFalse(copy.isSlotUsed(0));
+    }
+
+    /**
+     * Deletes through the buffer pool are undone when the transaction aborts.
+     */
+    @Test public void deleteAndAbort() throws Exception {
+        for (int i = 0; i < 10; ++i)
+            Database.getBufferPool().insertTuple(tid, file.getId(), tuple(i, "t" + i));
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        for (Tuple t : scan(tid))
+            Database.getBufferPool().deleteTuple(tid, t);
+        assertEquals(0, scan(tid).size());
+        Database.getBufferPool().transactionComplete(tid, false);
+
+        assertEquals(10, scan(new TransactionId()).size());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedHeapFileTest.class);
+    }
+}
@@ -0,0 +1,249 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ZoneMapTest extends SimpleDbTestBase {
+    private static final int COLUMNS = 3;
+    private static final int ROWS = 5000;
+    private static final int MAX_VALUE = 1000;
+
+    private File file;
+    private HeapFile hf;
+    private ArrayList<ArrayList<Integer>> tuples;
+
+    @Before
+    public void setUp() throws Exception {
+        Database.reset();
+        Random r = new Random(186);
+        tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < ROWS; i++) {
+            ArrayList<Integer> row = new ArrayList<Integer>();
+            for (int j = 0; j < COLUMNS; j++)
+                row.add(r.nextInt(MAX_VALUE));
+            tuples.add(row);
+        }
+        file = File.createTempFile("clustered", ".dat");
+        HeapFile.deleteOnExit(file);
+        HeapFileEncoder.convert(tuples, file, BufferPool.PAGE_SIZE, COLUMNS, 1);
+        hf = open();
+    }
+
+    private HeapFile open() {
+        HeapFile table = Utility.openHeapFile(COLUMNS, "c", file);
+        table.setClusterField(1);
+        return table;
+    }
+
+    private ArrayList<ArrayList<Integer>> expected(int low, int high) {
+        ArrayList<ArrayList<Integer>> result = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> t : tuples) {
+            if (t.get(1) >= low && t.get(1) < high)
+                result.add(t);
+        }
+        return result;
+    }
+
+    /**
+     * Scans c1 in [low, high) and returns the number of pages read.
+     */
+    private int matchRange(int low, int high) throws Exception {
+        TransactionId tid = new TransactionId();
+        DbIterator scan = new Filter(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(high)),
+                new Filter(new Predicate(1, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(low)),
+                        new SeqScan(tid, hf.getId(), "t")));
+        SystemTestUtil.matchTuples(scan, expected(low, high));
+        int locked = 0;
+        for (int i = 0; i < hf.numPages(); i++) {
+            if (Database.getBufferPool().holdsLock(tid, new HeapPageId(hf.getId(), i)))
+                locked++;
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        return locked;
+    }
+
+    /**
+     * The encoder writes the table sorted, and a range scan on the cluster
+     * field reads only the pages holding that range.
+     */
+    @Test
+    public void rangeScanSkipsPages() throws Exception {
+        int locked = matchRange(500, 550);
+        assertTrue(locked > 0);
+        assertTrue(locked <= hf.numPages() / 10 + 2);
+        assertTrue(hf.getZoneMap().getSkippedPages() > 0);
+
+        // a filter on another column can't skip anything
+        TransactionId tid = new TransactionId();
+        Predicate p = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(MAX_VALUE / 2));
+        long skipped = hf.getZoneMap().getSkippedPages();
+        DbIterator scan = new Filter(p, new SeqScan(tid, hf.getId(), "t"));
+        scan.open();
+        while (scan.hasNext())
+            scan.next();
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(skipped, hf.getZoneMap().getSkippedPages());
+    }
+
+    /**
+     * An input larger than a run is sorted in several runs that are merged,
+     * so the file comes out sorted all the same.
+     */
+    @Test
+    public void encoderSortsInRuns() throws Exception {
+        int runLines = HeapFileEncoder.RUN_LINES;
+        HeapFileEncoder.RUN_LINES = ROWS / 7;
+        try {
+            HeapFileEncoder.convert(tuples, file, BufferPool.PAGE_SIZE, COLUMNS, 1);
+        } finally {
+            HeapFileEncoder.RUN_LINES = runLines;
+        }
+        hf = open();
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        int count = 0;
+        int last = Integer.MIN_VALUE;
+        while (it.hasNext()) {
+            int value = ((IntField) it.next().getField(1)).getValue();
+            assertTrue(value >= last);
+            last = value;
+            count++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(ROWS, count);
+        assertTrue(matchRange(200, 250) <= hf.numPages() / 10 + 2);
+    }
+
+    /**
+     * Inserted tuples widen the summary of the page they land on, so scans
+     * still find them.
+     */
+    @Test
+    public void insertsWidenSummaries() throws Exception {
+        TransactionId tid = new TransactionId();
+        for (int value : new int[]{-10, MAX_VALUE + 10, 500}) {
+            Tuple t = new Tuple(hf.getTupleDesc());
+            ArrayList<Integer> row = new ArrayList<Integer>();
+            for (int j = 0; j < COLUMNS; j++) {
+                row.add(value);
+                t.setField(j, new IntField(value));
+            }
+            Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+            tuples.add(row);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        matchRange(-10, -9);
+        matchRange(MAX_VALUE + 10, MAX_VALUE + 11);
+        matchRange(500, 501);
+    }
+
+    /**
+     * Tables that aren't clustered have zone maps too, which skip pages when
+     * the data is loosely ordered, e.g. by an increasing id.
+     */
+    @Test
+    public void unclusteredTableSkipsPages() throws Exception {
+        for (int i = 0; i < tuples.size(); i++)
+            tuples.get(i).set(1, i);
+        HeapFileEncoder.convert(tuples, file, BufferPool.PAGE_SIZE, COLUMNS);
+        hf = Utility.openHeapFile(COLUMNS, "c", file);
+        assertEquals(-1, hf.getClusterField());
+        int locked = matchRange(ROWS / 2, ROWS / 2 + 50);
+        assertTrue(locked > 0);
+        assertTrue(locked <= 2);
+    }
+
+    /**
+     * Widened summaries reach the side file once their page is written.
+     */
+    @Test
+    public void widenedSummariesPersist() throws Exception {
+        TransactionId tid = new TransactionId();
+        Tuple t = new Tuple(hf.getTupleDesc());
+        for (int j = 0; j < COLUMNS; j++)
+            t.setField(j, new IntField(MAX_VALUE * 2));
+        Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        Database.getBufferPool().transactionComplete(tid);
+        Database.getBufferPool().flushAllPages();
+
+        ZoneMap map = new ZoneMap(ZoneMap.sideFile(file), ZoneMap.types(hf.getTupleDesc()));
+        assertTrue(map.load(hf.numPages()));
+        ArrayList<Predicate> predicates = new ArrayList<Predicate>();
+        predicates.add(new Predicate(1, Predicate.Op.EQUALS, new IntField(MAX_VALUE * 2)));
+        assertTrue(map.mayMatch(t.getRecordId().getPageId().pageNumber(), predicates));
+        map.close();
+    }
+
+    /**
+     * A table whose side file is missing isn't read to rebuild it: scans
+     * without predicates leave the zone map alone, and pages get a summary
+     * once they are written.
+     */
+    @Test
+    public void missingMapFilledOnWrite() throws Exception {
+        hf.close();
+        assertTrue(ZoneMap.sideFile(file).delete());
+        hf = open();
+        SystemTestUtil.matchTuples(hf, tuples);
+        assertFalse(ZoneMap.sideFile(file).exists());
+        assertEquals(hf.numPages(), matchRange(100, 150));
+
+        TransactionId tid = new TransactionId();
+        Tuple t = new Tuple(hf.getTupleDesc());
+        ArrayList<Integer> row = new ArrayList<Integer>();
+        for (int j = 0; j < COLUMNS; j++) {
+            row.add(MAX_VALUE * 2);
+            t.setField(j, new IntField(MAX_VALUE * 2));
+        }
+        Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        tuples.add(row);
+        // the commit writes out the page the tuple went to
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(0, hf.getZoneMap().getSkippedPages());
+        assertEquals(hf.numPages() - 1, matchRange(-5, -4));
+        matchRange(MAX_VALUE * 2, MAX_VALUE * 2 + 1);
+    }
+
+    /**
+     * A side file left over from another table with the same columns but a
+     * different number of pages isn't trusted.
+     */
+    @Test
+    public void staleMapDropped() throws Exception {
+        ArrayList<ArrayList<Integer>> others = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> t : tuples.subList(0, ROWS / 2)) {
+            ArrayList<Integer> row = new ArrayList<Integer>(t);
+            row.set(1, row.get(1) + MAX_VALUE);
+            others.add(row);
+        }
+        File other = File.createTempFile("other", ".dat");
+        HeapFile.deleteOnExit(other);
+        HeapFileEncoder.convert(others, other, BufferPool.PAGE_SIZE, COLUMNS, 1);
+
+        hf.close();
+        java.nio.file.Files.copy(ZoneMap.sideFile(other).toPath(), ZoneMap.sideFile(file).toPath(),
+                java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        hf = open();
+        assertEquals(hf.numPages(), matchRange(100, 150));
+        assertEquals(0, hf.getZoneMap().getSkippedPages());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ZoneMapTest.class);
+    }
+}
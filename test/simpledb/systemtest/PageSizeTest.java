@@ -0,0 +1,138 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Encodes, scans, inserts into and deletes from tables with pages larger than
+ * BufferPool.PAGE_SIZE.
+ */
+public class PageSizeTest extends SimpleDbTestBase {
+    private static final int[] PAGE_SIZES = {8192, 16384, 65536};
+
+    private HeapFile createTable(int columns, int rows, int pageSize,
+            ArrayList<ArrayList<Integer>> tuples) throws IOException {
+        File temp = SystemTestUtil.createRandomHeapFileUnopened(columns, rows, 1 << 16, null, tuples);
+        HeapFileEncoder.convert(tuples, temp, pageSize, columns);
+        return Utility.openHeapFile(columns, temp, pageSize);
+    }
+
+    @Test public void testScan() throws Exception {
+        for (int pageSize : PAGE_SIZES) {
+            ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+            HeapFile f = createTable(2, 5000, pageSize, tuples);
+            int perPage = pageSize * 8 / (8 * 8 + 1);
+            assertEquals((5000 + perPage - 1) / perPage, f.numPages());
+            assertEquals(pageSize, Database.getCatalog().getPageSize(f.getId()));
+            SystemTestUtil.matchTuples(f, tuples);
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        }
+    }
+
+    @Test public void testInsertAndDelete() throws Exception {
+        for (int pageSize : PAGE_SIZES) {
+            ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+            HeapFile f = createTable(2, 3000, pageSize, tuples);
+
+            TransactionId tid = new TransactionId();
+            for (int i = 0; i < 3000; ++i) {
+                Tuple t = Utility.getHeapTuple(new int[]{i, -i});
+                Database.getBufferPool().insertTuple(tid, f.getId(), t);
+                ArrayList<Integer> row = new ArrayList<Integer>();
+                row.add(i);
+                row.add(-i);
+                tuples.add(row);
+            }
+            SystemTestUtil.matchTuples(f, tid, tuples);
+            Database.getBufferPool().transactionComplete(tid);
+
+            // delete the first page worth of rows, then abort
+            tid = new TransactionId();
+            DbFileIterator it = f.iterator(tid);
+            it.open();
+            ArrayList<Tuple> victims = new ArrayList<Tuple>();
+            for (int i = 0; i < 100; ++i)
+                victims.add(it.next());
+            it.close();
+            for (Tuple t : victims)
+                Database.getBufferPool().deleteTuple(tid, t);
+            Database.getBufferPool().transactionComplete(tid, false);
+
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            SystemTestUtil.matchTuples(f, tuples);
+            HeapPage first = (HeapPage) f.readPage(new HeapPageId(f.getId(), 0));
+            assertEquals(pageSize, first.getPageData().length);
+        }
+    }
+
+    @Test public void testSchema() throws Exception {
+        File dir = File.createTempFile("schema", "");
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+        File schema = new File(dir, "catalog.txt");
+        schema.deleteOnExit();
+        FileWriter w = new FileWriter(schema);
+        w.write("small (a int, b int)\n");
+        w.write("wide (a int pk, s string) pagesize 16384\n");
+        w.write("names (a int, s string) slotted pagesize 8192\n");
+        w.close();
+
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+        assertEquals(BufferPool.PAGE_SIZE,
+                Database.getCatalog().getPageSize(Database.getCatalog().getTableId("small")));
+        assertEquals(16384,
+                Database.getCatalog().getPageSize(Database.getCatalog().getTableId("wide")));
+        int names = Database.getCatalog().getTableId("names");
+        assertEquals(8192, Database.getCatalog().getPageSize(names));
+        assertTrue(Database.getCatalog().getDbFile(names) instanceof SlottedHeapFile);
+    }
+
+    /**
+     * A table converted with the command line tool at the page size its
+     * schema declares reads back through the catalog.
+     */
+    @Test public void testConvertCommand() throws Exception {
+        File dir = File.createTempFile("convert", "");
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+        File text = new File(dir, "wide.txt");
+        text.deleteOnExit();
+        HeapFile.deleteOnExit(new File(dir, "wide.dat"));
+        File schema = new File(dir, "catalog.txt");
+        schema.deleteOnExit();
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        FileWriter w = new FileWriter(text);
+        for (int i = 0; i < 3000; ++i) {
+            w.write(i + "," + -i + "\n");
+            ArrayList<Integer> row = new ArrayList<Integer>();
+            row.add(i);
+            row.add(-i);
+            tuples.add(row);
+        }
+        w.close();
+        w = new FileWriter(schema);
+        w.write("wide (a int, b int) pagesize 16384\n");
+        w.close();
+
+        SimpleDb.main(new String[]{"convert", text.getPath(), "2", "int,int", ",", "16384"});
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+        DbFile f = Database.getCatalog().getDbFile(Database.getCatalog().getTableId("wide"));
+        assertEquals(16384, f.getPageSize());
+        SystemTestUtil.matchTuples(f, tuples);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(PageSizeTest.class);
+    }
+}
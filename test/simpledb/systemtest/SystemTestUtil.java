@@ -80,7 +80,7 @@ public class SystemTestUtil {
 
         // Convert the tuples list to a heap file and open it
         File temp = File.createTempFile("table", ".dat");
-        temp.deleteOnExit();
+        HeapFile.deleteOnExit(temp);
         HeapFileEncoder.convert(tuples, temp, BufferPool.PAGE_SIZE, columns);
         return temp;
     }